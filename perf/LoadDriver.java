@@ -0,0 +1,352 @@
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.regex.Pattern;
+
+/**
+ * <p>Scripted HTTP load against a running car park service</p>
+ * <p>Modes:</p>
+ * <ul>
+ *     <li>{@code nearest}: closed loop of {@code GET /v1/carparks/nearest} from random origins over Singapore</li>
+ *     <li>{@code batch}: closed loop of {@code POST /v1/carparks/nearest:batch} with {@code --origins} origins each</li>
+ *     <li>{@code import}: {@code POST /v1/carparks/import-csv} of {@code --csv}, {@code --repeat} times in a row</li>
+ *     <li>{@code refresh}: watches {@code /q/metrics} until {@code --cycles} availability refreshes completed</li>
+ * </ul>
+ * <p>Request modes report throughput, errors and p50/p90/p99/max latency. Every mode ends with the refresh-cycle and
+ * import durations scraped from {@code /q/metrics}.</p>
+ *
+ * <pre>
+ * java perf/LoadDriver.java nearest --base-url http://localhost:8080 --concurrency 64 --duration 60
+ * java perf/LoadDriver.java import --csv perf/build/carparks-100000.csv --mode upsert --repeat 3
+ * </pre>
+ */
+public class LoadDriver {
+    // Bounding box of the main island
+    private static final double MIN_LATITUDE = 1.24;
+    private static final double MAX_LATITUDE = 1.46;
+    private static final double MIN_LONGITUDE = 103.62;
+    private static final double MAX_LONGITUDE = 104.0;
+
+    private static final Pattern METRIC_LINE = Pattern.compile("^(\\w+?)(\\{[^}]*})?\\s+(\\S+)$");
+
+    private final HttpClient client = HttpClient.newBuilder()
+            .executor(Executors.newVirtualThreadPerTaskExecutor())
+            .connectTimeout(Duration.ofSeconds(10))
+            .build();
+    private final String baseUrl;
+    private final String[] args;
+
+    LoadDriver(String baseUrl, String[] args) {
+        this.baseUrl = baseUrl.endsWith("/") ? baseUrl.substring(0, baseUrl.length() - 1) : baseUrl;
+        this.args = args;
+    }
+
+    public static void main(String[] args) throws Exception {
+        if (args.length == 0) {
+            System.err.println("Usage: java perf/LoadDriver.java nearest|batch|import|refresh [--base-url http://localhost:8080] [options]");
+            System.exit(2);
+        }
+        var driver = new LoadDriver(option(args, "--base-url", "http://localhost:8080"), args);
+        switch (args[0]) {
+            case "nearest" -> driver.nearest();
+            case "batch" -> driver.batch();
+            case "import" -> driver.importCsv();
+            case "refresh" -> driver.refresh();
+            default -> {
+                System.err.println("Unknown mode " + args[0]);
+                System.exit(2);
+            }
+        }
+        driver.printServerMetrics();
+    }
+
+    private void nearest() throws InterruptedException {
+        var perPage = option(args, "--per-page", "10");
+        var extra = new StringBuilder();
+        if (option(args, "--radius-m", null) != null) {
+            extra.append("&radius_m=").append(option(args, "--radius-m", null));
+        }
+        if (option(args, "--min-available", null) != null) {
+            extra.append("&min_available=").append(option(args, "--min-available", null));
+        }
+        var maxPage = Integer.parseInt(option(args, "--max-page", "1"));
+        closedLoop("GET /v1/carparks/nearest", () -> {
+            var random = ThreadLocalRandom.current();
+            var uri = String.format(Locale.ROOT, "%s/v1/carparks/nearest?latitude=%.6f&longitude=%.6f&page=%d&per_page=%s%s",
+                    baseUrl, randomLatitude(random), randomLongitude(random), 1 + random.nextInt(maxPage), perPage, extra);
+            return HttpRequest.newBuilder(URI.create(uri)).GET().build();
+        });
+    }
+
+    private void batch() throws InterruptedException {
+        var origins = Integer.parseInt(option(args, "--origins", "100"));
+        var perPage = option(args, "--per-page", "10");
+        closedLoop("POST /v1/carparks/nearest:batch (" + origins + " origins)", () -> {
+            var random = ThreadLocalRandom.current();
+            var json = new StringBuilder("{\"perPage\":").append(perPage).append(",\"origins\":[");
+            for (var i = 0; i < origins; i++) {
+                json.append(i > 0 ? "," : "")
+                        .append(String.format(Locale.ROOT, "{\"latitude\":%.6f,\"longitude\":%.6f}", randomLatitude(random), randomLongitude(random)));
+            }
+            json.append("]}");
+            return HttpRequest.newBuilder(URI.create(baseUrl + "/v1/carparks/nearest:batch"))
+                    .header("Content-Type", "application/json")
+                    .POST(HttpRequest.BodyPublishers.ofString(json.toString()))
+                    .build();
+        });
+    }
+
+    /**
+     * Runs {@code --concurrency} virtual threads, each sending its next request as soon as the previous one returned,
+     * for {@code --warmup} then {@code --duration} seconds. Only requests of the measured window are reported.
+     */
+    private void closedLoop(String name, RequestFactory requests) throws InterruptedException {
+        var concurrency = Integer.parseInt(option(args, "--concurrency", "32"));
+        var warmup = Duration.ofSeconds(Long.parseLong(option(args, "--warmup", "10")));
+        var duration = Duration.ofSeconds(Long.parseLong(option(args, "--duration", "60")));
+        System.out.printf("%s: %d connections, %ds warmup, %ds measured%n", name, concurrency, warmup.toSeconds(), duration.toSeconds());
+
+        var measuring = new AtomicBoolean();
+        var stopped = new AtomicBoolean();
+        var recorders = new ArrayList<Recorder>();
+        var threads = new ArrayList<Thread>();
+        for (var i = 0; i < concurrency; i++) {
+            var recorder = new Recorder();
+            recorders.add(recorder);
+            threads.add(Thread.ofVirtual().start(() -> {
+                while (!stopped.get()) {
+                    var started = System.nanoTime();
+                    var ok = send(requests.next());
+                    if (measuring.get()) {
+                        recorder.record(System.nanoTime() - started, ok);
+                    }
+                }
+            }));
+        }
+        Thread.sleep(warmup);
+        measuring.set(true);
+        var measuredFrom = System.nanoTime();
+        Thread.sleep(duration);
+        measuring.set(false);
+        var measuredNanos = System.nanoTime() - measuredFrom;
+        stopped.set(true);
+        for (var thread : threads) {
+            thread.join();
+        }
+        report(name, Recorder.merge(recorders), measuredNanos);
+    }
+
+    private void importCsv() throws IOException, InterruptedException {
+        var csv = Path.of(option(args, "--csv", "HDBCarparkInformation.csv"));
+        var mode = option(args, "--mode", "skip");
+        var repeat = Integer.parseInt(option(args, "--repeat", "1"));
+        var boundary = "----carparks-load-driver";
+        var body = multipart(boundary, csv);
+        var recorder = new Recorder();
+        var started = System.nanoTime();
+        for (var i = 0; i < repeat; i++) {
+            var request = HttpRequest.newBuilder(URI.create(baseUrl + "/v1/carparks/import-csv?mode=" + mode))
+                    .header("Content-Type", "multipart/form-data; boundary=" + boundary)
+                    .timeout(Duration.ofMinutes(30))
+                    .POST(HttpRequest.BodyPublishers.ofByteArray(body))
+                    .build();
+            var requestStarted = System.nanoTime();
+            var response = client.send(request, HttpResponse.BodyHandlers.ofString());
+            var elapsed = System.nanoTime() - requestStarted;
+            recorder.record(elapsed, response.statusCode() < 300);
+            System.out.printf("Import %d of %s (%d KB, mode %s): HTTP %d in %d ms%n  %s%n", i + 1, csv, body.length / 1024,
+                    mode, response.statusCode(), elapsed / 1_000_000, response.body());
+        }
+        report("POST /v1/carparks/import-csv", recorder, System.nanoTime() - started);
+    }
+
+    /**
+     * Polls the refresh-cycle timer until {@code --cycles} more scheduler runs completed, printing each run's duration
+     */
+    private void refresh() throws IOException, InterruptedException {
+        var cycles = Integer.parseInt(option(args, "--cycles", "3"));
+        var pollInterval = Duration.ofSeconds(Long.parseLong(option(args, "--poll-seconds", "2")));
+        var previous = scrapeMetrics();
+        var seen = 0;
+        System.out.printf("Waiting for %d availability refresh cycles%n", cycles);
+        while (seen < cycles) {
+            Thread.sleep(pollInterval);
+            var current = scrapeMetrics();
+            var runs = (long) (current.value("carparks_availability_refresh_duration", "_count") - previous.value("carparks_availability_refresh_duration", "_count"));
+            if (runs > 0) {
+                var seconds = current.value("carparks_availability_refresh_duration", "_sum") - previous.value("carparks_availability_refresh_duration", "_sum");
+                seen += (int) runs;
+                System.out.printf(Locale.ROOT, "Refresh cycle: %.0f ms, %.0f changed, %.0f unchanged%n", seconds * 1000 / runs,
+                        current.value("carparks_availability_last_run_changed", ""),
+                        current.value("carparks_availability_last_run_unchanged", ""));
+                previous = current;
+            }
+        }
+    }
+
+    private void printServerMetrics() {
+        try {
+            var metrics = scrapeMetrics();
+            System.out.println("Server metrics (/q/metrics):");
+            printTimer(metrics, "Availability refresh cycle", "carparks_availability_refresh_duration");
+            printTimer(metrics, "CSV import", "carparks_import_duration");
+        } catch (IOException | InterruptedException e) {
+            System.out.println("Could not scrape /q/metrics: " + e.getMessage());
+        }
+    }
+
+    private static void printTimer(Metrics metrics, String label, String name) {
+        var count = metrics.value(name, "_count");
+        if (count == 0) {
+            System.out.printf("  %-27s no runs yet%n", label);
+            return;
+        }
+        System.out.printf(Locale.ROOT, "  %-27s %.0f runs, mean %.0f ms, p50 %.0f ms, p99 %.0f ms, max %.0f ms%n", label, count,
+                metrics.value(name, "_sum") / count * 1000, metrics.quantile(name, "0.5") * 1000,
+                metrics.quantile(name, "0.99") * 1000, metrics.value(name, "_max") * 1000);
+    }
+
+    private Metrics scrapeMetrics() throws IOException, InterruptedException {
+        var request = HttpRequest.newBuilder(URI.create(baseUrl + "/q/metrics"))
+                .header("Accept", "text/plain")
+                .GET()
+                .build();
+        var body = client.send(request, HttpResponse.BodyHandlers.ofString()).body();
+        var lines = new ArrayList<String[]>();
+        for (var line : body.split("\n")) {
+            var matcher = METRIC_LINE.matcher(line.strip());
+            if (!line.startsWith("#") && matcher.matches()) {
+                lines.add(new String[]{matcher.group(1), matcher.group(2) != null ? matcher.group(2) : "", matcher.group(3)});
+            }
+        }
+        return new Metrics(lines);
+    }
+
+    private boolean send(HttpRequest request) {
+        try {
+            var response = client.send(request, HttpResponse.BodyHandlers.discarding());
+            return response.statusCode() < 400;
+        } catch (IOException e) {
+            return false;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    private static void report(String name, Recorder recorder, long elapsedNanos) {
+        var latencies = Arrays.copyOf(recorder.latencies, recorder.count);
+        Arrays.sort(latencies);
+        var seconds = elapsedNanos / 1e9;
+        System.out.printf(Locale.ROOT, "%s: %d requests, %d errors, %.1f req/s%n", name, recorder.count, recorder.errors, recorder.count / seconds);
+        if (latencies.length > 0) {
+            System.out.printf(Locale.ROOT, "  latency p50 %.2f ms, p90 %.2f ms, p99 %.2f ms, max %.2f ms%n",
+                    percentile(latencies, 0.5), percentile(latencies, 0.9), percentile(latencies, 0.99), latencies[latencies.length - 1] / 1e6);
+        }
+    }
+
+    private static double percentile(long[] sorted, double quantile) {
+        var index = (int) Math.ceil(quantile * sorted.length) - 1;
+        return sorted[Math.max(0, index)] / 1e6;
+    }
+
+    private static byte[] multipart(String boundary, Path csv) throws IOException {
+        var out = new ByteArrayOutputStream();
+        out.write(("--" + boundary + "\r\n"
+                + "Content-Disposition: form-data; name=\"file\"; filename=\"" + csv.getFileName() + "\"\r\n"
+                + "Content-Type: text/csv\r\n\r\n").getBytes(StandardCharsets.UTF_8));
+        out.write(Files.readAllBytes(csv));
+        out.write(("\r\n--" + boundary + "--\r\n").getBytes(StandardCharsets.UTF_8));
+        return out.toByteArray();
+    }
+
+    private static double randomLatitude(ThreadLocalRandom random) {
+        return random.nextDouble(MIN_LATITUDE, MAX_LATITUDE);
+    }
+
+    private static double randomLongitude(ThreadLocalRandom random) {
+        return random.nextDouble(MIN_LONGITUDE, MAX_LONGITUDE);
+    }
+
+    private static String option(String[] args, String name, String defaultValue) {
+        for (var i = 0; i < args.length - 1; i++) {
+            if (args[i].equals(name)) {
+                return args[i + 1];
+            }
+        }
+        return defaultValue;
+    }
+
+    @FunctionalInterface
+    private interface RequestFactory {
+        HttpRequest next();
+    }
+
+    /**
+     * Latencies of one sending thread, so recording never contends
+     */
+    private static final class Recorder {
+        private long[] latencies = new long[1024];
+        private int count;
+        private int errors;
+
+        void record(long nanos, boolean ok) {
+            if (count == latencies.length) {
+                latencies = Arrays.copyOf(latencies, count * 2);
+            }
+            latencies[count++] = nanos;
+            if (!ok) {
+                errors++;
+            }
+        }
+
+        static Recorder merge(List<Recorder> recorders) {
+            var merged = new Recorder();
+            for (var recorder : recorders) {
+                for (var i = 0; i < recorder.count; i++) {
+                    merged.record(recorder.latencies[i], true);
+                }
+                merged.errors += recorder.errors;
+            }
+            return merged;
+        }
+    }
+
+    /**
+     * Samples of one Prometheus scrape. Names are matched by suffix, so registry scope prefixes such as
+     * {@code application_} do not matter.
+     */
+    private record Metrics(List<String[]> samples) {
+        double value(String name, String suffix) {
+            for (var sample : samples) {
+                if (sample[0].endsWith(name + "_seconds" + suffix) || sample[0].endsWith(name + suffix)) {
+                    return Double.parseDouble(sample[2]);
+                }
+            }
+            return 0; // Not registered until first used
+        }
+
+        double quantile(String name, String quantile) {
+            for (var sample : samples) {
+                if ((sample[0].endsWith(name + "_seconds") || sample[0].endsWith(name)) && sample[1].contains("quantile=\"" + quantile + "\"")) {
+                    return Double.parseDouble(sample[2]);
+                }
+            }
+            return Double.NaN;
+        }
+    }
+}
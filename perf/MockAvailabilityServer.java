@@ -0,0 +1,199 @@
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * <p>Local stand-in for the data.gov.sg car park availability API</p>
+ * <p>Serves {@code GET /v1/transport/carpark-availability} for N car parks: the car parks of
+ * {@code HDBCarparkInformation.csv} first, then synthetic ones spread over Singapore. Every request moves the
+ * available lots of a share of car parks by a random step, so each poll has realistic changes. With
+ * {@code --write-csv} it also writes the matching CSV, to be imported with {@code POST /v1/carparks/import-csv}.</p>
+ *
+ * <pre>
+ * java perf/MockAvailabilityServer.java --carparks 100000 --port 8089 --write-csv perf/build/carparks-100000.csv
+ * </pre>
+ */
+public class MockAvailabilityServer {
+    private static final String PATH = "/v1/transport/carpark-availability";
+    private static final String[] LOT_TYPES = {"C", "Y", "H"};
+    private static final DateTimeFormatter TIMESTAMP = DateTimeFormatter.ISO_OFFSET_DATE_TIME;
+    private static final DateTimeFormatter UPDATE_DATETIME = DateTimeFormatter.ofPattern("yyyy-MM-dd'T'HH:mm:ss");
+    private static final ZoneOffset SINGAPORE = ZoneOffset.ofHours(8);
+
+    private final String[] carParkNos;
+    private final int[][] totalLots;      // by car park, by lot type
+    private final int[][] availableLots;
+    private final double changeRatio;
+    private final Random random;
+    private final AtomicLong polls = new AtomicLong();
+
+    MockAvailabilityServer(List<String[]> carParks, double changeRatio, long seed) {
+        this.changeRatio = changeRatio;
+        this.random = new Random(seed);
+        carParkNos = new String[carParks.size()];
+        totalLots = new int[carParks.size()][];
+        availableLots = new int[carParks.size()][];
+        for (var i = 0; i < carParks.size(); i++) {
+            carParkNos[i] = carParks.get(i)[0];
+            var lotTypes = 1 + (random.nextInt(10) == 0 ? 1 + random.nextInt(2) : 0); // Most car parks have one lot type
+            totalLots[i] = new int[lotTypes];
+            availableLots[i] = new int[lotTypes];
+            for (var type = 0; type < lotTypes; type++) {
+                totalLots[i][type] = type == 0 ? 50 + random.nextInt(750) : 5 + random.nextInt(60);
+                availableLots[i][type] = random.nextInt(totalLots[i][type] + 1);
+            }
+        }
+    }
+
+    public static void main(String[] args) throws IOException {
+        var port = Integer.parseInt(option(args, "--port", "8089"));
+        var count = Integer.parseInt(option(args, "--carparks", "0"));
+        var csvFile = Path.of(option(args, "--csv", "HDBCarparkInformation.csv"));
+        var changeRatio = Double.parseDouble(option(args, "--change-ratio", "0.3"));
+        var seed = Long.parseLong(option(args, "--seed", "1"));
+        var writeCsv = option(args, "--write-csv", null);
+
+        var carParks = carParks(csvFile, count, seed);
+        if (writeCsv != null) {
+            writeCsv(Path.of(writeCsv), carParks);
+            System.out.printf("Wrote %d car parks to %s%n", carParks.size(), writeCsv);
+        }
+
+        var mock = new MockAvailabilityServer(carParks, changeRatio, seed);
+        var server = HttpServer.create(new InetSocketAddress(port), 0);
+        server.createContext(PATH, mock::handle);
+        server.setExecutor(Executors.newVirtualThreadPerTaskExecutor());
+        server.start();
+        System.out.printf("Serving availability of %d car parks on http://localhost:%d%s, %.0f%% change per poll%n",
+                carParks.size(), port, PATH, changeRatio * 100);
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        try (exchange) {
+            if (!"GET".equals(exchange.getRequestMethod())) {
+                exchange.sendResponseHeaders(405, -1);
+                return;
+            }
+            var started = System.nanoTime();
+            var body = nextPayload();
+            exchange.getResponseHeaders().set("Content-Type", "application/json");
+            exchange.sendResponseHeaders(200, body.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(body);
+            }
+            System.out.printf("Poll %d: %d car parks, %d KB in %d ms%n", polls.incrementAndGet(), carParkNos.length,
+                    body.length / 1024, (System.nanoTime() - started) / 1_000_000);
+        }
+    }
+
+    private synchronized byte[] nextPayload() {
+        var now = OffsetDateTime.now(SINGAPORE).truncatedTo(ChronoUnit.SECONDS);
+        var updateDatetime = UPDATE_DATETIME.format(now.minusSeconds(30));
+        var json = new StringBuilder(carParkNos.length * 160);
+        json.append("{\"items\":[{\"timestamp\":\"").append(TIMESTAMP.format(now)).append("\",\"carpark_data\":[");
+        for (var i = 0; i < carParkNos.length; i++) {
+            if (random.nextDouble() < changeRatio) {
+                var type = random.nextInt(totalLots[i].length);
+                var step = random.nextInt(11) - 5;
+                availableLots[i][type] = Math.clamp(availableLots[i][type] + step, 0, totalLots[i][type]);
+            }
+            if (i > 0) {
+                json.append(',');
+            }
+            json.append("{\"carpark_info\":[");
+            for (var type = 0; type < totalLots[i].length; type++) {
+                if (type > 0) {
+                    json.append(',');
+                }
+                json.append("{\"total_lots\":\"").append(totalLots[i][type])
+                        .append("\",\"lot_type\":\"").append(LOT_TYPES[type])
+                        .append("\",\"lots_available\":\"").append(availableLots[i][type])
+                        .append("\"}");
+            }
+            json.append("],\"carpark_number\":\"").append(carParkNos[i])
+                    .append("\",\"update_datetime\":\"").append(updateDatetime).append("\"}");
+        }
+        json.append("]}]}");
+        return json.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Car parks of the CSV, topped up with synthetic ones to reach the requested count: [car_park_no, address, x, y]
+     */
+    private static List<String[]> carParks(Path csvFile, int count, long seed) throws IOException {
+        var carParks = new ArrayList<String[]>();
+        if (Files.isRegularFile(csvFile)) {
+            try (var lines = Files.lines(csvFile, StandardCharsets.UTF_8)) {
+                lines.skip(1).map(MockAvailabilityServer::parseCsvLine).forEach(carParks::add);
+            }
+        }
+        if (count > 0 && carParks.size() > count) {
+            return new ArrayList<>(carParks.subList(0, count));
+        }
+        var random = new Random(seed);
+        for (var i = carParks.size(); i < count; i++) {
+            // SVY21 extent of the main island
+            var x = 11_000 + random.nextDouble() * 34_000;
+            var y = 28_000 + random.nextDouble() * 20_000;
+            carParks.add(new String[]{"SYN%06d".formatted(i), "SYNTHETIC CAR PARK %d".formatted(i),
+                    String.format(Locale.ROOT, "%.4f", x), String.format(Locale.ROOT, "%.4f", y)});
+        }
+        return carParks;
+    }
+
+    private static String[] parseCsvLine(String line) {
+        var fields = new ArrayList<String>();
+        var field = new StringBuilder();
+        var quoted = false;
+        for (var i = 0; i < line.length(); i++) {
+            var c = line.charAt(i);
+            if (c == '"') {
+                quoted = !quoted;
+            } else if (c == ',' && !quoted) {
+                fields.add(field.toString());
+                field.setLength(0);
+            } else {
+                field.append(c);
+            }
+        }
+        fields.add(field.toString());
+        return new String[]{fields.get(0), fields.get(1), fields.get(2), fields.get(3)};
+    }
+
+    private static void writeCsv(Path path, List<String[]> carParks) throws IOException {
+        if (path.getParent() != null) {
+            Files.createDirectories(path.getParent());
+        }
+        try (var writer = Files.newBufferedWriter(path, StandardCharsets.UTF_8)) {
+            writer.write("car_park_no,address,x_coord,y_coord\n");
+            for (var carPark : carParks) {
+                writer.write(carPark[0] + ",\"" + carPark[1] + "\"," + carPark[2] + "," + carPark[3] + "\n");
+            }
+        }
+    }
+
+    private static String option(String[] args, String name, String defaultValue) {
+        for (var i = 0; i < args.length - 1; i++) {
+            if (args[i].equals(name)) {
+                return args[i + 1];
+            }
+        }
+        return defaultValue;
+    }
+}
@@ -0,0 +1,128 @@
+package com.example.carpark.benchmark;
+
+import com.example.carpark.entity.CarPark;
+import com.example.carpark.model.CarParkInformation;
+import com.example.carpark.util.ConverterUtil;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * <p>Realistic inputs for the benchmarks, generated from {@code HDBCarparkInformation.csv}</p>
+ * <p>The CSV is looked up in the working directory, or at the {@code carparks.csv} system property.</p>
+ */
+public final class BenchmarkData {
+    private static final String[] LOT_TYPES = {"C", "Y", "H"};
+
+    private BenchmarkData() {
+    }
+
+    public static Path csvFile() {
+        var csvFile = Path.of(System.getProperty("carparks.csv", "HDBCarparkInformation.csv"));
+        if (!Files.isRegularFile(csvFile)) {
+            throw new IllegalStateException("Car park CSV not found at " + csvFile.toAbsolutePath() + ", set -Dcarparks.csv");
+        }
+        return csvFile;
+    }
+
+    public static List<CarParkInformation> carParkInformation() {
+        return CarParkInformation.fromCsvFile(csvFile()).collect().asList().await().indefinitely();
+    }
+
+    /**
+     * Car parks as they are stored, with converted coordinates and random lot counts
+     */
+    public static List<CarPark> carParks(long seed) {
+        var converterUtil = new ConverterUtil();
+        var random = new Random(seed);
+        return carParkInformation().stream()
+                .map(carParkInfo -> {
+                    var wgs84 = converterUtil.convertSVY21ToWGS84(carParkInfo.getXCoord(), carParkInfo.getYCoord());
+                    var totalLots = 20 + random.nextInt(600);
+                    return CarPark.builder()
+                            .carParkNo(carParkInfo.getCarParkNo())
+                            .address(carParkInfo.getAddress())
+                            .latitude(wgs84[0])
+                            .longitude(wgs84[1])
+                            .totalLots(totalLots)
+                            .availableLots(random.nextInt(totalLots + 1))
+                            .build();
+                })
+                .toList();
+    }
+
+    /**
+     * <p>Exactly {@code count} car parks: those of the CSV, then copies of them under new numbers, each moved by up to
+     * about 500 m so that the density grows the way it would with more estates</p>
+     */
+    public static List<CarPark> carParks(long seed, int count) {
+        var csv = carParks(seed);
+        var random = new Random(seed);
+        var carParks = new ArrayList<CarPark>(count);
+        for (var i = 0; i < count; i++) {
+            var carPark = csv.get(i % csv.size());
+            var copy = i / csv.size();
+            if (copy == 0) {
+                carParks.add(carPark);
+                continue;
+            }
+            carParks.add(CarPark.builder()
+                    .carParkNo(carPark.carParkNo + "-" + copy)
+                    .address(carPark.address)
+                    .latitude(carPark.latitude + (random.nextDouble() - 0.5) * 0.009)
+                    .longitude(carPark.longitude + (random.nextDouble() - 0.5) * 0.009)
+                    .totalLots(carPark.totalLots)
+                    .availableLots(carPark.availableLots)
+                    .build());
+        }
+        return carParks;
+    }
+
+    /**
+     * Availability API payload for every car park of the CSV, with one to three lot types each like the live API
+     */
+    public static byte[] availabilityPayload(long seed) {
+        var random = new Random(seed);
+        var json = new StringBuilder(512 * 1024);
+        json.append("{\"items\":[{\"timestamp\":\"2024-11-20T10:00:27+08:00\",\"carpark_data\":[");
+        var first = true;
+        for (var carParkInfo : carParkInformation()) {
+            if (!first) {
+                json.append(',');
+            }
+            first = false;
+            json.append("{\"carpark_info\":[");
+            var lotTypes = 1 + random.nextInt(3);
+            for (var i = 0; i < lotTypes; i++) {
+                var totalLots = 20 + random.nextInt(600);
+                if (i > 0) {
+                    json.append(',');
+                }
+                json.append("{\"total_lots\":\"").append(totalLots)
+                        .append("\",\"lot_type\":\"").append(LOT_TYPES[i])
+                        .append("\",\"lots_available\":\"").append(random.nextInt(totalLots + 1))
+                        .append("\"}");
+            }
+            json.append("],\"carpark_number\":\"").append(carParkInfo.getCarParkNo())
+                    .append("\",\"update_datetime\":\"2024-11-20T09:59:41\"}");
+        }
+        json.append("]}]}");
+        return json.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Random origins over Singapore
+     */
+    public static double[][] origins(int count, long seed) {
+        var random = new Random(seed);
+        var origins = new double[count][];
+        for (var i = 0; i < count; i++) {
+            origins[i] = new double[]{1.27 + random.nextDouble() * 0.17, 103.68 + random.nextDouble() * 0.3};
+        }
+        return origins;
+    }
+}
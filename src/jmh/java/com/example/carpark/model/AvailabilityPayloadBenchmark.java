@@ -0,0 +1,72 @@
+package com.example.carpark.model;
+
+import com.example.carpark.benchmark.BenchmarkData;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.StreamSupport;
+
+/**
+ * <p>Parsing one availability API payload for every car park of the CSV</p>
+ * <p>{@code fromJson} is what the scheduler runs. The tree baselines bind the payload first and then aggregate lots
+ * per car park, sequentially or with a parallel stream, to show what streaming saves and whether parallelism pays off
+ * at this size.</p>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class AvailabilityPayloadBenchmark {
+    private ObjectMapper objectMapper;
+    private JsonFactory jsonFactory;
+    private byte[] payload;
+
+    @Setup
+    public void setUp() {
+        objectMapper = new ObjectMapper();
+        jsonFactory = objectMapper.getFactory();
+        payload = BenchmarkData.availabilityPayload(42);
+    }
+
+    @Benchmark
+    public CarParkLotSnapshot fromJson() {
+        return CarParkLotSnapshot.fromJson(jsonFactory, payload);
+    }
+
+    @Benchmark
+    public Map<String, int[]> treeThenSequentialMerge() throws IOException {
+        return StreamSupport.stream(carParkData().spliterator(), false)
+                .collect(Collectors.toMap(data -> data.get("carpark_number").asText(), AvailabilityPayloadBenchmark::lots, AvailabilityPayloadBenchmark::merge));
+    }
+
+    @Benchmark
+    public Map<String, int[]> treeThenParallelMerge() throws IOException {
+        return StreamSupport.stream(carParkData().spliterator(), true)
+                .collect(Collectors.toMap(data -> data.get("carpark_number").asText(), AvailabilityPayloadBenchmark::lots, AvailabilityPayloadBenchmark::merge));
+    }
+
+    private JsonNode carParkData() throws IOException {
+        return objectMapper.readTree(payload).get("items").get(0).get("carpark_data");
+    }
+
+    private static int[] lots(JsonNode data) {
+        var lots = new int[2];
+        for (var info : data.get("carpark_info")) {
+            lots[0] += Integer.parseInt(info.get("total_lots").asText());
+            lots[1] += Integer.parseInt(info.get("lots_available").asText());
+        }
+        return lots;
+    }
+
+    private static int[] merge(int[] lots1, int[] lots2) {
+        return new int[]{lots1[0] + lots2[0], lots1[1] + lots2[1]};
+    }
+}
@@ -0,0 +1,32 @@
+package com.example.carpark.model;
+
+import com.example.carpark.benchmark.BenchmarkData;
+import org.openjdk.jmh.annotations.*;
+
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Reading and parsing {@code HDBCarparkInformation.csv} row by row, as the CSV import does before converting
+ * coordinates.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class CsvImportBenchmark {
+    private Path csvFile;
+
+    @Setup
+    public void setUp() {
+        csvFile = BenchmarkData.csvFile();
+    }
+
+    @Benchmark
+    public List<CarParkInformation> fromCsvFile() {
+        return CarParkInformation.fromCsvFile(csvFile).collect().asList().await().indefinitely();
+    }
+}
@@ -0,0 +1,134 @@
+package com.example.carpark.service;
+
+import com.example.carpark.benchmark.BenchmarkData;
+import com.example.carpark.entity.CarPark;
+import com.example.carpark.index.CarParkJsonFragments;
+import com.example.carpark.model.CarParkDto;
+import com.example.carpark.model.CarParkLotSnapshot;
+import com.example.carpark.model.NearestCarPark;
+import com.example.carpark.model.NearestCarParkQuery;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * <p>Nearest queries answered by {@link CarParkIndexService} over 2k car parks, those of the CSV, and 20k, where the
+ * KD-tree pulls away from a linear scan. Also the mapping to the response DTOs or JSON, and publishing one availability
+ * poll into the index, which covers the CSV's car parks.</p>
+ * <p>Each invocation queries the next of 1024 random origins over Singapore. Publishing alternates between two polls
+ * that differ in most car parks, so it measures the diff and the write to the availability table.</p>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class NearestQueryBenchmark {
+    @Param({"2000", "20000"})
+    public int size;
+
+    private CarParkIndexService carParkIndexService;
+    private List<CarPark> carParks;
+    private List<NearestCarParkQuery> queries;
+    private List<NearestCarParkQuery> deepQueries;
+    private List<NearestCarParkQuery> cursorQueries;
+    private List<NearestCarPark> page;
+    private CarParkLotSnapshot[] snapshots;
+    private ObjectMapper objectMapper;
+    private ByteArrayOutputStream out;
+    private int next;
+
+    @Setup
+    public void setUp() {
+        carParks = BenchmarkData.carParks(42, size);
+        carParkIndexService = new CarParkIndexService(null);
+        carParkIndexService.rebuild(carParks);
+
+        var origins = BenchmarkData.origins(1024, 7);
+        queries = Arrays.stream(origins)
+                .map(origin -> NearestCarParkQuery.builder().latitude(origin[0]).longitude(origin[1]).limit(10).build())
+                .toList();
+        deepQueries = queries.stream().map(query -> query.toBuilder().offset(500).build()).toList();
+        // Cursors positioned after the 500th result, the same page as deepQueries
+        cursorQueries = queries.stream()
+                .map(query -> query.toBuilder()
+                        .after(carParkIndexService.findNearestWithAvailability(query.toBuilder().limit(500).build()).getLast().cursor(query))
+                        .build())
+                .toList();
+        page = carParkIndexService.findNearestWithAvailability(queries.getFirst());
+        objectMapper = new ObjectMapper();
+        // Two polls with different lots, so every publish changes the table instead of finding nothing to write
+        snapshots = new CarParkLotSnapshot[]{
+                CarParkLotSnapshot.fromJson(objectMapper.getFactory(), BenchmarkData.availabilityPayload(43)),
+                CarParkLotSnapshot.fromJson(objectMapper.getFactory(), BenchmarkData.availabilityPayload(44))
+        };
+        out = new ByteArrayOutputStream(4096);
+    }
+
+    @Benchmark
+    public List<NearestCarPark> firstPage() {
+        return carParkIndexService.findNearestWithAvailability(queries.get(next++ & 1023));
+    }
+
+    @Benchmark
+    public List<NearestCarPark> deepPageByOffset() {
+        return carParkIndexService.findNearestWithAvailability(deepQueries.get(next++ & 1023));
+    }
+
+    @Benchmark
+    public List<NearestCarPark> deepPageByCursor() {
+        return carParkIndexService.findNearestWithAvailability(cursorQueries.get(next++ & 1023));
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(256)
+    public List<List<NearestCarPark>> batchOf256() {
+        var from = (next++ & 3) * 256;
+        return carParkIndexService.findNearestWithAvailabilityBatch(queries.subList(from, from + 256));
+    }
+
+    @Benchmark
+    public List<CarParkDto> pageToDtos() {
+        return page.stream().map(CarParkDto::fromNearest).toList();
+    }
+
+    @Benchmark
+    public byte[] pageToJsonWithJackson() throws IOException {
+        return objectMapper.writeValueAsBytes(page.stream().map(CarParkDto::fromNearest).toList());
+    }
+
+    @Benchmark
+    public int pageToJsonFromFragments() throws IOException {
+        // Same bytes as pageToJsonWithJackson, as CarParkJsonWriter writes them
+        out.reset();
+        var scratch = new byte[32];
+        out.write('[');
+        for (var i = 0; i < page.size(); i++) {
+            if (i > 0) {
+                out.write(',');
+            }
+            var nearest = page.get(i);
+            CarParkJsonFragments.write(out, nearest.getJsonFragment(), nearest.getCarPark().totalLots,
+                    nearest.getCarPark().availableLots, nearest.getDistanceMeters(), scratch);
+        }
+        out.write(']');
+        return out.size();
+    }
+
+    @Benchmark
+    public List<CarParkDto> allCarParksToDtos() {
+        return carParks.stream().map(CarParkDto::fromEntity).toList();
+    }
+
+    @Benchmark
+    public CarParkLotSnapshot publishAvailability() {
+        var timestamp = next++;
+        return carParkIndexService.publishAvailability(snapshots[timestamp & 1], timestamp);
+    }
+}
@@ -0,0 +1,55 @@
+package com.example.carpark.util;
+
+import com.example.carpark.benchmark.BenchmarkData;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * <p>SVY21 to WGS84 conversion of a whole CSV (2k rows) and of ten times that (20k)</p>
+ * <p>{@code singlePoints} is the per-row API, {@code batchInPlace} converts the whole array with one call. The batch
+ * input is copied on every invocation, that copy is part of its cost.</p>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ConverterUtilBenchmark {
+    @Param({"2000", "20000"})
+    public int size;
+
+    private ConverterUtil converterUtil;
+    private double[] xCoords;
+    private double[] yCoords;
+
+    @Setup
+    public void setUp() {
+        converterUtil = new ConverterUtil();
+        var carParkInfos = BenchmarkData.carParkInformation();
+        xCoords = new double[size];
+        yCoords = new double[size];
+        for (var i = 0; i < size; i++) {
+            var carParkInfo = carParkInfos.get(i % carParkInfos.size());
+            xCoords[i] = carParkInfo.getXCoord();
+            yCoords[i] = carParkInfo.getYCoord();
+        }
+    }
+
+    @Benchmark
+    public void singlePoints(Blackhole blackhole) {
+        for (var i = 0; i < size; i++) {
+            blackhole.consume(converterUtil.convertSVY21ToWGS84(xCoords[i], yCoords[i]));
+        }
+    }
+
+    @Benchmark
+    public double[] batchInPlace() {
+        var longitudes = xCoords.clone();
+        var latitudes = yCoords.clone();
+        converterUtil.convertSVY21ToWGS84(longitudes, latitudes);
+        return latitudes;
+    }
+}
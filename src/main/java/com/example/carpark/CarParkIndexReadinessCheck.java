@@ -0,0 +1,27 @@
+package com.example.carpark;
+
+import com.example.carpark.service.CarParkIndexService;
+import jakarta.inject.Inject;
+import org.eclipse.microprofile.health.HealthCheck;
+import org.eclipse.microprofile.health.HealthCheckResponse;
+import org.eclipse.microprofile.health.Readiness;
+
+/**
+ * Ready once the car park index is built, from the snapshot file or the database
+ */
+@Readiness
+public class CarParkIndexReadinessCheck implements HealthCheck {
+    private final CarParkIndexService carParkIndexService;
+
+    @Inject
+    public CarParkIndexReadinessCheck(CarParkIndexService carParkIndexService) {
+        this.carParkIndexService = carParkIndexService;
+    }
+
+    @Override
+    public HealthCheckResponse call() {
+        return HealthCheckResponse.named("car-park-index")
+                .status(carParkIndexService.isReady())
+                .build();
+    }
+}
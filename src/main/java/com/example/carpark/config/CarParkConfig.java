@@ -1,8 +1,147 @@
 package com.example.carpark.config;
 
 import io.smallrye.config.ConfigMapping;
+import io.smallrye.config.WithDefault;
+
+import java.util.Optional;
+import java.util.OptionalInt;
 
 @ConfigMapping(prefix = "app.carparks")
 public interface CarParkConfig {
     String availabilityApi();
+
+    NearestCache nearestCache();
+
+    ReadReplica readReplica();
+
+    RequestLog requestLog();
+
+    History history();
+
+    FanOut fanOut();
+
+    Snapshot snapshot();
+
+    CsvImport csvImport();
+
+    Viewport viewport();
+
+    interface NearestCache {
+        /**
+         * Serve PostGIS nearest queries through the local and Redis cache tiers
+         */
+        @WithDefault("true")
+        boolean enabled();
+
+        /**
+         * Grid step origins are snapped to, in degrees, 0.0005 is about 55 m
+         */
+        @WithDefault("0.0005")
+        double gridDegrees();
+
+        /**
+         * Expiry of Redis entries, on top of versioning
+         */
+        @WithDefault("300")
+        int ttlSeconds();
+
+        /**
+         * Max entries of the local LRU tier
+         */
+        @WithDefault("1000")
+        int localMaxEntries();
+    }
+
+    interface ReadReplica {
+        /**
+         * Reactive URL of a read replica for nearest queries, same format as quarkus.datasource.reactive.url, unset to
+         * read from the primary
+         */
+        Optional<String> url();
+
+        Optional<String> username();
+
+        Optional<String> password();
+
+        @WithDefault("20")
+        int maxSize();
+    }
+
+    interface RequestLog {
+        /**
+         * At most one INFO event per interval for each request type, full detail of every request is logged at DEBUG
+         */
+        @WithDefault("1000")
+        long sampleIntervalMillis();
+    }
+
+    interface History {
+        /**
+         * Append the changes of every availability refresh to {@code availability_history}
+         */
+        @WithDefault("true")
+        boolean enabled();
+
+        /**
+         * Days of raw deltas kept in daily partitions, older partitions are downsampled to hourly rows and dropped
+         */
+        @WithDefault("14")
+        int rawRetentionDays();
+
+        /**
+         * Days of hourly rows kept
+         */
+        @WithDefault("730")
+        int hourlyRetentionDays();
+
+        /**
+         * Max points a history query may return
+         */
+        @WithDefault("5000")
+        int maxPoints();
+    }
+
+    interface FanOut {
+        /**
+         * Push the changes of every refresh to the other instances through Redis, so they skip reloading availability
+         * from the database while no delta was missed
+         */
+        @WithDefault("true")
+        boolean enabled();
+
+        /**
+         * Delay before resubscribing after the subscription connection was lost
+         */
+        @WithDefault("5000")
+        long reconnectDelayMillis();
+    }
+
+    interface Snapshot {
+        /**
+         * Save the car park index to a local file after every import and refresh, and restore it at startup
+         */
+        @WithDefault("true")
+        boolean enabled();
+
+        /**
+         * Snapshot file, on a volume that outlives the process to warm up the next start
+         */
+        @WithDefault("carparks.snapshot")
+        String path();
+    }
+
+    interface CsvImport {
+        /**
+         * Threads projecting imported rows to WGS84 in parallel chunks, unset for half of the available processors
+         */
+        OptionalInt parallelism();
+    }
+
+    interface Viewport {
+        /**
+         * Most car parks an area or tile response holds, larger areas are rejected and should be split or zoomed in
+         */
+        @WithDefault("5000")
+        int maxResults();
+    }
 }
@@ -0,0 +1,85 @@
+package com.example.carpark.index;
+
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.function.Function;
+
+/**
+ * <p>Live availability of every car park, keyed by the dense id of {@link CarParkSpatialIndex}</p>
+ * <p>Values are updated in place by a single publisher and guarded by a sequence counter: it is odd while a refresh is
+ * being applied and even otherwise. Readers never block, they run optimistically and retry if a refresh overlapped,
+ * so a read through {@link #read(Function)} never observes a half-applied refresh.</p>
+ */
+public final class CarParkAvailabilityTable {
+    private final AtomicIntegerArray totalLots;
+    private final AtomicIntegerArray availableLots;
+    private final AtomicLongArray lastUpdated;
+    private final AtomicLong sequence = new AtomicLong();
+
+    public CarParkAvailabilityTable(int size) {
+        totalLots = new AtomicIntegerArray(size);
+        availableLots = new AtomicIntegerArray(size);
+        lastUpdated = new AtomicLongArray(size);
+    }
+
+    public int size() {
+        return totalLots.length();
+    }
+
+    /**
+     * Runs the reader against a consistent view of the table, re-running it if a refresh was published meanwhile.
+     * The reader may be invoked more than once and must not have side effects.
+     */
+    public <T> T read(Function<CarParkAvailabilityTable, T> reader) {
+        while (true) {
+            var before = sequence.get();
+            if ((before & 1) == 0) {
+                var result = reader.apply(this);
+                if (sequence.get() == before) {
+                    return result;
+                }
+            }
+            Thread.onSpinWait();
+        }
+    }
+
+    /**
+     * Number of refreshes published so far
+     */
+    public long version() {
+        return sequence.get() >>> 1;
+    }
+
+    public int totalLots(int id) {
+        return totalLots.get(id);
+    }
+
+    public int availableLots(int id) {
+        return availableLots.get(id);
+    }
+
+    public long lastUpdated(int id) {
+        return lastUpdated.get(id);
+    }
+
+    /**
+     * Applies a refresh in place. Publishers are serialized, readers are not blocked.
+     *
+     * @param count number of leading entries of the arrays to apply
+     * @param ids   dense ids of the refreshed car parks
+     */
+    public synchronized void publish(int count, int[] ids, int[] totalLots, int[] availableLots, long[] lastUpdated) {
+        sequence.incrementAndGet();
+        try {
+            for (var i = 0; i < count; i++) {
+                var id = ids[i];
+                this.totalLots.set(id, totalLots[i]);
+                this.availableLots.set(id, availableLots[i]);
+                this.lastUpdated.set(id, lastUpdated[i]);
+            }
+        } finally {
+            sequence.incrementAndGet();
+        }
+    }
+}
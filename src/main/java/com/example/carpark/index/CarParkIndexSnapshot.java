@@ -0,0 +1,156 @@
+package com.example.carpark.index;
+
+import com.example.carpark.entity.CarPark;
+import com.example.carpark.exception.CarParkException;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.CRC32C;
+import java.util.zip.CheckedOutputStream;
+
+/**
+ * <p>Static car park data and last availability of one instance, saved to a local file to warm up the next start</p>
+ * <p>Layout, big-endian: magic and format (4 + 4), save time in epoch milliseconds (8), availability delta sequence (8),
+ * fingerprint of the static data in the database, count (4), then for each car park its number and address, latitude
+ * and longitude (8 + 8), total and available lots (4 + 4) and {@code last_updated} in epoch milliseconds (8). Strings
+ * are UTF-8 prefixed by their length (2), -1 for null. A CRC32C of everything before it ends the file (8).</p>
+ * <p>Files are written to a temporary file and moved into place, so a reader never sees a partial file. They are read
+ * through a memory mapping, without copying the file onto the heap first.</p>
+ */
+public final class CarParkIndexSnapshot {
+    private static final int MAGIC = 0x43505358; // "CPSX"
+    private static final int FORMAT = 1;
+
+    private final long savedAt;
+    private final long deltaSequence;
+    private final String fingerprint;
+    private final List<CarPark> carParks;
+
+    public CarParkIndexSnapshot(long savedAt, long deltaSequence, String fingerprint, List<CarPark> carParks) {
+        this.savedAt = savedAt;
+        this.deltaSequence = deltaSequence;
+        this.fingerprint = fingerprint;
+        this.carParks = carParks;
+    }
+
+    public long getSavedAt() {
+        return savedAt;
+    }
+
+    /**
+     * @return last availability delta sequence applied before the save, 0 if unknown
+     */
+    public long getDeltaSequence() {
+        return deltaSequence;
+    }
+
+    /**
+     * @return fingerprint of the static data the car parks were loaded from, or null if unknown
+     */
+    public String getFingerprint() {
+        return fingerprint;
+    }
+
+    public List<CarPark> getCarParks() {
+        return carParks;
+    }
+
+    public void write(Path path) throws IOException {
+        if (path.getParent() != null) {
+            Files.createDirectories(path.getParent());
+        }
+        var temporary = path.resolveSibling(path.getFileName() + ".tmp");
+        var crc = new CRC32C();
+        try (var out = new DataOutputStream(new CheckedOutputStream(new BufferedOutputStream(Files.newOutputStream(temporary), 1 << 16), crc))) {
+            out.writeInt(MAGIC);
+            out.writeInt(FORMAT);
+            out.writeLong(savedAt);
+            out.writeLong(deltaSequence);
+            writeString(out, fingerprint);
+            out.writeInt(carParks.size());
+            for (var carPark : carParks) {
+                writeString(out, carPark.carParkNo);
+                writeString(out, carPark.address);
+                out.writeDouble(carPark.latitude);
+                out.writeDouble(carPark.longitude);
+                out.writeInt(carPark.totalLots);
+                out.writeInt(carPark.availableLots);
+                out.writeLong(carPark.lastUpdated != null ? carPark.lastUpdated.getTime() : 0L);
+            }
+            out.writeLong(crc.getValue());
+        }
+        Files.move(temporary, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * @throws CarParkException if the file is truncated, corrupt or of another format
+     */
+    public static CarParkIndexSnapshot read(Path path) throws IOException {
+        try (var channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            var buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            if (buffer.limit() < Long.BYTES || buffer.getInt(0) != MAGIC || buffer.getInt(Integer.BYTES) != FORMAT) {
+                throw new CarParkException("Not a car park snapshot of format " + FORMAT + ": " + path);
+            }
+            var crc = new CRC32C();
+            crc.update(buffer.slice(0, buffer.limit() - Long.BYTES));
+            if (crc.getValue() != buffer.getLong(buffer.limit() - Long.BYTES)) {
+                throw new CarParkException("Car park snapshot is corrupt: " + path);
+            }
+            buffer.position(2 * Integer.BYTES);
+            var savedAt = buffer.getLong();
+            var deltaSequence = buffer.getLong();
+            var fingerprint = readString(buffer);
+            var count = buffer.getInt();
+            var carParks = new ArrayList<CarPark>(count);
+            for (var i = 0; i < count; i++) {
+                carParks.add(CarPark.builder()
+                        .carParkNo(readString(buffer))
+                        .address(readString(buffer))
+                        .latitude(buffer.getDouble())
+                        .longitude(buffer.getDouble())
+                        .totalLots(buffer.getInt())
+                        .availableLots(buffer.getInt())
+                        .lastUpdated(new Timestamp(buffer.getLong()))
+                        .build());
+            }
+            return new CarParkIndexSnapshot(savedAt, deltaSequence, fingerprint, carParks);
+        } catch (BufferUnderflowException | IllegalArgumentException e) {
+            throw new CarParkException("Car park snapshot is truncated: " + path, e);
+        }
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        if (value == null) {
+            out.writeShort(-1);
+            return;
+        }
+        var bytes = value.getBytes(StandardCharsets.UTF_8);
+        if (bytes.length > Short.MAX_VALUE) {
+            throw new IOException("String of " + bytes.length + " bytes does not fit a car park snapshot");
+        }
+        out.writeShort(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(ByteBuffer buffer) {
+        var length = buffer.getShort();
+        if (length < 0) {
+            return null;
+        }
+        var bytes = new byte[length];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
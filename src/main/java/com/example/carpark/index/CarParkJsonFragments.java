@@ -0,0 +1,151 @@
+package com.example.carpark.index;
+
+import com.fasterxml.jackson.core.io.JsonStringEncoder;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * <p>Pre-encoded JSON of a car park in a nearest response, the same bytes Jackson writes for {@code CarParkDto}</p>
+ * <p>The static part, from the opening brace to the {@code totalLots} name, is encoded once per car park when the
+ * index is built. Lots and distance change per refresh and per request, so they are appended as plain numbers when
+ * the response is written, from the same consistent read of the availability table that answered the query.</p>
+ * <p>Fragment hashes and lots also make up the entity tags of tiles: a tag changes exactly when a car park of the tile
+ * is added, removed, moved or renamed, or its lots change, and every instance computes the same tag.</p>
+ */
+public final class CarParkJsonFragments {
+    private static final byte[] ADDRESS = ascii("{\"address\":");
+    private static final byte[] LATITUDE = ascii(",\"latitude\":");
+    private static final byte[] LONGITUDE = ascii(",\"longitude\":");
+    private static final byte[] TOTAL_LOTS = ascii(",\"totalLots\":");
+    private static final byte[] AVAILABLE_LOTS = ascii(",\"availableLots\":");
+    private static final byte[] DISTANCE_METERS = ascii(",\"distanceMeters\":");
+    private static final byte[] NULL = ascii("null");
+
+    private static final long FNV_OFFSET_BASIS = 0xCBF29CE484222325L;
+    private static final long FNV_PRIME = 0x100000001B3L;
+
+    private CarParkJsonFragments() {
+    }
+
+    /**
+     * @return the car park's JSON object up to and including the {@code totalLots} name
+     */
+    public static byte[] encode(String address, double latitude, double longitude) {
+        var escaped = address != null ? JsonStringEncoder.getInstance().quoteAsUTF8(address) : null;
+        var latitudeText = Double.toString(latitude);
+        var longitudeText = Double.toString(longitude);
+        var fragment = new byte[ADDRESS.length + (escaped != null ? escaped.length + 2 : NULL.length)
+                + LATITUDE.length + latitudeText.length() + LONGITUDE.length + longitudeText.length() + TOTAL_LOTS.length];
+        var position = put(fragment, 0, ADDRESS);
+        if (escaped != null) {
+            fragment[position++] = '"';
+            position = put(fragment, position, escaped);
+            fragment[position++] = '"';
+        } else {
+            position = put(fragment, position, NULL);
+        }
+        position = put(fragment, position, LATITUDE);
+        position = put(fragment, position, latitudeText);
+        position = put(fragment, position, LONGITUDE);
+        position = put(fragment, position, longitudeText);
+        put(fragment, position, TOTAL_LOTS);
+        return fragment;
+    }
+
+    /**
+     * Writes a whole car park object: the fragment, then lots and distance
+     *
+     * @param scratch at least 32 bytes, reused across calls to format numbers without allocating
+     */
+    public static void write(OutputStream out, byte[] fragment, int totalLots, int availableLots, double distanceMeters,
+                             byte[] scratch) throws IOException {
+        writeLots(out, fragment, totalLots, availableLots, scratch);
+        out.write(DISTANCE_METERS);
+        var length = put(scratch, 0, Double.toString(distanceMeters));
+        scratch[length++] = '}';
+        out.write(scratch, 0, length);
+    }
+
+    /**
+     * Writes a whole car park object without distance, for area and tile responses
+     *
+     * @param scratch at least 32 bytes, reused across calls to format numbers without allocating
+     */
+    public static void write(OutputStream out, byte[] fragment, int totalLots, int availableLots, byte[] scratch) throws IOException {
+        writeLots(out, fragment, totalLots, availableLots, scratch);
+        out.write('}');
+    }
+
+    private static void writeLots(OutputStream out, byte[] fragment, int totalLots, int availableLots, byte[] scratch) throws IOException {
+        out.write(fragment);
+        out.write(scratch, 0, putInt(scratch, 0, totalLots));
+        out.write(AVAILABLE_LOTS);
+        out.write(scratch, 0, putInt(scratch, 0, availableLots));
+    }
+
+    /**
+     * @return 64-bit FNV-1a hash of a fragment, stable across instances and restarts
+     */
+    public static long hash(byte[] fragment) {
+        var hash = FNV_OFFSET_BASIS;
+        for (var b : fragment) {
+            hash = (hash ^ (b & 0xFF)) * FNV_PRIME;
+        }
+        return hash;
+    }
+
+    /**
+     * Folds one car park into an entity tag, starting from {@link #emptyTag()}. Car parks must be folded in a stable
+     * order, such as by car park number.
+     */
+    public static long tag(long tag, long fragmentHash, int totalLots, int availableLots) {
+        tag = mix(tag ^ fragmentHash);
+        return mix(tag ^ ((long) totalLots << 32 | availableLots & 0xFFFFFFFFL));
+    }
+
+    public static long emptyTag() {
+        return FNV_OFFSET_BASIS;
+    }
+
+    // Finalizer of SplitMix64, spreads every input bit over the whole hash
+    private static long mix(long value) {
+        value = (value ^ value >>> 30) * 0xBF58476D1CE4E5B9L;
+        value = (value ^ value >>> 27) * 0x94D049BB133111EBL;
+        return value ^ value >>> 31;
+    }
+
+    private static int put(byte[] target, int position, byte[] bytes) {
+        System.arraycopy(bytes, 0, target, position, bytes.length);
+        return position + bytes.length;
+    }
+
+    // Numbers are ASCII, so each char is one byte
+    private static int put(byte[] target, int position, String ascii) {
+        for (var i = 0; i < ascii.length(); i++) {
+            target[position++] = (byte) ascii.charAt(i);
+        }
+        return position;
+    }
+
+    private static int putInt(byte[] target, int position, int value) {
+        if (value < 0) {
+            return put(target, position, Integer.toString(value)); // Not expected for lots, kept exact anyway
+        }
+        var digits = 1;
+        for (var rest = value / 10; rest > 0; rest /= 10) {
+            digits++;
+        }
+        var end = position + digits;
+        for (var i = end - 1; i >= position; i--) {
+            target[i] = (byte) ('0' + value % 10);
+            value /= 10;
+        }
+        return end;
+    }
+
+    private static byte[] ascii(String text) {
+        return text.getBytes(StandardCharsets.US_ASCII);
+    }
+}
@@ -0,0 +1,522 @@
+package com.example.carpark.index;
+
+import com.example.carpark.entity.CarPark;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.IntPredicate;
+
+/**
+ * <p>Immutable, read-optimized spatial index over static car park data</p>
+ * <p>Every car park gets a dense id (its position when sorted by car park number) and its location is projected onto
+ * the unit sphere. The points are kept in an implicit KD-tree over primitive arrays, so a nearest lookup touches only
+ * a few cache lines and allocates nothing but the result. Live availability is kept apart in
+ * {@link CarParkAvailabilityTable} under the same ids.</p>
+ * <p>Bounding box lookups go through a uniform latitude/longitude grid of {@link #GRID_DEGREES} cells instead, which
+ * only visits the cells the box overlaps.</p>
+ * <p>The chord between two points on the sphere grows monotonically with the great-circle distance, which is what
+ * PostGIS uses for {@code geography <->}. Results are ordered by {@link #distanceKey(double)}, the distance in whole
+ * millimeters, then by car park number, the same order as the KNN query, so that both agree on a page boundary even
+ * where their last digits of distance differ.</p>
+ */
+public final class CarParkSpatialIndex {
+    public static final double EARTH_RADIUS_METERS = 6_371_008.8; // mean radius, same sphere as PostGIS geography
+    public static final double GRID_DEGREES = 0.01; // about 1.1 km, a few car parks per cell in a dense estate
+
+    private final String[] carParkNos;
+    private final String[] addresses;
+    private final double[] latitudes;
+    private final double[] longitudes;
+    private final byte[][] jsonFragments;
+    private final long[] jsonFragmentHashes;
+    private final Map<String, Integer> idsByCarParkNo;
+
+    // Ids of each occupied grid cell, ascending
+    private final Map<Long, int[]> cells;
+
+    // Unit sphere coordinates by dense id
+    private final double[] xs;
+    private final double[] ys;
+    private final double[] zs;
+
+    // Implicit KD-tree: node of [lo, hi) is at (lo + hi) >>> 1, split axis is depth % 3
+    private final int[] tree;
+    // Box around all points, min x, y, z then max x, y, z, that the split planes cut down to the box of each subtree
+    private final double[] bounds;
+
+    private CarParkSpatialIndex(List<CarPark> carParks) {
+        var sorted = carParks.stream().sorted(Comparator.comparing((CarPark carPark) -> carPark.carParkNo)).toList();
+        var size = sorted.size();
+        carParkNos = new String[size];
+        addresses = new String[size];
+        latitudes = new double[size];
+        longitudes = new double[size];
+        jsonFragments = new byte[size][];
+        jsonFragmentHashes = new long[size];
+        idsByCarParkNo = HashMap.newHashMap(size);
+        xs = new double[size];
+        ys = new double[size];
+        zs = new double[size];
+        tree = new int[size];
+
+        for (var id = 0; id < size; id++) {
+            var carPark = sorted.get(id);
+            carParkNos[id] = carPark.carParkNo;
+            addresses[id] = carPark.address;
+            latitudes[id] = carPark.latitude;
+            longitudes[id] = carPark.longitude;
+            jsonFragments[id] = CarParkJsonFragments.encode(carPark.address, carPark.latitude, carPark.longitude);
+            jsonFragmentHashes[id] = CarParkJsonFragments.hash(jsonFragments[id]);
+            idsByCarParkNo.put(carPark.carParkNo, id);
+
+            var lat = Math.toRadians(carPark.latitude);
+            var lon = Math.toRadians(carPark.longitude);
+            xs[id] = Math.cos(lat) * Math.cos(lon);
+            ys[id] = Math.cos(lat) * Math.sin(lon);
+            zs[id] = Math.sin(lat);
+            tree[id] = id;
+        }
+        build(0, size, 0);
+        bounds = buildBounds();
+        cells = buildGrid();
+    }
+
+    private double[] buildBounds() {
+        var box = new double[]{1, 1, 1, -1, -1, -1};
+        for (var id = 0; id < size(); id++) {
+            for (var axis = 0; axis < 3; axis++) {
+                box[axis] = Math.min(box[axis], coordinates(axis)[id]);
+                box[3 + axis] = Math.max(box[3 + axis], coordinates(axis)[id]);
+            }
+        }
+        return box;
+    }
+
+    private Map<Long, int[]> buildGrid() {
+        var members = new HashMap<Long, List<Integer>>();
+        for (var id = 0; id < size(); id++) {
+            members.computeIfAbsent(cellKey(cell(latitudes[id]), cell(longitudes[id])), key -> new ArrayList<>()).add(id);
+        }
+        var grid = HashMap.<Long, int[]>newHashMap(members.size());
+        members.forEach((key, ids) -> grid.put(key, ids.stream().mapToInt(Integer::intValue).toArray()));
+        return grid;
+    }
+
+    private static long cell(double degrees) {
+        return (long) Math.floor(degrees / GRID_DEGREES);
+    }
+
+    private static long cellKey(long latitudeCell, long longitudeCell) {
+        return latitudeCell << 32 | longitudeCell & 0xFFFFFFFFL;
+    }
+
+    public static CarParkSpatialIndex build(List<CarPark> carParks) {
+        return new CarParkSpatialIndex(carParks);
+    }
+
+    public int size() {
+        return carParkNos.length;
+    }
+
+    /**
+     * @return dense id of the car park, or -1 if it is not indexed
+     */
+    public int idOf(String carParkNo) {
+        var id = idsByCarParkNo.get(carParkNo);
+        return id != null ? id : -1;
+    }
+
+    public String carParkNo(int id) {
+        return carParkNos[id];
+    }
+
+    public String address(int id) {
+        return addresses[id];
+    }
+
+    public double latitude(int id) {
+        return latitudes[id];
+    }
+
+    public double longitude(int id) {
+        return longitudes[id];
+    }
+
+    /**
+     * @return static part of the car park's JSON in nearest responses, see {@link CarParkJsonFragments}
+     */
+    public byte[] jsonFragment(int id) {
+        return jsonFragments[id];
+    }
+
+    /**
+     * @return {@link CarParkJsonFragments#hash(byte[])} of the car park's fragment
+     */
+    public long jsonFragmentHash(int id) {
+        return jsonFragmentHashes[id];
+    }
+
+    /**
+     * Great-circle distance on the PostGIS sphere between the car park and the given point
+     */
+    public double distanceMeters(int id, double latitude, double longitude) {
+        var lat = Math.toRadians(latitude);
+        var lon = Math.toRadians(longitude);
+        return toMeters(squaredChord(id, Math.cos(lat) * Math.cos(lon), Math.cos(lat) * Math.sin(lon), Math.sin(lat)));
+    }
+
+    /**
+     * Great-circle distance on the PostGIS sphere between two points
+     */
+    public static double distanceMeters(double latitude1, double longitude1, double latitude2, double longitude2) {
+        var lat1 = Math.toRadians(latitude1);
+        var lon1 = Math.toRadians(longitude1);
+        var lat2 = Math.toRadians(latitude2);
+        var lon2 = Math.toRadians(longitude2);
+        var dx = Math.cos(lat1) * Math.cos(lon1) - Math.cos(lat2) * Math.cos(lon2);
+        var dy = Math.cos(lat1) * Math.sin(lon1) - Math.cos(lat2) * Math.sin(lon2);
+        var dz = Math.sin(lat1) - Math.sin(lat2);
+        return toMeters(dx * dx + dy * dy + dz * dz);
+    }
+
+    /**
+     * <p>Distance rounded half up to whole millimeters, what nearest results are ordered and paged by before the car
+     * park number</p>
+     * <p>SQL computes it as {@code floor(distance * 1000 + 0.5)}.</p>
+     */
+    public static long distanceKey(double distanceMeters) {
+        return (long) Math.floor(distanceMeters * 1000 + 0.5);
+    }
+
+    /**
+     * @return a millimeter short of the distance's key, every distance nearer than it has a smaller key. Used to skip
+     * what lies before a cursor without looking at it.
+     */
+    public static double belowDistanceKey(double distanceMeters) {
+        return Math.max(0, (distanceKey(distanceMeters) - 1) / 1000.0);
+    }
+
+    private static double toMeters(double squaredChord) {
+        return 2 * EARTH_RADIUS_METERS * Math.asin(Math.min(1.0, Math.sqrt(squaredChord) / 2));
+    }
+
+    /**
+     * <p>Find the k nearest car parks accepted by the filter</p>
+     *
+     * @param limit  max number of results
+     * @param offset number of leading results to skip, same as SQL OFFSET
+     * @param filter accepts dense ids that may be returned
+     * @return dense ids ordered by {@link #distanceKey(double)}, then car park number
+     */
+    public int[] nearest(double latitude, double longitude, int limit, int offset, IntPredicate filter) {
+        return nearest(latitude, longitude, limit, offset, Double.POSITIVE_INFINITY, filter);
+    }
+
+    /**
+     * <p>Find the k nearest car parks accepted by the filter, no farther than the radius</p>
+     * <p>Subtrees beyond the radius are never visited, like an {@code ST_DWithin} prefilter.</p>
+     *
+     * @param radiusMeters max great-circle distance, inclusive
+     */
+    public int[] nearest(double latitude, double longitude, int limit, int offset, double radiusMeters, IntPredicate filter) {
+        return nearest(latitude, longitude, limit, offset, 0, radiusMeters, filter);
+    }
+
+    /**
+     * <p>Find the k nearest car parks accepted by the filter, between the two distances</p>
+     * <p>Subtrees wholly nearer than {@code minMeters} are never visited either, so a keyset page past a cursor costs
+     * about the same however deep it is: only the nodes around the cursor's circle are walked, not the ones inside.</p>
+     *
+     * @param minMeters min great-circle distance, inclusive
+     */
+    public int[] nearest(double latitude, double longitude, int limit, int offset, double minMeters, double radiusMeters,
+                         IntPredicate filter) {
+        if (limit < 0 || offset < 0) {
+            throw new IllegalArgumentException("Limit and offset must not be negative: " + limit + ", " + offset);
+        }
+        var k = (int) Math.min((long) limit + offset, size());
+        if (k <= 0 || offset >= k) {
+            return new int[0];
+        }
+
+        var lat = Math.toRadians(latitude);
+        var lon = Math.toRadians(longitude);
+        var heap = new NeighbourHeap(k, minMeters > 0 ? squaredChord(minMeters) : 0, squaredChord(radiusMeters));
+        search(0, size(), 0, Math.cos(lat) * Math.cos(lon), Math.cos(lat) * Math.sin(lon), Math.sin(lat), filter, heap,
+                bounds.clone());
+
+        var ordered = heap.drainAscending();
+        return ordered.length <= offset ? new int[0] : Arrays.copyOfRange(ordered, offset, ordered.length);
+    }
+
+    /**
+     * <p>Find the car parks inside a latitude/longitude box, bounds included</p>
+     * <p>Only the grid cells the box overlaps are visited, or every occupied cell when the box covers more cells than
+     * are occupied.</p>
+     *
+     * @param limit max number of results, the lookup stops once it is reached
+     * @return dense ids in ascending order, which is car park number order
+     */
+    public int[] within(double minLatitude, double minLongitude, double maxLatitude, double maxLongitude, int limit) {
+        var found = new int[Math.max(0, Math.min(limit, size()))];
+        var count = 0;
+        var minLatitudeCell = cell(minLatitude);
+        var maxLatitudeCell = cell(maxLatitude);
+        var minLongitudeCell = cell(minLongitude);
+        var maxLongitudeCell = cell(maxLongitude);
+        var overlapped = (maxLatitudeCell - minLatitudeCell + 1) * (maxLongitudeCell - minLongitudeCell + 1);
+        if (overlapped <= cells.size()) {
+            for (var latitudeCell = minLatitudeCell; latitudeCell <= maxLatitudeCell && count < found.length; latitudeCell++) {
+                for (var longitudeCell = minLongitudeCell; longitudeCell <= maxLongitudeCell && count < found.length; longitudeCell++) {
+                    var ids = cells.get(cellKey(latitudeCell, longitudeCell));
+                    if (ids != null) {
+                        count = collectWithin(ids, minLatitude, minLongitude, maxLatitude, maxLongitude, found, count);
+                    }
+                }
+            }
+        } else {
+            for (var ids : cells.values()) {
+                if (count == found.length) {
+                    break;
+                }
+                count = collectWithin(ids, minLatitude, minLongitude, maxLatitude, maxLongitude, found, count);
+            }
+        }
+        var result = Arrays.copyOf(found, count);
+        Arrays.sort(result);
+        return result;
+    }
+
+    private int collectWithin(int[] ids, double minLatitude, double minLongitude, double maxLatitude, double maxLongitude,
+                              int[] found, int count) {
+        for (var id : ids) {
+            if (count == found.length) {
+                break;
+            }
+            if (latitudes[id] >= minLatitude && latitudes[id] <= maxLatitude
+                    && longitudes[id] >= minLongitude && longitudes[id] <= maxLongitude) {
+                found[count++] = id;
+            }
+        }
+        return count;
+    }
+
+    private static double squaredChord(double distanceMeters) {
+        if (distanceMeters >= Math.PI * EARTH_RADIUS_METERS) {
+            return Double.POSITIVE_INFINITY;
+        }
+        var chord = 2 * Math.sin(distanceMeters / (2 * EARTH_RADIUS_METERS));
+        return chord * chord;
+    }
+
+    private void build(int lo, int hi, int depth) {
+        if (hi - lo <= 1) {
+            return;
+        }
+        var mid = (lo + hi) >>> 1;
+        select(lo, hi - 1, mid, coordinates(depth % 3));
+        build(lo, mid, depth + 1);
+        build(mid + 1, hi, depth + 1);
+    }
+
+    /**
+     * Quickselect on tree[lo..hi] so that tree[k] holds the median along the axis
+     */
+    private void select(int lo, int hi, int k, double[] axis) {
+        while (hi > lo) {
+            var pivot = axis[tree[(lo + hi) >>> 1]];
+            var i = lo;
+            var j = hi;
+            while (i <= j) {
+                while (axis[tree[i]] < pivot) i++;
+                while (axis[tree[j]] > pivot) j--;
+                if (i <= j) {
+                    var tmp = tree[i];
+                    tree[i++] = tree[j];
+                    tree[j--] = tmp;
+                }
+            }
+            if (k <= j) {
+                hi = j;
+            } else if (k >= i) {
+                lo = i;
+            } else {
+                return;
+            }
+        }
+    }
+
+    /**
+     * @param box box of the subtree [lo, hi), narrowed in place on the way down and restored on the way back
+     */
+    private void search(int lo, int hi, int depth, double x, double y, double z, IntPredicate filter, NeighbourHeap heap,
+                        double[] box) {
+        // A subtree wholly nearer than the min holds nothing to return
+        if (lo >= hi || heap.minDistance > 0 && farthestSquaredChord(box, x, y, z) < heap.minDistance) {
+            return;
+        }
+        var mid = (lo + hi) >>> 1;
+        var id = tree[mid];
+        var distance = squaredChord(id, x, y, z);
+        if (distance >= heap.minDistance && heap.accepts(distance) && filter.test(id)) {
+            heap.offer(id, distance);
+        }
+
+        var axis = depth % 3;
+        var split = coordinates(axis)[id];
+        var delta = (axis == 0 ? x : axis == 1 ? y : z) - split;
+        if (delta < 0) {
+            searchLow(lo, mid, depth, axis, split, x, y, z, filter, heap, box);
+            if (heap.accepts(delta * delta)) {
+                searchHigh(mid + 1, hi, depth, axis, split, x, y, z, filter, heap, box);
+            }
+        } else {
+            searchHigh(mid + 1, hi, depth, axis, split, x, y, z, filter, heap, box);
+            if (heap.accepts(delta * delta)) {
+                searchLow(lo, mid, depth, axis, split, x, y, z, filter, heap, box);
+            }
+        }
+    }
+
+    private void searchLow(int lo, int hi, int depth, int axis, double split, double x, double y, double z,
+                           IntPredicate filter, NeighbourHeap heap, double[] box) {
+        var max = box[3 + axis];
+        box[3 + axis] = split;
+        search(lo, hi, depth + 1, x, y, z, filter, heap, box);
+        box[3 + axis] = max;
+    }
+
+    private void searchHigh(int lo, int hi, int depth, int axis, double split, double x, double y, double z,
+                            IntPredicate filter, NeighbourHeap heap, double[] box) {
+        var min = box[axis];
+        box[axis] = split;
+        search(lo, hi, depth + 1, x, y, z, filter, heap, box);
+        box[axis] = min;
+    }
+
+    // Squared distance from the point to the farthest corner of the box
+    private static double farthestSquaredChord(double[] box, double x, double y, double z) {
+        var dx = Math.max(Math.abs(x - box[0]), Math.abs(x - box[3]));
+        var dy = Math.max(Math.abs(y - box[1]), Math.abs(y - box[4]));
+        var dz = Math.max(Math.abs(z - box[2]), Math.abs(z - box[5]));
+        return dx * dx + dy * dy + dz * dz;
+    }
+
+    private double squaredChord(int id, double x, double y, double z) {
+        var dx = xs[id] - x;
+        var dy = ys[id] - y;
+        var dz = zs[id] - z;
+        return dx * dx + dy * dy + dz * dz;
+    }
+
+    private double[] coordinates(int axis) {
+        return axis == 0 ? xs : axis == 1 ? ys : zs;
+    }
+
+    /**
+     * <p>Bounded max-heap of (distance key, id), worst neighbour on top, that ignores anything nearer than the min or
+     * beyond the max squared chord</p>
+     * <p>Candidates and subtrees are screened on the squared chord, against a bound a little past the worst key so
+     * that ties on the key still reach {@link #offer(int, double)}.</p>
+     */
+    private static final class NeighbourHeap {
+        private final int[] ids;
+        private final long[] keys;
+        private final double minDistance;
+        private final double maxDistance;
+        private double bound;
+        private int size;
+
+        NeighbourHeap(int capacity, double minDistance, double maxDistance) {
+            ids = new int[capacity];
+            keys = new long[capacity];
+            this.minDistance = minDistance;
+            this.maxDistance = maxDistance;
+            bound = maxDistance;
+        }
+
+        boolean accepts(double distance) {
+            return distance <= bound;
+        }
+
+        void offer(int id, double distance) {
+            if (distance > maxDistance) {
+                return;
+            }
+            var key = distanceKey(toMeters(distance));
+            if (size < ids.length) {
+                ids[size] = id;
+                keys[size] = key;
+                siftUp(size++);
+            } else if (worse(keys[0], ids[0], key, id)) {
+                ids[0] = id;
+                keys[0] = key;
+                siftDown(0, size);
+            } else {
+                return;
+            }
+            if (size == ids.length) {
+                // Half a millimeter past the worst key, more than any rounding of the chord
+                bound = Math.min(maxDistance, squaredChord((keys[0] + 1) / 1000.0));
+            }
+        }
+
+        int[] drainAscending() {
+            var count = size;
+            while (size > 1) {
+                swap(0, --size);
+                siftDown(0, size);
+            }
+            size = 0;
+            return Arrays.copyOf(ids, count);
+        }
+
+        // Ids are assigned in car park number order, so comparing ids breaks distance ties like ORDER BY car_park_no
+        private static boolean worse(long key1, int id1, long key2, int id2) {
+            return key1 > key2 || (key1 == key2 && id1 > id2);
+        }
+
+        private void siftUp(int i) {
+            while (i > 0) {
+                var parent = (i - 1) >>> 1;
+                if (!worse(keys[i], ids[i], keys[parent], ids[parent])) {
+                    return;
+                }
+                swap(i, parent);
+                i = parent;
+            }
+        }
+
+        private void siftDown(int i, int end) {
+            while (true) {
+                var left = 2 * i + 1;
+                if (left >= end) {
+                    return;
+                }
+                var largest = left;
+                var right = left + 1;
+                if (right < end && worse(keys[right], ids[right], keys[left], ids[left])) {
+                    largest = right;
+                }
+                if (!worse(keys[largest], ids[largest], keys[i], ids[i])) {
+                    return;
+                }
+                swap(i, largest);
+                i = largest;
+            }
+        }
+
+        private void swap(int i, int j) {
+            var id = ids[i];
+            ids[i] = ids[j];
+            ids[j] = id;
+            var key = keys[i];
+            keys[i] = keys[j];
+            keys[j] = key;
+        }
+    }
+}
@@ -0,0 +1,144 @@
+package com.example.carpark.metrics;
+
+import com.example.carpark.model.NearestCarParkQuery;
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.inject.Inject;
+import org.eclipse.microprofile.metrics.Counter;
+import org.eclipse.microprofile.metrics.MetricRegistry;
+import org.eclipse.microprofile.metrics.Tag;
+import org.eclipse.microprofile.metrics.Timer;
+
+import java.time.Duration;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Application metrics exposed on {@code /q/metrics}
+ */
+@ApplicationScoped
+public class CarParkMetrics {
+    // Page depth buckets of nearest queries, bounded so the number of series stays fixed
+    private static final String[] PAGE_DEPTHS = {"1", "2-5", "6-20", "21+", "cursor"};
+    private static final String[] NEAREST_SOURCES = {"index", "database"};
+    private static final String[] SKIP_REASONS = {"not_modified", "same_hash", "same_timestamp"};
+
+    private final AtomicInteger lastRunChanged = new AtomicInteger();
+    private final AtomicInteger lastRunUnchanged = new AtomicInteger();
+    private final AtomicInteger lastRunUpdated = new AtomicInteger();
+    private final AtomicLong newestLastUpdated = new AtomicLong();
+    private final Counter changedTotal;
+    private final Counter unchangedTotal;
+    private final Counter fetchRetries;
+    private final Counter importedTotal;
+    private final Timer refreshDuration;
+    private final Map<RefreshStage, Timer> refreshStageDurations = new EnumMap<>(RefreshStage.class);
+    private final Map<String, Counter> skippedRefreshes = new HashMap<>();
+    private final Timer importDuration;
+    private final Timer[][] nearestDurations = new Timer[NEAREST_SOURCES.length][PAGE_DEPTHS.length];
+
+    @Inject
+    public CarParkMetrics(MetricRegistry metricRegistry) {
+        metricRegistry.gauge("carparks.availability.last_run.changed", lastRunChanged, AtomicInteger::get);
+        metricRegistry.gauge("carparks.availability.last_run.unchanged", lastRunUnchanged, AtomicInteger::get);
+        metricRegistry.gauge("carparks.availability.last_run.updated", lastRunUpdated, AtomicInteger::get);
+        metricRegistry.gauge("carparks.availability.staleness.seconds", newestLastUpdated, CarParkMetrics::secondsSince);
+        changedTotal = metricRegistry.counter("carparks.availability.changed");
+        unchangedTotal = metricRegistry.counter("carparks.availability.unchanged");
+        fetchRetries = metricRegistry.counter("carparks.availability.fetch.retries");
+        importedTotal = metricRegistry.counter("carparks.import.rows");
+        refreshDuration = metricRegistry.timer("carparks.availability.refresh.duration");
+        for (var stage : RefreshStage.values()) {
+            refreshStageDurations.put(stage, metricRegistry.timer("carparks.availability.refresh.stage.duration", new Tag("stage", stage.getValue())));
+        }
+        for (var reason : SKIP_REASONS) {
+            skippedRefreshes.put(reason, metricRegistry.counter("carparks.availability.refresh.skipped", new Tag("reason", reason)));
+        }
+        importDuration = metricRegistry.timer("carparks.import.duration");
+        for (var source = 0; source < NEAREST_SOURCES.length; source++) {
+            for (var depth = 0; depth < PAGE_DEPTHS.length; depth++) {
+                nearestDurations[source][depth] = metricRegistry.timer("carparks.nearest.duration",
+                        new Tag("source", NEAREST_SOURCES[source]), new Tag("page_depth", PAGE_DEPTHS[depth]));
+            }
+        }
+    }
+
+    /**
+     * Records how many car parks changed availability in one scheduler run, how many did not and how many rows were
+     * written, with the run's duration from the availability reload to the database write
+     */
+    public void recordAvailabilityRun(int changed, int unchanged, int updated, Duration duration) {
+        refreshDuration.update(duration);
+        lastRunChanged.set(changed);
+        lastRunUnchanged.set(unchanged);
+        lastRunUpdated.set(updated);
+        changedTotal.inc(changed);
+        unchangedTotal.inc(unchanged);
+    }
+
+    /**
+     * Records a refresh cycle that stopped early because the upstream feed had not changed, by reason:
+     * {@code not_modified}, {@code same_hash} or {@code same_timestamp}
+     */
+    public void recordSkippedRefresh(String reason, Duration duration) {
+        refreshDuration.update(duration);
+        skippedRefreshes.get(reason).inc();
+    }
+
+    /**
+     * Records one stage of a refresh cycle, successful or not
+     */
+    public void recordRefreshStage(RefreshStage stage, Duration duration) {
+        refreshStageDurations.get(stage).update(duration);
+    }
+
+    /**
+     * Records the retries the availability fetch needed before it succeeded or gave up
+     */
+    public void recordFetchRetries(int retries) {
+        if (retries > 0) {
+            fetchRetries.inc(retries);
+        }
+    }
+
+    /**
+     * Records the newest {@code last_updated} this instance serves, in epoch milliseconds. Staleness is its age at
+     * scrape time.
+     */
+    public void recordNewestLastUpdated(long epochMillis) {
+        newestLastUpdated.set(epochMillis);
+    }
+
+    /**
+     * Records one nearest query, by where it was answered and how deep it paged
+     */
+    public void recordNearestQuery(NearestCarParkQuery query, boolean fromIndex, Duration duration) {
+        nearestDurations[fromIndex ? 0 : 1][pageDepth(query)].update(duration);
+    }
+
+    /**
+     * Records one CSV import, from the first row read to the last batch committed
+     */
+    public void recordImport(int rows, Duration duration) {
+        importedTotal.inc(rows);
+        importDuration.update(duration);
+    }
+
+    private static int pageDepth(NearestCarParkQuery query) {
+        if (query.getAfter() != null) {
+            return 4;
+        }
+        var page = query.getLimit() > 0 ? query.getOffset() / query.getLimit() + 1 : 1;
+        if (page <= 1) {
+            return 0;
+        }
+        return page <= 5 ? 1 : page <= 20 ? 2 : 3;
+    }
+
+    private static double secondsSince(AtomicLong epochMillis) {
+        var millis = epochMillis.get();
+        return millis > 0 ? (System.currentTimeMillis() - millis) / 1000.0 : Double.NaN;
+    }
+}
@@ -0,0 +1,41 @@
+package com.example.carpark.metrics;
+
+/**
+ * Stages of one availability refresh cycle, each timed as {@code carparks.availability.refresh.stage.duration}
+ */
+public enum RefreshStage {
+    LOCK_ACQUIRE("lock_acquire"),
+    /**
+     * Reloading the availability table from {@code car_parks}
+     */
+    DB_LOAD("db_load"),
+    /**
+     * Calling the availability API, retries included
+     */
+    FETCH("fetch"),
+    PARSE("parse"),
+    /**
+     * Diffing against the availability table and publishing the changes to readers
+     */
+    DIFF("diff"),
+    PERSIST("persist"),
+    /**
+     * Appending the changes to the availability history
+     */
+    HISTORY("history"),
+    /**
+     * Publishing the changes to the other instances
+     */
+    FAN_OUT("fan_out"),
+    LOCK_RELEASE("lock_release");
+
+    private final String value;
+
+    RefreshStage(String value) {
+        this.value = value;
+    }
+
+    public String getValue() {
+        return value;
+    }
+}
@@ -0,0 +1,21 @@
+package com.example.carpark.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * New lot counts of one car park whose availability changed in a refresh, as pushed to stream subscribers
+ */
+@Data
+@Builder
+@AllArgsConstructor
+@NoArgsConstructor
+public class AvailabilityDelta {
+    private String carParkNo;
+    private double latitude;
+    private double longitude;
+    private int totalLots;
+    private int availableLots;
+}
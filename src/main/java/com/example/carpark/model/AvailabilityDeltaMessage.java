@@ -0,0 +1,84 @@
+package com.example.carpark.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Optional;
+
+/**
+ * <p>Availability changes of one refresh, as the lock holder sends them to the other instances</p>
+ * <p>Encoded as: format (1 byte), sequence (8), {@code last_updated} in epoch milliseconds (8), count (4), then for
+ * each car park its UTF-8 number prefixed by the length (2), total lots (4) and available lots (4), big-endian. About
+ * 16 bytes per changed car park.</p>
+ * <p>The same channel carries import announcements, a single byte of their own format, telling the other instances that
+ * static car park data changed.</p>
+ */
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class AvailabilityDeltaMessage {
+    private static final byte FORMAT = 1;
+    private static final byte IMPORT_FORMAT = 2;
+    private static final int HEADER_BYTES = 1 + 8 + 8 + 4;
+
+    private long sequence;
+    private long lastUpdated;
+    private CarParkLotSnapshot changes;
+
+    public byte[] encode() {
+        var carParkNos = new byte[changes.size()][];
+        var size = HEADER_BYTES;
+        for (var slot = 0; slot < changes.size(); slot++) {
+            carParkNos[slot] = changes.carParkNo(slot).getBytes(StandardCharsets.UTF_8);
+            size += 2 + carParkNos[slot].length + 4 + 4;
+        }
+        var buffer = ByteBuffer.allocate(size)
+                .put(FORMAT)
+                .putLong(sequence)
+                .putLong(lastUpdated)
+                .putInt(changes.size());
+        for (var slot = 0; slot < changes.size(); slot++) {
+            buffer.putShort((short) carParkNos[slot].length)
+                    .put(carParkNos[slot])
+                    .putInt(changes.totalLots(slot))
+                    .putInt(changes.availableLots(slot));
+        }
+        return buffer.array();
+    }
+
+    public static byte[] encodeImport() {
+        return new byte[]{IMPORT_FORMAT};
+    }
+
+    public static boolean isImport(byte[] payload) {
+        return payload.length == 1 && payload[0] == IMPORT_FORMAT;
+    }
+
+    /**
+     * @return the decoded message, or empty if the payload is truncated or of an unknown format
+     */
+    public static Optional<AvailabilityDeltaMessage> decode(byte[] payload) {
+        try {
+            var buffer = ByteBuffer.wrap(payload);
+            if (buffer.get() != FORMAT) {
+                return Optional.empty();
+            }
+            var sequence = buffer.getLong();
+            var lastUpdated = buffer.getLong();
+            var count = buffer.getInt();
+            var changes = new CarParkLotSnapshot();
+            for (var i = 0; i < count; i++) {
+                var carParkNo = new byte[Short.toUnsignedInt(buffer.getShort())];
+                buffer.get(carParkNo);
+                changes.add(new String(carParkNo, StandardCharsets.UTF_8), buffer.getInt(), buffer.getInt());
+            }
+            return buffer.hasRemaining() ? Optional.empty() : Optional.of(new AvailabilityDeltaMessage(sequence, lastUpdated, changes));
+        } catch (BufferUnderflowException e) {
+            return Optional.empty();
+        }
+    }
+}
@@ -0,0 +1,29 @@
+package com.example.carpark.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+/**
+ * One bucket of a car park's availability series. Buckets without recorded changes carry the previous value over, with
+ * {@code samples} 0.
+ */
+@Data
+@Builder(toBuilder = true)
+@AllArgsConstructor
+@NoArgsConstructor
+public class AvailabilityHistoryPoint {
+    private LocalDateTime time;
+    private int totalLots;
+    private int minAvailable;
+    private int maxAvailable;
+    private double avgAvailable;
+    /**
+     * Available lots at the end of the bucket
+     */
+    private int lastAvailable;
+    private int samples;
+}
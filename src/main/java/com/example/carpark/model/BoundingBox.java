@@ -0,0 +1,76 @@
+package com.example.carpark.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.Optional;
+
+/**
+ * Area between two longitudes and two latitudes, written {@code minLon,minLat,maxLon,maxLat} as in GeoJSON
+ */
+@Data
+@Builder
+@AllArgsConstructor
+@NoArgsConstructor
+public class BoundingBox {
+    public static final int MAX_TILE_ZOOM = 22;
+
+    private double minLongitude;
+    private double minLatitude;
+    private double maxLongitude;
+    private double maxLatitude;
+
+    /**
+     * @return the box, or empty if the value is not four numbers with minimums below maximums and within WGS84 range
+     */
+    public static Optional<BoundingBox> parse(String value) {
+        if (value == null) {
+            return Optional.empty();
+        }
+        var parts = value.split(",");
+        if (parts.length != 4) {
+            return Optional.empty();
+        }
+        try {
+            var box = new BoundingBox(Double.parseDouble(parts[0].trim()), Double.parseDouble(parts[1].trim()),
+                    Double.parseDouble(parts[2].trim()), Double.parseDouble(parts[3].trim()));
+            var valid = box.minLongitude >= -180 && box.maxLongitude <= 180 && box.minLatitude >= -90 && box.maxLatitude <= 90
+                    && box.minLongitude < box.maxLongitude && box.minLatitude < box.maxLatitude;
+            return valid ? Optional.of(box) : Optional.empty();
+        } catch (NumberFormatException e) {
+            return Optional.empty();
+        }
+    }
+
+    /**
+     * Area of a web map tile in the XYZ scheme of OpenStreetMap and most map clients: 2^zoom Web Mercator tiles per
+     * side, x growing eastwards from 180°W and y southwards from 85.05°N
+     *
+     * @return the box, or empty if there is no such tile
+     */
+    public static Optional<BoundingBox> ofTile(int zoom, int x, int y) {
+        if (zoom < 0 || zoom > MAX_TILE_ZOOM) {
+            return Optional.empty();
+        }
+        var tiles = 1 << zoom;
+        if (x < 0 || x >= tiles || y < 0 || y >= tiles) {
+            return Optional.empty();
+        }
+        return Optional.of(new BoundingBox(tileLongitude(x, tiles), tileLatitude(y + 1, tiles),
+                tileLongitude(x + 1, tiles), tileLatitude(y, tiles)));
+    }
+
+    private static double tileLongitude(int x, int tiles) {
+        return (double) x / tiles * 360 - 180;
+    }
+
+    private static double tileLatitude(int y, int tiles) {
+        return Math.toDegrees(Math.atan(Math.sinh(Math.PI * (1 - 2.0 * y / tiles))));
+    }
+
+    public boolean contains(double latitude, double longitude) {
+        return latitude >= minLatitude && latitude <= maxLatitude && longitude >= minLongitude && longitude <= maxLongitude;
+    }
+}
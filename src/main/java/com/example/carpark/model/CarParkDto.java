@@ -16,6 +16,7 @@ public class CarParkDto {
     private double longitude;
     private int totalLots;
     private int availableLots;
+    private Double distanceMeters;
 
     public static CarParkDto fromEntity(CarPark carPark) {
         return CarParkDto.builder()
@@ -26,4 +27,10 @@ public class CarParkDto {
                 .availableLots(carPark.availableLots)
                 .build();
     }
+
+    public static CarParkDto fromNearest(NearestCarPark nearest) {
+        var carParkDto = fromEntity(nearest.getCarPark());
+        carParkDto.setDistanceMeters(nearest.getDistanceMeters());
+        return carParkDto;
+    }
 }
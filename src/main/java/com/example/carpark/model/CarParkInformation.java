@@ -1,15 +1,20 @@
 package com.example.carpark.model;
 
 import com.example.carpark.exception.CarParkException;
+import com.opencsv.CSVReader;
 import com.opencsv.CSVReaderBuilder;
-import com.opencsv.exceptions.CsvException;
+import com.opencsv.exceptions.CsvValidationException;
+import io.smallrye.mutiny.Multi;
 import lombok.AllArgsConstructor;
 import lombok.Builder;
 import lombok.Data;
 import lombok.NoArgsConstructor;
 
 import java.io.IOException;
-import java.io.StringReader;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.util.List;
 
 @Data
@@ -17,6 +22,8 @@ import java.util.List;
 @AllArgsConstructor
 @NoArgsConstructor
 public class CarParkInformation {
+    public static final List<String> CSV_COLUMNS = List.of("car_park_no", "address", "x_coord", "y_coord");
+
     private String carParkNo;
     private String address;
     private double xCoord;
@@ -34,11 +41,54 @@ public class CarParkInformation {
                 .build();
     }
 
-    public static List<CarParkInformation> fromCsvContent(String csvContent) {
-        try (var csvReader = new CSVReaderBuilder(new StringReader(csvContent)).withSkipLines(1).build()) {
-            return csvReader.readAll().stream().map(CarParkInformation::fromCsvRow).toList();
-        } catch (IOException | CsvException | IllegalArgumentException e) {
-            throw new CarParkException("Failed to parse CSV data", e);
+    /**
+     * <p>Lazily reads the CSV file row by row, so memory stays flat regardless of file size</p>
+     * <p>Reading is blocking, subscribe on a worker thread.</p>
+     */
+    public static Multi<CarParkInformation> fromCsvFile(Path csvFile) {
+        return Multi.createFrom()
+                .resource(() -> openCsvReader(csvFile), csvReader -> Multi.createFrom().iterable(csvReader))
+                .withFinalizer(CarParkInformation::closeQuietly)
+                .map(CarParkInformation::fromCsvRow)
+                .onFailure(e -> !(e instanceof CarParkException))
+                .transform(e -> new CarParkException("Failed to parse CSV data", e));
+    }
+
+    /**
+     * <p>Checks that the file starts with the {@link #CSV_COLUMNS} header, further columns are ignored</p>
+     * <p>Reads only the header row, but still blocking.</p>
+     */
+    public static boolean hasCsvHeader(Path csvFile) {
+        try (var csvReader = new CSVReaderBuilder(Files.newBufferedReader(csvFile, StandardCharsets.UTF_8)).build()) {
+            var header = csvReader.readNext();
+            if (header == null || header.length < CSV_COLUMNS.size()) {
+                return false;
+            }
+            for (var i = 0; i < CSV_COLUMNS.size(); i++) {
+                var column = i == 0 ? header[i].replace("\uFEFF", "") : header[i]; // Spreadsheet exports may start with a BOM
+                if (!CSV_COLUMNS.get(i).equalsIgnoreCase(column.trim())) {
+                    return false;
+                }
+            }
+            return true;
+        } catch (IOException | CsvValidationException e) {
+            return false;
+        }
+    }
+
+    private static CSVReader openCsvReader(Path csvFile) {
+        try {
+            return new CSVReaderBuilder(Files.newBufferedReader(csvFile, StandardCharsets.UTF_8)).withSkipLines(1).build();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static void closeQuietly(CSVReader csvReader) {
+        try {
+            csvReader.close();
+        } catch (IOException e) {
+            // Nothing left to read
         }
     }
 }
@@ -0,0 +1,192 @@
+package com.example.carpark.model;
+
+import com.example.carpark.exception.CarParkException;
+import com.example.carpark.util.NumberUtil;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * <p>Total and available lots per car park from one poll of the availability API</p>
+ * <p>Lots of the same car park (one entry per lot type, or the same car park listed twice) are summed up. Values are
+ * kept in primitive arrays indexed by slot, in the order car parks first appear in the payload.</p>
+ */
+public final class CarParkLotSnapshot {
+    private static final int INITIAL_CAPACITY = 4096;
+
+    private final Map<String, Integer> slotsByCarParkNo = HashMap.newHashMap(INITIAL_CAPACITY);
+    private String[] carParkNos = new String[INITIAL_CAPACITY];
+    private int[] totalLots = new int[INITIAL_CAPACITY];
+    private int[] availableLots = new int[INITIAL_CAPACITY];
+    private int size;
+    private String timestamp;
+
+    public int size() {
+        return size;
+    }
+
+    public String carParkNo(int slot) {
+        return carParkNos[slot];
+    }
+
+    public int totalLots(int slot) {
+        return totalLots[slot];
+    }
+
+    public int availableLots(int slot) {
+        return availableLots[slot];
+    }
+
+    public Set<String> carParkNos() {
+        return Collections.unmodifiableSet(slotsByCarParkNo.keySet());
+    }
+
+    /**
+     * @return slot of the car park, or -1 if it is not in the snapshot
+     */
+    public int slotOf(String carParkNo) {
+        var slot = slotsByCarParkNo.get(carParkNo);
+        return slot != null ? slot : -1;
+    }
+
+    /**
+     * @return upstream {@code timestamp} of the snapshot, or null if absent
+     */
+    public String getTimestamp() {
+        return timestamp;
+    }
+
+    public void add(String carParkNo, int totalLots, int availableLots) {
+        var slot = slotsByCarParkNo.putIfAbsent(carParkNo, size);
+        if (slot == null) {
+            if (size == carParkNos.length) {
+                grow();
+            }
+            slot = size++;
+            carParkNos[slot] = carParkNo;
+        }
+        this.totalLots[slot] += totalLots;
+        this.availableLots[slot] += availableLots;
+    }
+
+    private void grow() {
+        var capacity = carParkNos.length * 2;
+        carParkNos = Arrays.copyOf(carParkNos, capacity);
+        totalLots = Arrays.copyOf(totalLots, capacity);
+        availableLots = Arrays.copyOf(availableLots, capacity);
+    }
+
+    /**
+     * <p>Streams the availability API payload token by token into a snapshot, without binding it to objects</p>
+     * <p>Only the first entry of {@code items} is read, like the API returns. Lot counts are sent as strings and are
+     * parsed straight from the parser's character buffer, invalid counts are taken as 0.</p>
+     */
+    public static CarParkLotSnapshot fromJson(JsonFactory jsonFactory, byte[] json) {
+        try (var parser = jsonFactory.createParser(json)) {
+            var snapshot = new CarParkLotSnapshot();
+            if (parser.nextToken() != JsonToken.START_OBJECT) {
+                throw new CarParkException("Availability payload is not a JSON object");
+            }
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                var field = parser.currentName();
+                parser.nextToken();
+                if ("items".equals(field) && parser.currentToken() == JsonToken.START_ARRAY) {
+                    readItems(parser, snapshot);
+                }
+                parser.skipChildren();
+            }
+            return snapshot;
+        } catch (IOException e) {
+            throw new CarParkException("Failed to parse JSON response", e);
+        }
+    }
+
+    // Skips anything before the first object, such as a null entry, instead of dropping the whole payload
+    private static void readItems(JsonParser parser, CarParkLotSnapshot snapshot) throws IOException {
+        while (parser.nextToken() != JsonToken.END_ARRAY) {
+            if (parser.currentToken() == JsonToken.START_OBJECT) {
+                readItem(parser, snapshot);
+                return;
+            }
+            parser.skipChildren();
+        }
+    }
+
+    private static void readItem(JsonParser parser, CarParkLotSnapshot snapshot) throws IOException {
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            var field = parser.currentName();
+            var token = parser.nextToken();
+            if ("timestamp".equals(field) && token == JsonToken.VALUE_STRING) {
+                snapshot.timestamp = parser.getText();
+            } else if ("carpark_data".equals(field) && token == JsonToken.START_ARRAY) {
+                while (parser.nextToken() != JsonToken.END_ARRAY) {
+                    if (parser.currentToken() == JsonToken.START_OBJECT) {
+                        readCarParkData(parser, snapshot);
+                    } else {
+                        parser.skipChildren(); // A null or malformed car park, the next ones are still read
+                    }
+                }
+            } else {
+                parser.skipChildren();
+            }
+        }
+        // Close the items array, remaining items are ignored
+        while (parser.nextToken() != JsonToken.END_ARRAY) {
+            parser.skipChildren();
+        }
+    }
+
+    private static void readCarParkData(JsonParser parser, CarParkLotSnapshot snapshot) throws IOException {
+        String carParkNo = null;
+        var total = 0;
+        var available = 0;
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            var field = parser.currentName();
+            var token = parser.nextToken();
+            if ("carpark_number".equals(field) && token == JsonToken.VALUE_STRING) {
+                carParkNo = parser.getText();
+            } else if ("carpark_info".equals(field) && token == JsonToken.START_ARRAY) {
+                while (parser.nextToken() != JsonToken.END_ARRAY) {
+                    if (parser.currentToken() != JsonToken.START_OBJECT) {
+                        parser.skipChildren();
+                        continue;
+                    }
+                    while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                        var infoField = parser.currentName();
+                        parser.nextToken();
+                        if ("total_lots".equals(infoField)) {
+                            total += readLots(parser);
+                        } else if ("lots_available".equals(infoField)) {
+                            available += readLots(parser);
+                        } else {
+                            parser.skipChildren();
+                        }
+                    }
+                }
+            } else {
+                parser.skipChildren();
+            }
+        }
+        if (carParkNo != null) {
+            snapshot.add(carParkNo, total, available);
+        }
+    }
+
+    private static int readLots(JsonParser parser) throws IOException {
+        return switch (parser.currentToken()) {
+            case VALUE_STRING -> NumberUtil.parseIntQuietly(parser.getTextCharacters(), parser.getTextOffset(), parser.getTextLength());
+            case VALUE_NUMBER_INT -> parser.getNumberType() == JsonParser.NumberType.INT ? parser.getIntValue() : 0;
+            default -> {
+                parser.skipChildren();
+                yield 0;
+            }
+        };
+    }
+}
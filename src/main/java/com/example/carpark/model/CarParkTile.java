@@ -0,0 +1,24 @@
+package com.example.carpark.model;
+
+import com.example.carpark.entity.CarPark;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+/**
+ * Car parks inside a bounding box or map tile, ordered by car park number, with an entity tag over what is shown of
+ * them. It is written as a plain array of car parks by the resource's own JSON writer.
+ */
+@Data
+@Builder
+@AllArgsConstructor
+@NoArgsConstructor
+public class CarParkTile {
+    private String entityTag;
+    private List<CarPark> carParks;
+    // Static JSON of each car park, in the same order
+    private List<byte[]> jsonFragments;
+}
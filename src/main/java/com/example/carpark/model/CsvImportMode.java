@@ -0,0 +1,29 @@
+package com.example.carpark.model;
+
+import java.util.Arrays;
+import java.util.Optional;
+
+public enum CsvImportMode {
+    /**
+     * Insert new car parks, leave existing ones as they are
+     */
+    SKIP_EXISTING("skip"),
+    /**
+     * Insert new car parks and update address and coordinates of existing ones, live lot counts are left untouched
+     */
+    UPSERT("upsert");
+
+    private final String value;
+
+    CsvImportMode(String value) {
+        this.value = value;
+    }
+
+    public String getValue() {
+        return value;
+    }
+
+    public static Optional<CsvImportMode> fromValue(String value) {
+        return Arrays.stream(values()).filter(mode -> mode.value.equalsIgnoreCase(value)).findFirst();
+    }
+}
@@ -0,0 +1,28 @@
+package com.example.carpark.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@Builder
+@AllArgsConstructor
+@NoArgsConstructor
+public class CsvImportSummary {
+    private String message;
+    private String mode;
+    private int inserted;
+    private int updated;
+    private int unchanged;
+    private int duplicates;
+    private long durationMillis;
+
+    public CsvImportSummary add(CsvImportSummary other) {
+        inserted += other.inserted;
+        updated += other.updated;
+        unchanged += other.unchanged;
+        duplicates += other.duplicates;
+        return this;
+    }
+}
@@ -0,0 +1,40 @@
+package com.example.carpark.model;
+
+import com.example.carpark.entity.CarPark;
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * A car park returned by a nearest query, with its great-circle distance from the query point.
+ */
+@Data
+@Builder
+@AllArgsConstructor
+@NoArgsConstructor
+public class NearestCarPark {
+    private CarPark carPark;
+    private double distanceMeters;
+
+    // Static JSON of the car park from the index, null when it was read from the database
+    @JsonIgnore
+    private byte[] jsonFragment;
+
+    public NearestCarPark(CarPark carPark, double distanceMeters) {
+        this(carPark, distanceMeters, null);
+    }
+
+    /**
+     * @return cursor that continues the query right after this car park
+     */
+    public NearestCursor cursor(NearestCarParkQuery query) {
+        return NearestCursor.builder()
+                .latitude(query.getLatitude())
+                .longitude(query.getLongitude())
+                .distanceMeters(distanceMeters)
+                .carParkNo(carPark.carParkNo)
+                .build();
+    }
+}
@@ -0,0 +1,31 @@
+package com.example.carpark.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+/**
+ * Body of a batch nearest lookup: many origins sharing the same page size and filters.
+ */
+@Data
+@Builder
+@AllArgsConstructor
+@NoArgsConstructor
+public class NearestCarParkBatchRequest {
+    private List<Origin> origins;
+    private Integer perPage;
+    private Double radiusMeters;
+    private Integer minAvailable;
+
+    @Data
+    @Builder
+    @AllArgsConstructor
+    @NoArgsConstructor
+    public static class Origin {
+        private Double latitude;
+        private Double longitude;
+    }
+}
@@ -0,0 +1,21 @@
+package com.example.carpark.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+/**
+ * Nearest car parks of one origin of a batch lookup, in the order the origins were sent.
+ */
+@Data
+@Builder
+@AllArgsConstructor
+@NoArgsConstructor
+public class NearestCarParkBatchResult {
+    private double latitude;
+    private double longitude;
+    private List<CarParkDto> carParks;
+}
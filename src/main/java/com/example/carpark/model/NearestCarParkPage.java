@@ -0,0 +1,20 @@
+package com.example.carpark.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+/**
+ * One page of a nearest response. It is written as a plain array of car parks by the resource's own JSON and binary
+ * writers, which look for this type rather than any list.
+ */
+@Data
+@Builder
+@AllArgsConstructor
+@NoArgsConstructor
+public class NearestCarParkPage {
+    private List<NearestCarPark> carParks;
+}
@@ -0,0 +1,27 @@
+package com.example.carpark.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * <p>One page of a nearest car parks query</p>
+ * <p>Either {@code after} is set and the page starts right after that cursor, or it is null and {@code offset} leading
+ * results are skipped. Only car parks with at least {@code minAvailable} free lots, and within {@code radiusMeters} when
+ * set, are returned.</p>
+ */
+@Data
+@Builder(toBuilder = true)
+@AllArgsConstructor
+@NoArgsConstructor
+public class NearestCarParkQuery {
+    private double latitude;
+    private double longitude;
+    private int limit;
+    private int offset;
+    private NearestCursor after;
+    private Double radiusMeters;
+    @Builder.Default
+    private int minAvailable = 1;
+}
@@ -0,0 +1,62 @@
+package com.example.carpark.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.Optional;
+
+/**
+ * <p>Position after the last car park of a nearest page: its distance and car park number</p>
+ * <p>Sent to clients as an opaque base64url token. The query coordinates are part of the token, so a cursor can only
+ * continue the query it came from.</p>
+ */
+@Data
+@Builder
+@AllArgsConstructor
+@NoArgsConstructor
+public class NearestCursor {
+    private static final String VERSION = "1";
+    private static final String SEPARATOR = "|";
+
+    private double latitude;
+    private double longitude;
+    private double distanceMeters;
+    private String carParkNo;
+
+    public String encode() {
+        var value = String.join(SEPARATOR, VERSION, Double.toString(latitude), Double.toString(longitude),
+                Double.toString(distanceMeters), carParkNo);
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(value.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * @return the decoded cursor, or empty if the token is malformed
+     */
+    public static Optional<NearestCursor> decode(String token) {
+        try {
+            var parts = new String(Base64.getUrlDecoder().decode(token), StandardCharsets.UTF_8).split("\\|", 5);
+            if (parts.length != 5 || !VERSION.equals(parts[0]) || parts[4].isEmpty()) {
+                return Optional.empty();
+            }
+            return Optional.of(NearestCursor.builder()
+                    .latitude(Double.parseDouble(parts[1]))
+                    .longitude(Double.parseDouble(parts[2]))
+                    .distanceMeters(Double.parseDouble(parts[3]))
+                    .carParkNo(parts[4])
+                    .build());
+        } catch (IllegalArgumentException e) {
+            return Optional.empty();
+        }
+    }
+
+    /**
+     * @return true if the cursor was issued for these coordinates
+     */
+    public boolean matches(double latitude, double longitude) {
+        return Double.compare(this.latitude, latitude) == 0 && Double.compare(this.longitude, longitude) == 0;
+    }
+}
@@ -0,0 +1,236 @@
+package com.example.carpark.repository;
+
+import com.example.carpark.model.AvailabilityHistoryPoint;
+import com.example.carpark.model.CarParkLotSnapshot;
+import io.smallrye.mutiny.Multi;
+import io.smallrye.mutiny.Uni;
+import io.vertx.mutiny.pgclient.PgPool;
+import io.vertx.mutiny.sqlclient.Row;
+import io.vertx.mutiny.sqlclient.RowSet;
+import io.vertx.mutiny.sqlclient.Tuple;
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.inject.Inject;
+
+import java.time.Duration;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+/**
+ * <p>Availability history in {@code availability_history}, partitioned by day, and its hourly downsampling in
+ * {@code availability_history_hourly}</p>
+ * <p>Every query filters on {@code car_park_no} and a time range, so it is answered from the primary keys of the
+ * partitions the range prunes to, never a full scan.</p>
+ */
+@ApplicationScoped
+public class AvailabilityHistoryRepository {
+    private static final int APPEND_BATCH_SIZE = 1000;
+    private static final String PARTITION_PREFIX = "availability_history_p";
+    private static final Pattern PARTITION_NAME = Pattern.compile(PARTITION_PREFIX + "(\\d{8})");
+    private static final DateTimeFormatter PARTITION_DATE = DateTimeFormatter.BASIC_ISO_DATE;
+    // Serializes maintenance across instances, released with the transaction
+    private static final long MAINTENANCE_LOCK_ID = 0x6869_7374_6f72_79L;
+
+    private static final String ROLLUP_SELECT = """
+            SELECT car_park_no, date_trunc('hour', recorded_at), max(total_lots), min(available_lots), max(available_lots),
+                   sum(available_lots), count(*), (array_agg(available_lots ORDER BY recorded_at DESC))[1]
+            FROM %s
+            %s
+            GROUP BY 1, 2
+            ON CONFLICT (car_park_no, hour) DO NOTHING
+            """;
+
+    private final PgPool client;
+
+    @Inject
+    public AvailabilityHistoryRepository(PgPool client) {
+        this.client = client;
+    }
+
+    /**
+     * Appends one refresh's changes with one set-based INSERT per batch
+     *
+     * @return number of rows appended
+     */
+    public Uni<Integer> append(CarParkLotSnapshot changes, LocalDateTime recordedAt) {
+        var sql = """
+                INSERT INTO availability_history (car_park_no, recorded_at, total_lots, available_lots)
+                SELECT car_park_no, $4, total_lots, available_lots
+                FROM unnest($1::text[], $2::int[], $3::int[]) AS u(car_park_no, total_lots, available_lots)
+                ON CONFLICT DO NOTHING
+                """;
+        var statement = client.preparedQuery(sql);
+        return Multi.createFrom().range(0, (changes.size() + APPEND_BATCH_SIZE - 1) / APPEND_BATCH_SIZE)
+                .onItem().transformToUniAndConcatenate(batch -> {
+                    var from = batch * APPEND_BATCH_SIZE;
+                    var to = Math.min(from + APPEND_BATCH_SIZE, changes.size());
+                    var carParkNos = IntStream.range(from, to).mapToObj(changes::carParkNo).toArray(String[]::new);
+                    var totalLots = IntStream.range(from, to).mapToObj(changes::totalLots).toArray(Integer[]::new);
+                    var availableLots = IntStream.range(from, to).mapToObj(changes::availableLots).toArray(Integer[]::new);
+                    return statement.execute(Tuple.of(carParkNos, totalLots, availableLots, recordedAt))
+                            .map(RowSet::rowCount);
+                })
+                .collect().with(Collectors.summingInt(Integer::intValue));
+    }
+
+    public Uni<Void> createPartition(LocalDate day) {
+        var sql = "CREATE TABLE IF NOT EXISTS %s PARTITION OF availability_history FOR VALUES FROM ('%s') TO ('%s')"
+                .formatted(partitionName(day), day, day.plusDays(1));
+        return client.query(sql).execute().replaceWithVoid();
+    }
+
+    /**
+     * @return days of the daily partitions that exist, oldest first
+     */
+    public Uni<List<LocalDate>> findPartitionDays() {
+        var sql = """
+                SELECT c.relname
+                FROM pg_inherits i
+                JOIN pg_class c ON c.oid = i.inhrelid
+                JOIN pg_class p ON p.oid = i.inhparent
+                WHERE p.relname = 'availability_history'
+                ORDER BY c.relname
+                """;
+        return client.query(sql).execute()
+                .map(rows -> {
+                    var days = new ArrayList<LocalDate>();
+                    for (Row row : rows) {
+                        var matcher = PARTITION_NAME.matcher(row.getString("relname"));
+                        if (matcher.matches()) {
+                            days.add(LocalDate.parse(matcher.group(1), PARTITION_DATE));
+                        }
+                    }
+                    return days;
+                });
+    }
+
+    /**
+     * <p>Downsamples one daily partition to hourly rows and drops it, in one transaction</p>
+     * <p>Skipped when another instance holds the maintenance lock.</p>
+     *
+     * @return true if the partition was rolled up and dropped
+     */
+    public Uni<Boolean> rollupAndDropPartition(LocalDate day) {
+        var partition = partitionName(day);
+        return client.withTransaction(connection -> connection.preparedQuery("SELECT pg_try_advisory_xact_lock($1) AS locked")
+                .execute(Tuple.of(MAINTENANCE_LOCK_ID))
+                .flatMap(rows -> {
+                    if (!Boolean.TRUE.equals(rows.iterator().next().getBoolean("locked"))) {
+                        return Uni.createFrom().item(false);
+                    }
+                    return connection.query("INSERT INTO availability_history_hourly " + ROLLUP_SELECT.formatted(partition, "")).execute()
+                            .flatMap(v -> connection.query("DROP TABLE IF EXISTS " + partition).execute())
+                            .replaceWith(true);
+                }));
+    }
+
+    /**
+     * Downsamples and deletes rows the default partition holds from before {@code before}, and deletes hourly rows
+     * older than {@code hourlyBefore}.
+     */
+    public Uni<Void> rollupDefaultAndExpireHourly(LocalDateTime before, LocalDateTime hourlyBefore) {
+        return client.withTransaction(connection -> connection.preparedQuery("SELECT pg_try_advisory_xact_lock($1) AS locked")
+                .execute(Tuple.of(MAINTENANCE_LOCK_ID))
+                .flatMap(rows -> {
+                    if (!Boolean.TRUE.equals(rows.iterator().next().getBoolean("locked"))) {
+                        return Uni.createFrom().voidItem();
+                    }
+                    return connection.preparedQuery("INSERT INTO availability_history_hourly "
+                                    + ROLLUP_SELECT.formatted("availability_history_default", "WHERE recorded_at < $1"))
+                            .execute(Tuple.of(before))
+                            .flatMap(v -> connection.preparedQuery("DELETE FROM availability_history_default WHERE recorded_at < $1")
+                                    .execute(Tuple.of(before)))
+                            .flatMap(v -> connection.preparedQuery("DELETE FROM availability_history_hourly WHERE hour < $1")
+                                    .execute(Tuple.of(hourlyBefore)))
+                            .replaceWithVoid();
+                }));
+    }
+
+    /**
+     * <p>Aggregates a car park's history into buckets of {@code step} starting at {@code from}, over raw deltas and
+     * hourly rows alike</p>
+     * <p>Only buckets with recorded changes are returned. Where the range reaches into downsampled days, buckets are at
+     * most hourly.</p>
+     */
+    public Uni<List<AvailabilityHistoryPoint>> findSeries(String carParkNo, LocalDateTime from, LocalDateTime to, Duration step) {
+        var sql = """
+                SELECT date_bin(make_interval(secs => $4), s.time, $2) AS bucket, max(s.total_lots) AS total_lots,
+                       min(s.min_available) AS min_available, max(s.max_available) AS max_available,
+                       sum(s.sum_available)::float8 / sum(s.samples) AS avg_available, sum(s.samples)::int AS samples,
+                       (array_agg(s.last_available ORDER BY s.time DESC))[1] AS last_available
+                FROM (
+                    SELECT recorded_at AS time, total_lots, available_lots AS min_available, available_lots AS max_available,
+                           available_lots::int AS sum_available, 1 AS samples, available_lots AS last_available
+                    FROM availability_history
+                    WHERE car_park_no = $1 AND recorded_at >= $2 AND recorded_at < $3
+                    UNION ALL
+                    SELECT hour, total_lots, min_available, max_available, sum_available, samples, last_available
+                    FROM availability_history_hourly
+                    WHERE car_park_no = $1 AND hour >= $2 AND hour < $3
+                ) AS s
+                GROUP BY bucket
+                ORDER BY bucket
+                """;
+        return client.preparedQuery(sql)
+                .execute(Tuple.of(carParkNo, from, to, (double) step.toSeconds()))
+                .map(rows -> {
+                    var points = new ArrayList<AvailabilityHistoryPoint>(rows.size());
+                    for (Row row : rows) {
+                        points.add(AvailabilityHistoryPoint.builder()
+                                .time(row.getLocalDateTime("bucket"))
+                                .totalLots(row.getInteger("total_lots"))
+                                .minAvailable(row.getInteger("min_available"))
+                                .maxAvailable(row.getInteger("max_available"))
+                                .avgAvailable(row.getDouble("avg_available"))
+                                .lastAvailable(row.getInteger("last_available"))
+                                .samples(row.getInteger("samples"))
+                                .build());
+                    }
+                    return points;
+                });
+    }
+
+    /**
+     * @return the car park's last recorded [total lots, available lots] before {@code before}, if any
+     */
+    public Uni<Optional<int[]>> findLastBefore(String carParkNo, LocalDateTime before) {
+        var sql = """
+                SELECT total_lots, available_lots
+                FROM (
+                    (SELECT recorded_at AS time, total_lots, available_lots
+                     FROM availability_history
+                     WHERE car_park_no = $1 AND recorded_at < $2
+                     ORDER BY recorded_at DESC
+                     LIMIT 1)
+                    UNION ALL
+                    (SELECT hour, total_lots, last_available
+                     FROM availability_history_hourly
+                     WHERE car_park_no = $1 AND hour < $2
+                     ORDER BY hour DESC
+                     LIMIT 1)
+                ) AS last
+                ORDER BY time DESC
+                LIMIT 1
+                """;
+        return client.preparedQuery(sql)
+                .execute(Tuple.of(carParkNo, before))
+                .map(rows -> {
+                    var iterator = rows.iterator();
+                    if (!iterator.hasNext()) {
+                        return Optional.empty();
+                    }
+                    var row = iterator.next();
+                    return Optional.of(new int[]{row.getInteger("total_lots"), row.getInteger("available_lots")});
+                });
+    }
+
+    private static String partitionName(LocalDate day) {
+        return PARTITION_PREFIX + PARTITION_DATE.format(day);
+    }
+}
@@ -1,15 +1,45 @@
 package com.example.carpark.repository;
 
 import com.example.carpark.entity.CarPark;
+import com.example.carpark.index.CarParkSpatialIndex;
+import com.example.carpark.model.BoundingBox;
+import com.example.carpark.model.CarParkLotSnapshot;
+import com.example.carpark.model.CsvImportMode;
+import com.example.carpark.model.CsvImportSummary;
+import com.example.carpark.model.NearestCarPark;
+import com.example.carpark.model.NearestCarParkQuery;
 import io.quarkus.hibernate.reactive.panache.PanacheRepository;
+import io.smallrye.mutiny.Multi;
 import io.smallrye.mutiny.Uni;
+import io.vertx.mutiny.pgclient.PgPool;
+import io.vertx.mutiny.sqlclient.Row;
+import io.vertx.mutiny.sqlclient.RowSet;
+import io.vertx.mutiny.sqlclient.Tuple;
 import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.inject.Inject;
 
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
 
 @ApplicationScoped
 public class CarParkRepository implements PanacheRepository<CarPark> {
+    private static final int AVAILABILITY_BATCH_SIZE = 1000;
+
+    private final PgPool client;
+    private final ReadPoolProvider readPoolProvider;
+
+    @Inject
+    public CarParkRepository(PgPool client, ReadPoolProvider readPoolProvider) {
+        this.client = client;
+        this.readPoolProvider = readPoolProvider;
+    }
+
     public Uni<CarPark> findByCarParkNo(String carParkNo) {
         return find("carParkNo", carParkNo).firstResult();
     }
@@ -18,21 +48,319 @@ public class CarParkRepository implements PanacheRepository<CarPark> {
         return find("carParkNo IN ?1", carParkNos).list();
     }
 
-    public Uni<List<CarPark>> findNearestWithAvailability(double latitude, double longitude, int limit, int offset) {
+    /**
+     * <p>PostGIS KNN query for one page of car parks with enough available lots, ordered by distance in whole
+     * millimeters, then car park number</p>
+     * <p>With a radius, {@code ST_DWithin} bounds the GiST scan to the circle so far-away candidates are never read.
+     * With a cursor the page is a keyset seek on {@code (distance, car_park_no)}: rows nearer than the cursor are
+     * dropped on their raw distance before anything is rounded or sorted, instead of being sorted and discarded by
+     * OFFSET, and a page does not shift when availability changes between calls. A GiST KNN scan cannot start at a
+     * distance though, so it still yields the rows before the cursor to be dropped, and deeper pages cost somewhat more
+     * here. The in-memory index, which answers while it is built, skips them without visiting them.</p>
+     * <p>The distance is rounded the way {@link CarParkSpatialIndex#distanceKey(double)} does, so the order and the
+     * cursors agree with the in-memory index. The KNN scan only finds how far the page reaches, the page itself is
+     * sorted on the rounded distance from the car parks within that reach.</p>
+     * <p>Runs outside any session or transaction, on the read replica when one is configured.</p>
+     */
+    public Uni<List<NearestCarPark>> findNearestWithAvailability(NearestCarParkQuery query) {
+        var point = "ST_SetSRID(ST_Point($2, $1), 4326)::geography";
+        var distanceKey = "floor((location <-> %s) * 1000 + 0.5)".formatted(point);
+        var parameters = Tuple.of(query.getLatitude(), query.getLongitude(), query.getLimit(), query.getMinAvailable());
+        var conditions = new ArrayList<String>();
+        conditions.add("available_lots >= $4");
+        if (query.getRadiusMeters() != null) {
+            parameters.addDouble(query.getRadiusMeters());
+            conditions.add("ST_DWithin(location, %s, $%d)".formatted(point, parameters.size()));
+        }
+        var after = query.getAfter();
+        if (after != null) {
+            // Cheap on the raw distance, drops what lies before the cursor before the rounded key is computed
+            parameters.addDouble(CarParkSpatialIndex.belowDistanceKey(after.getDistanceMeters()));
+            conditions.add("NOT ST_DWithin(location, %s, $%d, false)".formatted(point, parameters.size()));
+            parameters.addDouble((double) CarParkSpatialIndex.distanceKey(after.getDistanceMeters())).addString(after.getCarParkNo());
+            conditions.add("(%s, car_park_no) > ($%d, $%d)".formatted(distanceKey, parameters.size() - 1, parameters.size()));
+        }
+        var offset = after != null ? 0 : query.getOffset();
+        parameters.addLong((long) query.getLimit() + offset);
+        var reach = parameters.size();
+        parameters.addInteger(offset);
+        var where = String.join("\n  AND ", conditions);
+        // The reach gets 1 cm more: half a millimeter of rounding, and room for ST_DWithin to measure slightly differently
+        var sql = """
+                SELECT car_park_no, address, latitude, longitude, total_lots, available_lots, last_updated,
+                       location <-> %1$s AS distance
+                FROM car_parks
+                WHERE %2$s
+                  AND ST_DWithin(location, %1$s, (
+                      SELECT max(knn.distance) + 0.01
+                      FROM (
+                          SELECT location <-> %1$s AS distance
+                          FROM car_parks
+                          WHERE %2$s
+                          ORDER BY location <-> %1$s
+                          LIMIT $%3$d
+                      ) AS knn), false)
+                ORDER BY %4$s, car_park_no
+                LIMIT $3
+                OFFSET $%5$d
+                """.formatted(point, where, reach, distanceKey, parameters.size());
+        return readPoolProvider.pool().preparedQuery(sql)
+                .execute(parameters)
+                .map(rows -> {
+                    var carParks = new ArrayList<NearestCarPark>(rows.size());
+                    for (Row row : rows) {
+                        carParks.add(toNearestCarPark(row));
+                    }
+                    return carParks;
+                });
+    }
+
+    private static NearestCarPark toNearestCarPark(Row row) {
+        return new NearestCarPark(toCarPark(row), row.getDouble("distance"));
+    }
+
+    private static CarPark toCarPark(Row row) {
+        var lastUpdated = row.getLocalDateTime("last_updated");
+        return CarPark.builder()
+                .carParkNo(row.getString("car_park_no"))
+                .address(row.getString("address"))
+                .latitude(row.getDouble("latitude"))
+                .longitude(row.getDouble("longitude"))
+                .totalLots(row.getInteger("total_lots"))
+                .availableLots(row.getInteger("available_lots"))
+                .lastUpdated(lastUpdated != null ? Timestamp.valueOf(lastUpdated) : null)
+                .build();
+    }
+
+    /**
+     * <p>Car parks inside a bounding box, ordered by car park number</p>
+     * <p>{@code ST_DWithin} of the circle around the box bounds the GiST scan, the latitude and longitude bounds then
+     * cut it down to the box. Runs on the read replica when one is configured.</p>
+     */
+    public Uni<List<CarPark>> findWithin(BoundingBox box, int limit) {
+        var centerLatitude = (box.getMinLatitude() + box.getMaxLatitude()) / 2;
+        var centerLongitude = (box.getMinLongitude() + box.getMaxLongitude()) / 2;
+        // The corners are the farthest points of the box from its center, 1 m more absorbs rounding
+        var radiusMeters = 1 + Math.max(
+                Math.max(CarParkSpatialIndex.distanceMeters(centerLatitude, centerLongitude, box.getMinLatitude(), box.getMinLongitude()),
+                        CarParkSpatialIndex.distanceMeters(centerLatitude, centerLongitude, box.getMinLatitude(), box.getMaxLongitude())),
+                Math.max(CarParkSpatialIndex.distanceMeters(centerLatitude, centerLongitude, box.getMaxLatitude(), box.getMinLongitude()),
+                        CarParkSpatialIndex.distanceMeters(centerLatitude, centerLongitude, box.getMaxLatitude(), box.getMaxLongitude())));
         var sql = """
                 SELECT car_park_no, address, latitude, longitude, total_lots, available_lots, last_updated
                 FROM car_parks
-                WHERE available_lots > 0
-                ORDER BY location <-> ST_SetSRID(ST_Point(:longitude, :latitude), 4326)
-                LIMIT :limit
-                OFFSET :offset
+                WHERE ST_DWithin(location, ST_SetSRID(ST_Point($1, $2), 4326)::geography, $3)
+                  AND longitude BETWEEN $4 AND $5
+                  AND latitude BETWEEN $6 AND $7
+                ORDER BY car_park_no
+                LIMIT $8
+                """;
+        var parameters = Tuple.of(centerLongitude, centerLatitude, radiusMeters, box.getMinLongitude())
+                .addDouble(box.getMaxLongitude())
+                .addDouble(box.getMinLatitude())
+                .addDouble(box.getMaxLatitude())
+                .addInteger(limit);
+        return readPoolProvider.pool().preparedQuery(sql)
+                .execute(parameters)
+                .map(rows -> {
+                    var carParks = new ArrayList<CarPark>(rows.size());
+                    for (Row row : rows) {
+                        carParks.add(toCarPark(row));
+                    }
+                    return carParks;
+                });
+    }
+
+    /**
+     * <p>First pages of many nearest queries in one round trip, with a LATERAL KNN subquery per origin</p>
+     * <p>Each origin keeps its own limit, threshold and radius, and is ordered by distance in whole millimeters, then
+     * car park number, like {@link #findNearestWithAvailability(NearestCarParkQuery)}. Offsets and cursors are not
+     * supported here. Runs on the read replica when one is configured.</p>
+     *
+     * @return one list per query, in query order
+     */
+    public Uni<List<List<NearestCarPark>>> findNearestWithAvailabilityBatch(List<NearestCarParkQuery> queries) {
+        var point = "ST_SetSRID(ST_Point(o.origin_longitude, o.origin_latitude), 4326)::geography";
+        var bounded = queries.stream().anyMatch(query -> query.getRadiusMeters() != null);
+        var where = "available_lots >= o.min_available" + (bounded ? "\n  AND ST_DWithin(location, %s, o.radius_m)".formatted(point) : "");
+        // Same shape and order as findNearestWithAvailability, so an origin gets the same page from both
+        var sql = """
+                SELECT o.origin_no, c.*
+                FROM unnest($1::float8[], $2::float8[], $3::int[], $4::int[], $5::float8[])
+                     WITH ORDINALITY AS o(origin_latitude, origin_longitude, origin_limit, min_available, radius_m, origin_no)
+                CROSS JOIN LATERAL (
+                    SELECT car_park_no, address, latitude, longitude, total_lots, available_lots, last_updated,
+                           location <-> %1$s AS distance,
+                           floor((location <-> %1$s) * 1000 + 0.5) AS distance_key
+                    FROM car_parks
+                    WHERE %2$s
+                      AND ST_DWithin(location, %1$s, (
+                          SELECT max(knn.distance) + 0.01
+                          FROM (
+                              SELECT location <-> %1$s AS distance
+                              FROM car_parks
+                              WHERE %2$s
+                              ORDER BY location <-> %1$s
+                              LIMIT o.origin_limit
+                          ) AS knn), false)
+                    ORDER BY distance_key, car_park_no
+                    LIMIT o.origin_limit
+                ) AS c
+                ORDER BY o.origin_no, c.distance_key, c.car_park_no
+                """.formatted(point, where);
+        var parameters = Tuple.of(
+                queries.stream().map(NearestCarParkQuery::getLatitude).toArray(Double[]::new),
+                queries.stream().map(NearestCarParkQuery::getLongitude).toArray(Double[]::new),
+                queries.stream().map(NearestCarParkQuery::getLimit).toArray(Integer[]::new),
+                queries.stream().map(NearestCarParkQuery::getMinAvailable).toArray(Integer[]::new),
+                // Half the circumference covers the whole sphere, for origins without a radius
+                queries.stream().map(query -> query.getRadiusMeters() != null ? query.getRadiusMeters() : Math.PI * CarParkSpatialIndex.EARTH_RADIUS_METERS).toArray(Double[]::new));
+        return readPoolProvider.pool().preparedQuery(sql)
+                .execute(parameters)
+                .map(rows -> {
+                    var results = new ArrayList<List<NearestCarPark>>(queries.size());
+                    for (var i = 0; i < queries.size(); i++) {
+                        results.add(new ArrayList<>());
+                    }
+                    for (Row row : rows) {
+                        results.get(row.getLong("origin_no").intValue() - 1).add(toNearestCarPark(row));
+                    }
+                    return results;
+                });
+    }
+
+    /**
+     * <p>Loads car park batches with one multi-row INSERT per batch, all in one transaction</p>
+     * <p>Batches are pulled one at a time, so a large import never holds more than a batch in memory. With
+     * {@link CsvImportMode#SKIP_EXISTING} car parks that already exist are skipped. With {@link CsvImportMode#UPSERT}
+     * their address and coordinates are updated when they differ, live lot counts are never touched. When a car park is
+     * listed twice in a batch, the last row wins.</p>
+     *
+     * @return inserted, updated and unchanged row counts
+     */
+    public Uni<CsvImportSummary> importCarParks(Multi<List<CarPark>> batches, CsvImportMode mode) {
+        var sql = """
+                INSERT INTO car_parks (car_park_no, address, latitude, longitude, total_lots)
+                SELECT car_park_no, address, latitude, longitude, 0
+                FROM unnest($1::text[], $2::text[], $3::float8[], $4::float8[]) AS c(car_park_no, address, latitude, longitude)
+                """ + (mode == CsvImportMode.UPSERT ? """
+                ON CONFLICT (car_park_no) DO UPDATE
+                SET address = EXCLUDED.address, latitude = EXCLUDED.latitude, longitude = EXCLUDED.longitude
+                WHERE (car_parks.address, car_parks.latitude, car_parks.longitude)
+                      IS DISTINCT FROM (EXCLUDED.address, EXCLUDED.latitude, EXCLUDED.longitude)
+                RETURNING (xmax = 0) AS inserted
+                """ : """
+                ON CONFLICT (car_park_no) DO NOTHING
+                RETURNING TRUE AS inserted
+                """);
+        return client.withTransaction(connection -> {
+            var statement = connection.preparedQuery(sql);
+            return batches
+                    .onItem().transformToUniAndConcatenate(carParks -> {
+                        var batch = lastRowPerCarPark(carParks);
+                        return statement.execute(Tuple.of(
+                                        batch.stream().map(carPark -> carPark.carParkNo).toArray(String[]::new),
+                                        batch.stream().map(carPark -> carPark.address).toArray(String[]::new),
+                                        batch.stream().map(carPark -> carPark.latitude).toArray(Double[]::new),
+                                        batch.stream().map(carPark -> carPark.longitude).toArray(Double[]::new)))
+                                .map(rows -> toImportSummary(batch.size(), carParks.size() - batch.size(), rows));
+                    })
+                    .collect().in(() -> CsvImportSummary.builder().mode(mode.getValue()).build(), CsvImportSummary::add);
+        });
+    }
+
+    // A statement cannot insert or update the same row twice, and a repeated row is neither new nor unchanged
+    private static Collection<CarPark> lastRowPerCarPark(List<CarPark> carParks) {
+        var lastRows = new LinkedHashMap<String, CarPark>(carParks.size() * 2);
+        for (var carPark : carParks) {
+            lastRows.put(carPark.carParkNo, carPark);
+        }
+        return lastRows.values();
+    }
+
+    // xmax is 0 only for freshly inserted row versions, updated rows carry the locking transaction id
+    private static CsvImportSummary toImportSummary(int batchSize, int duplicates, RowSet<Row> rows) {
+        var inserted = 0;
+        var updated = 0;
+        for (Row row : rows) {
+            if (Boolean.TRUE.equals(row.getBoolean("inserted"))) {
+                inserted++;
+            } else {
+                updated++;
+            }
+        }
+        return CsvImportSummary.builder()
+                .inserted(inserted)
+                .updated(updated)
+                .unchanged(batchSize - inserted - updated)
+                .duplicates(duplicates)
+                .build();
+    }
+
+    /**
+     * Loads only the availability columns of every car park, through the reactive client without a Hibernate session.
+     *
+     * @return car parks with car_park_no, total_lots, available_lots and last_updated set
+     */
+    public Uni<List<CarPark>> findAllAvailability() {
+        return client.query("SELECT car_park_no, total_lots, available_lots, last_updated FROM car_parks")
+                .execute()
+                .map(rows -> {
+                    var carParks = new ArrayList<CarPark>(rows.size());
+                    for (Row row : rows) {
+                        var lastUpdated = row.getLocalDateTime("last_updated");
+                        carParks.add(CarPark.builder()
+                                .carParkNo(row.getString("car_park_no"))
+                                .totalLots(row.getInteger("total_lots"))
+                                .availableLots(row.getInteger("available_lots"))
+                                .lastUpdated(lastUpdated != null ? Timestamp.valueOf(lastUpdated) : null)
+                                .build());
+                    }
+                    return carParks;
+                });
+    }
+
+    /**
+     * <p>Fingerprint of the static data of every car park: the row count and a sum of per row hashes of number, address
+     * and coordinates</p>
+     * <p>Changes whenever a car park is added or its static data is updated, but not with availability. Computed in the
+     * database, so only one row is read.</p>
+     */
+    public Uni<String> findStaticFingerprint() {
+        return client.query("""
+                        SELECT count(*) || ':' || coalesce(sum(hashtextextended(
+                                   car_park_no || '|' || address || '|' || latitude || '|' || longitude, 0)), 0) AS fingerprint
+                        FROM car_parks
+                        """)
+                .execute()
+                .map(rows -> rows.iterator().next().getString("fingerprint"));
+    }
+
+    /**
+     * <p>Writes changed availability with one set-based UPDATE per batch</p>
+     * <p>Rows whose lot counts already match are left untouched, so they cost neither a new row version nor WAL.</p>
+     *
+     * @return number of rows updated
+     */
+    public Uni<Integer> updateAvailability(CarParkLotSnapshot changes, LocalDateTime lastUpdated) {
+        var sql = """
+                UPDATE car_parks AS c
+                SET total_lots = u.total_lots, available_lots = u.available_lots, last_updated = $4
+                FROM unnest($1::text[], $2::int[], $3::int[]) AS u(car_park_no, total_lots, available_lots)
+                WHERE c.car_park_no = u.car_park_no
+                  AND (c.total_lots, c.available_lots) IS DISTINCT FROM (u.total_lots, u.available_lots)
                 """;
-        return getSession()
-                .flatMap(session -> session.createNativeQuery(sql, CarPark.class)
-                        .setParameter("latitude", latitude)
-                        .setParameter("longitude", longitude)
-                        .setParameter("limit", limit)
-                        .setParameter("offset", offset)
-                        .getResultList());
+        var statement = client.preparedQuery(sql);
+        return Multi.createFrom().range(0, (changes.size() + AVAILABILITY_BATCH_SIZE - 1) / AVAILABILITY_BATCH_SIZE)
+                .onItem().transformToUniAndConcatenate(batch -> {
+                    var from = batch * AVAILABILITY_BATCH_SIZE;
+                    var to = Math.min(from + AVAILABILITY_BATCH_SIZE, changes.size());
+                    var carParkNos = IntStream.range(from, to).mapToObj(changes::carParkNo).toArray(String[]::new);
+                    var totalLots = IntStream.range(from, to).mapToObj(changes::totalLots).toArray(Integer[]::new);
+                    var availableLots = IntStream.range(from, to).mapToObj(changes::availableLots).toArray(Integer[]::new);
+                    return statement.execute(Tuple.of(carParkNos, totalLots, availableLots, lastUpdated))
+                            .map(RowSet::rowCount);
+                })
+                .collect().with(Collectors.summingInt(Integer::intValue));
     }
 }
@@ -0,0 +1,53 @@
+package com.example.carpark.repository;
+
+import com.example.carpark.config.CarParkConfig;
+import io.vertx.mutiny.core.Vertx;
+import io.vertx.mutiny.pgclient.PgPool;
+import io.vertx.pgclient.PgConnectOptions;
+import io.vertx.sqlclient.PoolOptions;
+import jakarta.annotation.PreDestroy;
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.inject.Inject;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * <p>Pool for read-only queries that tolerate replication lag</p>
+ * <p>When {@code app.carparks.read-replica.url} is set, reads go to a separate pool on the replica, so they neither
+ * queue behind nor compete with the bulk availability writes on the primary pool. Otherwise the primary pool is
+ * used.</p>
+ */
+@ApplicationScoped
+public class ReadPoolProvider {
+    private static final Logger LOGGER = LoggerFactory.getLogger(ReadPoolProvider.class);
+
+    private static final String REACTIVE_URL_PREFIX = "vertx-reactive:";
+
+    private final PgPool primary;
+    private final PgPool replica;
+
+    @Inject
+    public ReadPoolProvider(PgPool primary, CarParkConfig carParkConfig, Vertx vertx) {
+        this.primary = primary;
+        var readReplica = carParkConfig.readReplica();
+        this.replica = readReplica.url().map(url -> {
+            var connectOptions = PgConnectOptions.fromUri(url.startsWith(REACTIVE_URL_PREFIX) ? url.substring(REACTIVE_URL_PREFIX.length()) : url)
+                    .setCachePreparedStatements(true);
+            readReplica.username().ifPresent(connectOptions::setUser);
+            readReplica.password().ifPresent(connectOptions::setPassword);
+            LOGGER.info("Routing nearest queries to read replica {}:{}/{}", connectOptions.getHost(), connectOptions.getPort(), connectOptions.getDatabase());
+            return PgPool.pool(vertx, connectOptions, new PoolOptions().setMaxSize(readReplica.maxSize()));
+        }).orElse(null);
+    }
+
+    public PgPool pool() {
+        return replica != null ? replica : primary;
+    }
+
+    @PreDestroy
+    void close() {
+        if (replica != null) {
+            replica.closeAndAwait();
+        }
+    }
+}
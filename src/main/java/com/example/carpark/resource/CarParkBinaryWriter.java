@@ -0,0 +1,73 @@
+package com.example.carpark.resource;
+
+import com.example.carpark.model.NearestCarPark;
+import com.example.carpark.model.NearestCarParkPage;
+import jakarta.ws.rs.Produces;
+import jakarta.ws.rs.core.MediaType;
+import jakarta.ws.rs.core.MultivaluedMap;
+import jakarta.ws.rs.ext.MessageBodyWriter;
+import jakarta.ws.rs.ext.Provider;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.annotation.Annotation;
+import java.lang.reflect.Type;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+/**
+ * <p>Compact binary encoding of nearest results, for clients that send {@code Accept: application/x-carpark-list}</p>
+ * <p>Layout, little-endian: count (4), then one fixed-width record per car park (32): latitude, longitude and distance
+ * in meters (8 + 8 + 8), total and available lots (4 + 4). The addresses follow in the same order, UTF-8 prefixed by
+ * their length (2). Record {@code i} starts at byte {@code 4 + 32 * i}, so a client can read
+ * coordinates and lots without decoding any address.</p>
+ */
+@Provider
+@Produces(CarParkBinaryWriter.MEDIA_TYPE)
+public class CarParkBinaryWriter implements MessageBodyWriter<NearestCarParkPage> {
+    public static final String MEDIA_TYPE = "application/x-carpark-list";
+    static final int RECORD_BYTES = 3 * Double.BYTES + 2 * Integer.BYTES;
+
+    @Override
+    public boolean isWriteable(Class<?> type, Type genericType, Annotation[] annotations, MediaType mediaType) {
+        return type == NearestCarParkPage.class;
+    }
+
+    @Override
+    public void writeTo(NearestCarParkPage page, Class<?> type, Type genericType, Annotation[] annotations,
+                        MediaType mediaType, MultivaluedMap<String, Object> httpHeaders, OutputStream entityStream) throws IOException {
+        entityStream.write(encode(page.getCarParks()));
+    }
+
+    static byte[] encode(List<NearestCarPark> carParks) {
+        var addresses = new byte[carParks.size()][];
+        var addressBytes = 0;
+        for (var i = 0; i < carParks.size(); i++) {
+            var address = carParks.get(i).getCarPark().address;
+            addresses[i] = address != null ? address.getBytes(StandardCharsets.UTF_8) : new byte[0];
+            if (addresses[i].length > 0xFFFF) {
+                throw new IllegalArgumentException("Address of " + addresses[i].length + " bytes does not fit a car park record");
+            }
+            addressBytes += Short.BYTES + addresses[i].length;
+        }
+
+        var buffer = ByteBuffer.allocate(Integer.BYTES + carParks.size() * RECORD_BYTES + addressBytes)
+                .order(ByteOrder.LITTLE_ENDIAN);
+        buffer.putInt(carParks.size());
+        for (var nearest : carParks) {
+            var carPark = nearest.getCarPark();
+            buffer.putDouble(carPark.latitude);
+            buffer.putDouble(carPark.longitude);
+            buffer.putDouble(nearest.getDistanceMeters());
+            buffer.putInt(carPark.totalLots);
+            buffer.putInt(carPark.availableLots);
+        }
+        for (var address : addresses) {
+            buffer.putShort((short) address.length);
+            buffer.put(address);
+        }
+        return buffer.array();
+    }
+}
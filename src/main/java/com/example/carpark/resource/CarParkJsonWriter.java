@@ -0,0 +1,52 @@
+package com.example.carpark.resource;
+
+import com.example.carpark.index.CarParkJsonFragments;
+import com.example.carpark.model.NearestCarParkPage;
+import jakarta.ws.rs.Produces;
+import jakarta.ws.rs.core.MediaType;
+import jakarta.ws.rs.core.MultivaluedMap;
+import jakarta.ws.rs.ext.MessageBodyWriter;
+import jakarta.ws.rs.ext.Provider;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.annotation.Annotation;
+import java.lang.reflect.Type;
+
+/**
+ * <p>Writes nearest results as the same JSON array Jackson produces for {@code CarParkDto}, without mapping or
+ * reflection</p>
+ * <p>Car parks answered from the index carry their static JSON, encoded when the index was built, so a response is
+ * the concatenation of those fragments with lots and distance in between. They go straight into the response stream,
+ * whose buffers come from the server's pooled allocator. Car parks read from the database are encoded on the spot.</p>
+ */
+@Provider
+@Produces(MediaType.APPLICATION_JSON)
+public class CarParkJsonWriter implements MessageBodyWriter<NearestCarParkPage> {
+    private static final int SCRATCH_BYTES = 32;
+
+    @Override
+    public boolean isWriteable(Class<?> type, Type genericType, Annotation[] annotations, MediaType mediaType) {
+        return type == NearestCarParkPage.class;
+    }
+
+    @Override
+    public void writeTo(NearestCarParkPage page, Class<?> type, Type genericType, Annotation[] annotations,
+                        MediaType mediaType, MultivaluedMap<String, Object> httpHeaders, OutputStream entityStream) throws IOException {
+        var scratch = new byte[SCRATCH_BYTES];
+        entityStream.write('[');
+        var first = true;
+        for (var nearest : page.getCarParks()) {
+            if (!first) {
+                entityStream.write(',');
+            }
+            first = false;
+            var carPark = nearest.getCarPark();
+            var fragment = nearest.getJsonFragment() != null
+                    ? nearest.getJsonFragment()
+                    : CarParkJsonFragments.encode(carPark.address, carPark.latitude, carPark.longitude);
+            CarParkJsonFragments.write(entityStream, fragment, carPark.totalLots, carPark.availableLots, nearest.getDistanceMeters(), scratch);
+        }
+        entityStream.write(']');
+    }
+}
@@ -1,26 +1,52 @@
 package com.example.carpark.resource;
 
+import com.example.carpark.config.CarParkConfig;
 import com.example.carpark.exception.CarParkException;
+import com.example.carpark.model.AvailabilityDelta;
+import com.example.carpark.model.AvailabilityHistoryPoint;
+import com.example.carpark.model.BoundingBox;
 import com.example.carpark.model.CarParkDto;
 import com.example.carpark.model.CarParkInformation;
+import com.example.carpark.model.CsvImportMode;
+import com.example.carpark.model.NearestCarParkBatchRequest;
+import com.example.carpark.model.NearestCarParkBatchResult;
+import com.example.carpark.model.NearestCarParkPage;
+import com.example.carpark.model.NearestCarParkQuery;
+import com.example.carpark.model.NearestCursor;
+import com.example.carpark.service.AvailabilityHistoryService;
+import com.example.carpark.service.AvailabilityStreamService;
 import com.example.carpark.service.CarParkService;
-import io.quarkus.hibernate.reactive.panache.common.WithTransaction;
+import com.example.carpark.util.LogSampler;
+import io.smallrye.mutiny.Multi;
 import io.smallrye.mutiny.Uni;
-import io.vertx.mutiny.core.Vertx;
+import io.smallrye.mutiny.infrastructure.Infrastructure;
 import jakarta.inject.Inject;
 import jakarta.ws.rs.*;
+import jakarta.ws.rs.core.CacheControl;
+import jakarta.ws.rs.core.Context;
+import jakarta.ws.rs.core.EntityTag;
+import jakarta.ws.rs.core.HttpHeaders;
 import jakarta.ws.rs.core.MediaType;
 import jakarta.ws.rs.core.Response;
+import jakarta.ws.rs.core.UriInfo;
 import org.eclipse.microprofile.openapi.annotations.Operation;
 import org.eclipse.microprofile.openapi.annotations.responses.APIResponse;
 import org.eclipse.microprofile.openapi.annotations.tags.Tag;
 import org.jboss.resteasy.reactive.RestForm;
+import org.jboss.resteasy.reactive.RestStreamElementType;
 import org.jboss.resteasy.reactive.multipart.FileUpload;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeParseException;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Locale;
+import java.util.function.Predicate;
 
 @Path("/v1/carparks")
 @Produces(MediaType.APPLICATION_JSON)
@@ -29,31 +55,72 @@ import java.util.List;
 public class CarParkResource {
     private static final Logger LOGGER = LoggerFactory.getLogger(CarParkResource.class);
 
+    private static final int MAX_BATCH_ORIGINS = 1000;
+    private static final int MAX_BATCH_PER_PAGE = 100;
+    private static final int MAX_BATCH_RESULTS = 10_000;
+    private static final Duration MIN_HISTORY_STEP = Duration.ofMinutes(1);
+    private static final int MAX_STREAM_CAR_PARKS = 1000;
+    private static final CacheControl REVALIDATE = revalidate();
+
     private final CarParkService carParkService;
-    private final Vertx vertx;
+    private final AvailabilityHistoryService availabilityHistoryService;
+    private final AvailabilityStreamService availabilityStreamService;
+    private final int maxHistoryPoints;
+    private final int maxViewportResults;
+    private final LogSampler nearestLogSampler;
+    private final LogSampler batchLogSampler;
 
     @Inject
-    public CarParkResource(CarParkService carParkService, Vertx vertx) {
+    public CarParkResource(CarParkService carParkService, AvailabilityHistoryService availabilityHistoryService,
+                           AvailabilityStreamService availabilityStreamService, CarParkConfig carParkConfig) {
         this.carParkService = carParkService;
-        this.vertx = vertx;
+        this.availabilityHistoryService = availabilityHistoryService;
+        this.availabilityStreamService = availabilityStreamService;
+        this.maxHistoryPoints = carParkConfig.history().maxPoints();
+        this.maxViewportResults = carParkConfig.viewport().maxResults();
+        var sampleInterval = Duration.ofMillis(carParkConfig.requestLog().sampleIntervalMillis());
+        this.nearestLogSampler = new LogSampler(sampleInterval);
+        this.batchLogSampler = new LogSampler(sampleInterval);
     }
 
     @POST
     @Path("/import-csv")
     @Consumes(MediaType.MULTIPART_FORM_DATA)
-    @WithTransaction
     @Operation(summary = "Import car park data from CSV", description = "Ingests car park data from a provided CSV file")
-    @APIResponse(responseCode = "202", description = "CSV data imported successfully")
+    @APIResponse(responseCode = "202", description = "CSV data imported successfully, with inserted, updated and unchanged row counts")
+    @APIResponse(responseCode = "400", description = "Unknown import mode or missing CSV header")
     @APIResponse(responseCode = "500", description = "CSV import failed")
-    public Uni<Response> importCsvData(@RestForm("file") FileUpload csvFile) {
-        return vertx.fileSystem()
-                .readFile(csvFile.uploadedFile().toString())
-                .map(buffer -> CarParkInformation.fromCsvContent(buffer.toString(StandardCharsets.UTF_8)))
-                .flatMap(carParkService::ingestCarParkInfos)
-                .map(result -> Response
-                        .accepted()
-                        .entity("CSV data imported successfully")
-                        .build())
+    public Uni<Response> importCsvData(
+            @RestForm("file") FileUpload csvFile,
+            @QueryParam("mode") @DefaultValue("skip") String mode) {
+        var importMode = CsvImportMode.fromValue(mode).orElseThrow(() -> {
+            LOGGER.warn("Invalid import mode: mode={}", mode);
+            return new WebApplicationException(
+                    Response.status(Response.Status.BAD_REQUEST)
+                            .entity("Mode must be skip or upsert")
+                            .build());
+        });
+
+        var uploadedFile = csvFile.uploadedFile();
+        return Uni.createFrom().item(() -> CarParkInformation.hasCsvHeader(uploadedFile))
+                .runSubscriptionOn(Infrastructure.getDefaultWorkerPool()) // Blocking read of the header row
+                .flatMap(validHeader -> {
+                    if (!validHeader) {
+                        LOGGER.warn("Invalid CSV header: file={}", csvFile.fileName());
+                        throw new WebApplicationException(
+                                Response.status(Response.Status.BAD_REQUEST)
+                                        .entity("CSV must start with a " + String.join(",", CarParkInformation.CSV_COLUMNS) + " header")
+                                        .build());
+                    }
+                    return carParkService.importCsvFile(uploadedFile, importMode);
+                })
+                .map(summary -> {
+                    summary.setMessage("CSV data imported successfully");
+                    return Response
+                            .accepted()
+                            .entity(summary)
+                            .build();
+                })
                 .onFailure(CarParkException.class)
                 .recoverWithItem(e -> {
                     LOGGER.error("Failed to import CSV data: {}", e.getMessage());
@@ -66,23 +133,336 @@ public class CarParkResource {
 
     @GET
     @Path("/nearest")
-    @WithTransaction
-    @Operation(summary = "Get nearest car parks", description = "Returns the nearest car parks with available parking lots based on user-provided coordinates")
+    @Produces({MediaType.APPLICATION_JSON, CarParkBinaryWriter.MEDIA_TYPE})
+    @Operation(summary = "Get nearest car parks", description = "Returns the nearest car parks with available parking lots based on user-provided coordinates. "
+            + "Full pages carry an X-Next-Cursor header (and a Link rel=next), pass it back as cursor to continue right after the last car park, even if availability changed in between. "
+            + "JSON by default, or the compact binary layout with Accept: " + CarParkBinaryWriter.MEDIA_TYPE + ".")
     @APIResponse(responseCode = "200", description = "List of nearest car parks")
-    @APIResponse(responseCode = "400", description = "Missing or invalid latitude/longitude")
+    @APIResponse(responseCode = "400", description = "Missing or invalid latitude/longitude, pagination, cursor, radius_m or min_available")
     @APIResponse(responseCode = "500", description = "Unexpected server issues")
-    public Uni<List<CarParkDto>> getNearestCarParks(
+    public Uni<Response> getNearestCarParks(
             @QueryParam("latitude") Double latitude,
             @QueryParam("longitude") Double longitude,
             @QueryParam("page") @DefaultValue("1") int page,
-            @QueryParam("per_page") @DefaultValue("10") int perPage) {
-        LOGGER.info("Received request: latitude={}, longitude={}, page={}, per_page={}", latitude, longitude, page, perPage);
+            @QueryParam("per_page") @DefaultValue("10") int perPage,
+            @QueryParam("cursor") String cursor,
+            @QueryParam("radius_m") Double radiusMeters,
+            @QueryParam("min_available") @DefaultValue("1") int minAvailable,
+            @Context UriInfo uriInfo) {
+        if (LOGGER.isDebugEnabled()) {
+            LOGGER.debug("Received request: latitude={}, longitude={}, page={}, per_page={}, cursor={}, radius_m={}, min_available={}",
+                    latitude, longitude, page, perPage, cursor, radiusMeters, minAvailable);
+        }
 
         validateGetNearestCarParksInputs(latitude, longitude, page, perPage);
+        validateGetNearestCarParksFilters(radiusMeters, minAvailable);
+
+        var query = NearestCarParkQuery.builder()
+                .latitude(latitude)
+                .longitude(longitude)
+                .limit(perPage)
+                .offset((int) Math.min((long) (page - 1) * perPage, Integer.MAX_VALUE)) // Past any data, so an empty page
+                .after(cursor != null ? decodeCursor(cursor, latitude, longitude) : null)
+                .radiusMeters(radiusMeters)
+                .minAvailable(minAvailable)
+                .build();
+
+        return carParkService.getNearestCarParks(query)
+                .map(carParks -> {
+                    if (LOGGER.isDebugEnabled()) {
+                        LOGGER.debug("Returning {} car parks", carParks.size());
+                    } else if (nearestLogSampler.tryAcquire()) {
+                        LOGGER.info("event=nearest latitude={} longitude={} page={} per_page={} cursor={} results={} sampled_out={}",
+                                latitude, longitude, page, perPage, cursor != null, carParks.size(), nearestLogSampler.takeSuppressed());
+                    }
+                    // Written by CarParkJsonWriter or CarParkBinaryWriter, no DTO mapping
+                    var response = Response.ok(new NearestCarParkPage(carParks)).header(HttpHeaders.VARY, HttpHeaders.ACCEPT);
+                    if (carParks.size() == perPage) {
+                        var nextCursor = carParks.getLast().cursor(query).encode();
+                        var next = uriInfo.getRequestUriBuilder()
+                                .replaceQueryParam("page")
+                                .replaceQueryParam("cursor", nextCursor)
+                                .build();
+                        response.header("X-Next-Cursor", nextCursor).link(next, "next");
+                    }
+                    return response.build();
+                });
+    }
+
+    @POST
+    @Path("/nearest:batch")
+    @Operation(summary = "Get nearest car parks for many origins", description = "Returns the first page of nearest car parks with available parking lots for each origin, in the order the origins were sent")
+    @APIResponse(responseCode = "200", description = "One list of nearest car parks per origin")
+    @APIResponse(responseCode = "400", description = "Missing, too many or invalid origins, invalid perPage, radiusMeters or minAvailable, or more than 10000 results in total")
+    @APIResponse(responseCode = "500", description = "Unexpected server issues")
+    public Uni<List<NearestCarParkBatchResult>> getNearestCarParksBatch(NearestCarParkBatchRequest request) {
+        var origins = request != null ? request.getOrigins() : null;
+        if (origins == null || origins.isEmpty() || origins.size() > MAX_BATCH_ORIGINS) {
+            LOGGER.warn("Invalid batch size: origins={}", origins != null ? origins.size() : null);
+            throw new WebApplicationException(
+                    Response.status(Response.Status.BAD_REQUEST)
+                            .entity("Origins must contain between 1 and " + MAX_BATCH_ORIGINS + " coordinates")
+                            .build());
+        }
+        var perPage = request.getPerPage() != null ? request.getPerPage() : 10;
+        var minAvailable = request.getMinAvailable() != null ? request.getMinAvailable() : 1;
+        LOGGER.debug("Received batch request: origins={}, perPage={}, radiusMeters={}, minAvailable={}",
+                origins.size(), perPage, request.getRadiusMeters(), minAvailable);
+        if (perPage > MAX_BATCH_PER_PAGE) {
+            LOGGER.warn("Batch page too large: perPage={}", perPage);
+            throw new WebApplicationException(
+                    Response.status(Response.Status.BAD_REQUEST)
+                            .entity("Batch perPage must be at most " + MAX_BATCH_PER_PAGE)
+                            .build());
+        }
+        // The whole batch is answered in one go on the event loop, so its total size is bounded too
+        if ((long) origins.size() * perPage > MAX_BATCH_RESULTS) {
+            LOGGER.warn("Batch too large: origins={}, perPage={}", origins.size(), perPage);
+            throw new WebApplicationException(
+                    Response.status(Response.Status.BAD_REQUEST)
+                            .entity("Origins times perPage must not exceed " + MAX_BATCH_RESULTS)
+                            .build());
+        }
+
+        validateGetNearestCarParksFilters(request.getRadiusMeters(), minAvailable);
+        var queries = origins.stream()
+                .map(origin -> {
+                    if (origin == null) {
+                        throw new WebApplicationException(
+                                Response.status(Response.Status.BAD_REQUEST)
+                                        .entity("Missing latitude or longitude")
+                                        .build());
+                    }
+                    validateGetNearestCarParksInputs(origin.getLatitude(), origin.getLongitude(), 1, perPage);
+                    return NearestCarParkQuery.builder()
+                            .latitude(origin.getLatitude())
+                            .longitude(origin.getLongitude())
+                            .limit(perPage)
+                            .radiusMeters(request.getRadiusMeters())
+                            .minAvailable(minAvailable)
+                            .build();
+                })
+                .toList();
+
+        return carParkService.getNearestCarParksBatch(queries)
+                .map(results -> {
+                    var batchResults = new ArrayList<NearestCarParkBatchResult>(queries.size());
+                    for (var i = 0; i < queries.size(); i++) {
+                        batchResults.add(NearestCarParkBatchResult.builder()
+                                .latitude(queries.get(i).getLatitude())
+                                .longitude(queries.get(i).getLongitude())
+                                .carParks(results.get(i).stream().map(CarParkDto::fromNearest).toList())
+                                .build());
+                    }
+                    if (LOGGER.isDebugEnabled()) {
+                        LOGGER.debug("Returning nearest car parks for {} origins", batchResults.size());
+                    } else if (batchLogSampler.tryAcquire()) {
+                        LOGGER.info("event=nearest_batch origins={} per_page={} sampled_out={}",
+                                batchResults.size(), perPage, batchLogSampler.takeSuppressed());
+                    }
+                    return batchResults;
+                });
+    }
+
+    @GET
+    @Path("/within")
+    @Operation(summary = "Get car parks in an area", description = "Returns every car park inside bbox (minLon,minLat,maxLon,maxLat) with its lots, ordered by car park number. "
+            + "The ETag only changes when a car park of the area or its lots change, send it back in If-None-Match to get 304 Not Modified.")
+    @APIResponse(responseCode = "200", description = "Car parks in the area")
+    @APIResponse(responseCode = "304", description = "Nothing in the area changed since the ETag in If-None-Match")
+    @APIResponse(responseCode = "400", description = "Missing or invalid bbox, or too many car parks in the area")
+    @APIResponse(responseCode = "500", description = "Unexpected server issues")
+    public Uni<Response> getCarParksWithin(
+            @QueryParam("bbox") String bbox,
+            @HeaderParam(HttpHeaders.IF_NONE_MATCH) String ifNoneMatch) {
+        var box = BoundingBox.parse(bbox).orElseThrow(() -> {
+            LOGGER.warn("Invalid bounding box: bbox={}", bbox);
+            return new WebApplicationException(
+                    Response.status(Response.Status.BAD_REQUEST)
+                            .entity("The bbox parameter must be minLon,minLat,maxLon,maxLat in WGS84")
+                            .build());
+        });
+        return getCarParksIn(box, ifNoneMatch);
+    }
+
+    @GET
+    @Path("/tiles/{z}/{x}/{y}")
+    @Operation(summary = "Get car parks in a map tile", description = "Returns every car park inside the XYZ (Web Mercator) tile with its lots, ordered by car park number. "
+            + "The ETag only changes when a car park of the tile or its lots change, send it back in If-None-Match to get 304 Not Modified.")
+    @APIResponse(responseCode = "200", description = "Car parks in the tile")
+    @APIResponse(responseCode = "304", description = "Nothing in the tile changed since the ETag in If-None-Match")
+    @APIResponse(responseCode = "400", description = "No such tile, or too many car parks in the tile")
+    @APIResponse(responseCode = "500", description = "Unexpected server issues")
+    public Uni<Response> getCarParkTile(
+            @PathParam("z") int zoom,
+            @PathParam("x") int x,
+            @PathParam("y") int y,
+            @HeaderParam(HttpHeaders.IF_NONE_MATCH) String ifNoneMatch) {
+        var box = BoundingBox.ofTile(zoom, x, y).orElseThrow(() -> {
+            LOGGER.warn("Invalid tile: z={}, x={}, y={}", zoom, x, y);
+            return new WebApplicationException(
+                    Response.status(Response.Status.BAD_REQUEST)
+                            .entity("The tile must have a zoom between 0 and " + BoundingBox.MAX_TILE_ZOOM + ", and x and y between 0 and 2^zoom - 1")
+                            .build());
+        });
+        return getCarParksIn(box, ifNoneMatch);
+    }
+
+    private Uni<Response> getCarParksIn(BoundingBox box, String ifNoneMatch) {
+        // One more than allowed, to tell a full area from one that is too large
+        return carParkService.getCarParksWithin(box, maxViewportResults + 1)
+                .map(tile -> {
+                    if (tile.getCarParks().size() > maxViewportResults) {
+                        LOGGER.warn("Too many car parks in area: bbox={}", box);
+                        throw new WebApplicationException(
+                                Response.status(Response.Status.BAD_REQUEST)
+                                        .entity("The area holds more than " + maxViewportResults + " car parks, use a smaller bbox or a higher zoom")
+                                        .build());
+                    }
+                    var entityTag = new EntityTag(tile.getEntityTag(), true);
+                    if (matchesAny(ifNoneMatch, entityTag)) {
+                        return Response.notModified(entityTag).cacheControl(REVALIDATE).build();
+                    }
+                    LOGGER.debug("Returning {} car parks in area {}", tile.getCarParks().size(), box);
+                    return Response.ok(tile).tag(entityTag).cacheControl(REVALIDATE).build();
+                });
+    }
+
+    // Weak comparison, as If-None-Match requires, so W/ prefixes are ignored
+    private static boolean matchesAny(String ifNoneMatch, EntityTag entityTag) {
+        if (ifNoneMatch == null) {
+            return false;
+        }
+        var quoted = "\"" + entityTag.getValue() + "\"";
+        for (var candidate : ifNoneMatch.split(",")) {
+            var tag = candidate.trim();
+            if (tag.equals("*") || (tag.startsWith("W/") ? tag.substring(2) : tag).equals(quoted)) {
+                return true;
+            }
+        }
+        return false;
+    }
 
-        return carParkService.getNearestCarParks(latitude, longitude, page, perPage)
-                .map(carParks -> carParks.stream().map(CarParkDto::fromEntity).toList())
-                .invoke(carParkDtos -> LOGGER.info("Returning {} car parks", carParkDtos.size()));
+    // Shared caches may store area and tile responses, but revalidate them before each use
+    private static CacheControl revalidate() {
+        var cacheControl = new CacheControl();
+        cacheControl.setNoCache(true);
+        cacheControl.setNoTransform(false);
+        return cacheControl;
+    }
+
+    @GET
+    @Path("/availability/stream")
+    @Produces(MediaType.SERVER_SENT_EVENTS)
+    @RestStreamElementType(MediaType.APPLICATION_JSON)
+    @Operation(summary = "Stream availability changes", description = "Server-sent events with the car parks whose lots changed in each availability refresh, "
+            + "limited to the car parks inside bbox (minLon,minLat,maxLon,maxLat) or listed in car_park_no. An empty list is sent every 30 seconds as keep-alive. "
+            + "Clients that fall behind are disconnected and should reconnect, then re-read current availability.")
+    @APIResponse(responseCode = "200", description = "Stream of availability changes")
+    @APIResponse(responseCode = "400", description = "Missing or invalid bbox, or too many car_park_no")
+    public Multi<List<AvailabilityDelta>> streamAvailability(
+            @QueryParam("bbox") String bbox,
+            @QueryParam("car_park_no") List<String> carParkNos) {
+        if ((bbox == null && carParkNos.isEmpty()) || carParkNos.size() > MAX_STREAM_CAR_PARKS) {
+            LOGGER.warn("Invalid stream filter: bbox={}, car_park_no={}", bbox, carParkNos.size());
+            throw new WebApplicationException(
+                    Response.status(Response.Status.BAD_REQUEST)
+                            .entity("Either bbox or between 1 and " + MAX_STREAM_CAR_PARKS + " car_park_no are required")
+                            .build());
+        }
+        Predicate<AvailabilityDelta> filter = delta -> false;
+        if (bbox != null) {
+            var box = BoundingBox.parse(bbox).orElseThrow(() -> {
+                LOGGER.warn("Invalid bounding box: bbox={}", bbox);
+                return new WebApplicationException(
+                        Response.status(Response.Status.BAD_REQUEST)
+                                .entity("The bbox parameter must be minLon,minLat,maxLon,maxLat in WGS84")
+                                .build());
+            });
+            filter = filter.or(delta -> box.contains(delta.getLatitude(), delta.getLongitude()));
+        }
+        if (!carParkNos.isEmpty()) {
+            var wanted = new HashSet<>(carParkNos);
+            filter = filter.or(delta -> wanted.contains(delta.getCarParkNo()));
+        }
+        LOGGER.debug("Availability stream requested: bbox={}, car_park_no={}", bbox, carParkNos.size());
+        return availabilityStreamService.subscribe(filter);
+    }
+
+    @GET
+    @Path("/{carParkNo}/history")
+    @Operation(summary = "Get availability history of a car park", description = "Returns the car park's availability aggregated into buckets of step, from oldest to newest. Buckets without changes carry the previous value over.")
+    @APIResponse(responseCode = "200", description = "Availability series, empty when nothing was recorded")
+    @APIResponse(responseCode = "400", description = "Invalid from, to or step, or too many points")
+    @APIResponse(responseCode = "500", description = "Unexpected server issues")
+    public Uni<List<AvailabilityHistoryPoint>> getAvailabilityHistory(
+            @PathParam("carParkNo") String carParkNo,
+            @QueryParam("from") String from,
+            @QueryParam("to") String to,
+            @QueryParam("step") @DefaultValue("1h") String step) {
+        var toTime = to != null ? parseHistoryTime("to", to) : LocalDateTime.now().truncatedTo(ChronoUnit.MINUTES);
+        var fromTime = from != null ? parseHistoryTime("from", from) : toTime.minusDays(1);
+        var stepDuration = parseHistoryStep(step);
+        if (!fromTime.isBefore(toTime)) {
+            LOGGER.warn("Invalid history range: from={}, to={}", fromTime, toTime);
+            throw new WebApplicationException(
+                    Response.status(Response.Status.BAD_REQUEST)
+                            .entity("The from parameter must be before to")
+                            .build());
+        }
+        if (Duration.between(fromTime, toTime).dividedBy(stepDuration) >= maxHistoryPoints) {
+            LOGGER.warn("Too many history points: from={}, to={}, step={}", fromTime, toTime, step);
+            throw new WebApplicationException(
+                    Response.status(Response.Status.BAD_REQUEST)
+                            .entity("The range from " + fromTime + " to " + toTime + " has more than " + maxHistoryPoints + " steps, use a larger step")
+                            .build());
+        }
+        return availabilityHistoryService.getHistory(carParkNo, fromTime, toTime, stepDuration);
+    }
+
+    private LocalDateTime parseHistoryTime(String name, String value) {
+        try {
+            return LocalDateTime.parse(value);
+        } catch (DateTimeParseException e) {
+            LOGGER.warn("Invalid history time: {}={}", name, value);
+            throw new WebApplicationException(
+                    Response.status(Response.Status.BAD_REQUEST)
+                            .entity("The " + name + " parameter must be a local date-time such as 2025-03-10T14:00:00")
+                            .build());
+        }
+    }
+
+    // Accepts 30s, 5m, 1h, 1d or an ISO-8601 duration such as PT15M
+    private Duration parseHistoryStep(String step) {
+        Duration duration = null;
+        var upperCaseStep = step.toUpperCase(Locale.ROOT);
+        try {
+            duration = upperCaseStep.startsWith("P")
+                    ? Duration.parse(upperCaseStep)
+                    : Duration.parse((upperCaseStep.endsWith("D") ? "P" : "PT") + upperCaseStep);
+        } catch (DateTimeParseException e) {
+            // Reported below
+        }
+        if (duration == null || duration.compareTo(MIN_HISTORY_STEP) < 0) {
+            LOGGER.warn("Invalid history step: step={}", step);
+            throw new WebApplicationException(
+                    Response.status(Response.Status.BAD_REQUEST)
+                            .entity("The step parameter must be a duration of at least 1 minute, such as 5m, 1h or 1d")
+                            .build());
+        }
+        return duration;
+    }
+
+    private NearestCursor decodeCursor(String cursor, double latitude, double longitude) {
+        return NearestCursor.decode(cursor)
+                .filter(decoded -> decoded.matches(latitude, longitude))
+                .orElseThrow(() -> {
+                    LOGGER.warn("Invalid cursor: cursor={}, latitude={}, longitude={}", cursor, latitude, longitude);
+                    return new WebApplicationException(
+                            Response.status(Response.Status.BAD_REQUEST)
+                                    .entity("Cursor is invalid or was issued for other coordinates")
+                                    .build());
+                });
     }
 
     private void validateGetNearestCarParksInputs(Double latitude, Double longitude, int page, int perPage) {
@@ -110,4 +490,22 @@ public class CarParkResource {
                             .build());
         }
     }
+
+    private void validateGetNearestCarParksFilters(Double radiusMeters, int minAvailable) {
+        if (radiusMeters != null && !(radiusMeters > 0)) {
+            LOGGER.warn("Invalid radius: radius_m={}", radiusMeters);
+            throw new WebApplicationException(
+                    Response.status(Response.Status.BAD_REQUEST)
+                            .entity("The radius_m parameter must be a positive number of meters")
+                            .build());
+        }
+
+        if (minAvailable < 1) {
+            LOGGER.warn("Invalid availability threshold: min_available={}", minAvailable);
+            throw new WebApplicationException(
+                    Response.status(Response.Status.BAD_REQUEST)
+                            .entity("The min_available parameter must be a positive integer")
+                            .build());
+        }
+    }
 }
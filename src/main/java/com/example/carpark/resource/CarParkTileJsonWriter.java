@@ -0,0 +1,45 @@
+package com.example.carpark.resource;
+
+import com.example.carpark.index.CarParkJsonFragments;
+import com.example.carpark.model.CarParkTile;
+import jakarta.ws.rs.Produces;
+import jakarta.ws.rs.core.MediaType;
+import jakarta.ws.rs.core.MultivaluedMap;
+import jakarta.ws.rs.ext.MessageBodyWriter;
+import jakarta.ws.rs.ext.Provider;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.annotation.Annotation;
+import java.lang.reflect.Type;
+
+/**
+ * Writes the car parks of an area or tile as a JSON array from their pre-encoded fragments, like
+ * {@link CarParkJsonWriter} but without distance
+ */
+@Provider
+@Produces(MediaType.APPLICATION_JSON)
+public class CarParkTileJsonWriter implements MessageBodyWriter<CarParkTile> {
+    private static final int SCRATCH_BYTES = 32;
+
+    @Override
+    public boolean isWriteable(Class<?> type, Type genericType, Annotation[] annotations, MediaType mediaType) {
+        return type == CarParkTile.class;
+    }
+
+    @Override
+    public void writeTo(CarParkTile tile, Class<?> type, Type genericType, Annotation[] annotations,
+                        MediaType mediaType, MultivaluedMap<String, Object> httpHeaders, OutputStream entityStream) throws IOException {
+        var scratch = new byte[SCRATCH_BYTES];
+        var carParks = tile.getCarParks();
+        entityStream.write('[');
+        for (var i = 0; i < carParks.size(); i++) {
+            if (i > 0) {
+                entityStream.write(',');
+            }
+            var carPark = carParks.get(i);
+            CarParkJsonFragments.write(entityStream, tile.getJsonFragments().get(i), carPark.totalLots, carPark.availableLots, scratch);
+        }
+        entityStream.write(']');
+    }
+}
@@ -0,0 +1,216 @@
+package com.example.carpark.service;
+
+import com.example.carpark.config.CarParkConfig;
+import com.example.carpark.model.AvailabilityDeltaMessage;
+import com.example.carpark.model.CarParkLotSnapshot;
+import io.quarkus.runtime.StartupEvent;
+import io.smallrye.mutiny.Uni;
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.enterprise.event.Observes;
+import jakarta.inject.Inject;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * <p>Keeps the availability table of every instance current without each of them reading {@code car_parks}</p>
+ * <p>The instance that ran a refresh publishes its changes to Redis once they are persisted, under the next number of
+ * a shared sequence. The others apply them to their table and to stream subscribers as they arrive. Deltas are applied
+ * in order, a delta that skips a number leaves this instance behind, and so does a lost subscription. An instance that
+ * is behind reloads availability from the database on its next cycle, and continues from the sequence it read before
+ * the reload.</p>
+ * <p>Imports are announced on the same channel, so the other instances rebuild their index right away instead of on
+ * their next cycle.</p>
+ */
+@ApplicationScoped
+public class AvailabilityFanOutService {
+    private static final Logger LOGGER = LoggerFactory.getLogger(AvailabilityFanOutService.class);
+
+    private final CarParkConfig.FanOut config;
+    private final RedisService redisService;
+    private final CarParkIndexService carParkIndexService;
+    private final AvailabilityStreamService availabilityStreamService;
+
+    // Last sequence up to which every delta is in the table, 0 when unknown
+    private final AtomicLong appliedSequence = new AtomicLong();
+    private volatile boolean subscribed;
+    private volatile Runnable importListener = () -> {
+    };
+
+    @Inject
+    public AvailabilityFanOutService(CarParkConfig carParkConfig, RedisService redisService,
+                                     CarParkIndexService carParkIndexService, AvailabilityStreamService availabilityStreamService) {
+        this.config = carParkConfig.fanOut();
+        this.redisService = redisService;
+        this.carParkIndexService = carParkIndexService;
+        this.availabilityStreamService = availabilityStreamService;
+    }
+
+    void onStart(@Observes StartupEvent event) {
+        if (config.enabled()) {
+            subscribe();
+        }
+    }
+
+    private void subscribe() {
+        redisService.subscribeAvailabilityDeltas(this::receive, this::onConnectionLost)
+                .subscribe().with(
+                        connection -> {
+                            subscribed = true;
+                            LOGGER.info("Subscribed to availability deltas");
+                        },
+                        e -> {
+                            LOGGER.warn("Failed to subscribe to availability deltas, availability will be reloaded from the database: {}", e.getMessage());
+                            resubscribeLater();
+                        });
+    }
+
+    private void onConnectionLost() {
+        subscribed = false;
+        appliedSequence.set(0);
+        LOGGER.warn("Availability delta subscription lost, availability will be reloaded from the database until resubscribed");
+        resubscribeLater();
+    }
+
+    private void resubscribeLater() {
+        Uni.createFrom().voidItem()
+                .onItem().delayIt().by(Duration.ofMillis(config.reconnectDelayMillis()))
+                .subscribe().with(ignored -> subscribe());
+    }
+
+    void receive(byte[] payload) {
+        if (AvailabilityDeltaMessage.isImport(payload)) {
+            LOGGER.debug("Received import announcement");
+            importListener.run();
+            return;
+        }
+        var message = AvailabilityDeltaMessage.decode(payload).orElse(null);
+        if (message == null) {
+            LOGGER.warn("Ignoring unreadable availability delta of {} bytes", payload.length);
+            appliedSequence.set(0);
+            return;
+        }
+        var sequence = message.getSequence();
+        var applied = appliedSequence.get();
+        if (sequence <= applied) {
+            return; // Published by this instance, or already covered by a reload
+        }
+        // Newer values are applied even after a gap, the gap only keeps this instance marked as behind
+        var changes = carParkIndexService.publishAvailability(message.getChanges(), message.getLastUpdated());
+        availabilityStreamService.publish(changes);
+        if (appliedSequence.compareAndSet(sequence - 1, sequence)) {
+            LOGGER.debug("Applied availability delta {}: {} car parks", sequence, changes.size());
+        } else {
+            LOGGER.debug("Applied availability delta {} after a gap from {}, next cycle reloads from the database", sequence, applied);
+        }
+    }
+
+    /**
+     * <p>Publishes the changes of a refresh this instance ran and persisted</p>
+     * <p>Best effort: when Redis fails, the other instances find the sequence unchanged or skipped, and reload from the
+     * database.</p>
+     */
+    public Uni<Void> publish(CarParkLotSnapshot changes, long lastUpdated) {
+        if (!config.enabled() || changes.size() == 0) {
+            return Uni.createFrom().voidItem();
+        }
+        return redisService.incrementAvailabilityDeltaSequence()
+                .flatMap(sequence -> {
+                    // The refresh started from a current table, so this instance is current up to its own delta
+                    appliedSequence.accumulateAndGet(sequence, Math::max);
+                    return redisService.publishAvailabilityDelta(new AvailabilityDeltaMessage(sequence, lastUpdated, changes).encode())
+                            .invoke(receivers -> LOGGER.debug("Published availability delta {} to {} instances", sequence, receivers));
+                })
+                .onFailure().invoke(e -> LOGGER.warn("Failed to publish availability delta, other instances will reload from the database: {}", e.getMessage()))
+                .onFailure().recoverWithNull()
+                .replaceWithVoid();
+    }
+
+    /**
+     * <p>Announces an import this instance ran and committed, also received by this instance</p>
+     * <p>Best effort: when Redis fails, the other instances find the static data changed on their next cycle.</p>
+     */
+    public Uni<Void> publishImport() {
+        if (!config.enabled()) {
+            return Uni.createFrom().voidItem();
+        }
+        return redisService.publishAvailabilityDelta(AvailabilityDeltaMessage.encodeImport())
+                .invoke(receivers -> LOGGER.debug("Announced import to {} instances", receivers))
+                .onFailure().invoke(e -> LOGGER.warn("Failed to announce import, other instances will rebuild on their next cycle: {}", e.getMessage()))
+                .onFailure().recoverWithNull()
+                .replaceWithVoid();
+    }
+
+    /**
+     * Runs the listener on the Redis subscriber thread whenever an import is announced. It must not block.
+     */
+    public void onImport(Runnable listener) {
+        importListener = listener;
+    }
+
+    /**
+     * <p>Brings the availability table up to date with the database</p>
+     * <p>Skips the database read while this instance is subscribed and has applied every delta published so far.
+     * Otherwise reloads availability and pushes what changed to stream subscribers.</p>
+     *
+     * @return true if availability was reloaded from the database
+     */
+    public Uni<Boolean> catchUp() {
+        return latestSequence().flatMap(sequence -> {
+            if (sequence > 0 && subscribed && appliedSequence.get() == sequence) {
+                return Uni.createFrom().item(false);
+            }
+            return carParkIndexService.reloadAvailability()
+                    .invoke(availabilityStreamService::publish)
+                    .invoke(() -> {
+                        // Deltas up to the sequence read before the reload are persisted, so they are in what was read
+                        if (sequence > 0) {
+                            appliedSequence.accumulateAndGet(sequence, Math::max);
+                        }
+                    })
+                    .replaceWith(true);
+        });
+    }
+
+    /**
+     * Continues from the sequence a restored availability table was saved at.
+     *
+     * @return true if no delta was published since, so the table is current
+     */
+    public Uni<Boolean> resumeFrom(long sequence) {
+        return latestSequence().map(latest -> {
+            if (sequence > 0 && latest == sequence) {
+                appliedSequence.accumulateAndGet(sequence, Math::max);
+                return true;
+            }
+            return false;
+        });
+    }
+
+    /**
+     * Last sequence up to which every delta is in the table, 0 when unknown. Read it before copying the table, so a
+     * copy is never labelled with a delta it does not hold.
+     */
+    public long appliedSequence() {
+        return appliedSequence.get();
+    }
+
+    /**
+     * Marks this instance as behind, after its table got ahead of or apart from the database, e.g. when persisting a
+     * refresh failed
+     */
+    public void invalidate() {
+        appliedSequence.set(0);
+    }
+
+    private Uni<Long> latestSequence() {
+        if (!config.enabled()) {
+            return Uni.createFrom().item(0L);
+        }
+        return redisService.getAvailabilityDeltaSequence()
+                .onFailure().invoke(e -> LOGGER.warn("Failed to read availability delta sequence: {}", e.getMessage()))
+                .onFailure().recoverWithItem(0L);
+    }
+}
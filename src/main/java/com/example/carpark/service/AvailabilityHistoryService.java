@@ -0,0 +1,154 @@
+package com.example.carpark.service;
+
+import com.example.carpark.config.CarParkConfig;
+import com.example.carpark.model.AvailabilityHistoryPoint;
+import com.example.carpark.model.CarParkLotSnapshot;
+import com.example.carpark.repository.AvailabilityHistoryRepository;
+import io.quarkus.runtime.StartupEvent;
+import io.quarkus.scheduler.Scheduled;
+import io.quarkus.vertx.VertxContextSupport;
+import io.smallrye.mutiny.Multi;
+import io.smallrye.mutiny.Uni;
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.enterprise.event.Observes;
+import jakarta.inject.Inject;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.time.Duration;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * <p>Keeps the availability history: appends each refresh's changes, maintains the daily partitions and answers
+ * series queries</p>
+ * <p>Only changes are stored, so a series carries each value forward until the next change. Partitions are created a
+ * few days ahead. Past raw retention they are downsampled to hourly rows and dropped, which is a metadata operation
+ * instead of a large DELETE.</p>
+ */
+@ApplicationScoped
+public class AvailabilityHistoryService {
+    private static final Logger LOGGER = LoggerFactory.getLogger(AvailabilityHistoryService.class);
+
+    private static final int PARTITIONS_AHEAD_DAYS = 3;
+
+    private final CarParkConfig.History config;
+    private final AvailabilityHistoryRepository availabilityHistoryRepository;
+
+    @Inject
+    public AvailabilityHistoryService(CarParkConfig carParkConfig, AvailabilityHistoryRepository availabilityHistoryRepository) {
+        this.config = carParkConfig.history();
+        this.availabilityHistoryRepository = availabilityHistoryRepository;
+    }
+
+    void onStart(@Observes StartupEvent event) {
+        if (!config.enabled()) {
+            return;
+        }
+        try {
+            VertxContextSupport.subscribeAndAwait(this::maintainPartitions);
+        } catch (Throwable e) {
+            LOGGER.warn("Failed to prepare availability history partitions, changes go to the default partition: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * Appends the changes of one refresh. History is best effort, a failure is logged and never fails the refresh.
+     *
+     * @return number of rows appended
+     */
+    public Uni<Integer> record(CarParkLotSnapshot changes, LocalDateTime recordedAt) {
+        if (!config.enabled() || changes.size() == 0) {
+            return Uni.createFrom().item(0);
+        }
+        return availabilityHistoryRepository.append(changes, recordedAt)
+                .onFailure().recoverWithItem(e -> {
+                    LOGGER.warn("Failed to append availability history: {}", e.getMessage());
+                    return 0;
+                });
+    }
+
+    /**
+     * Creates the partitions of the next days, then downsamples and drops partitions past raw retention and expires
+     * hourly rows. Every step is idempotent, instances that run it concurrently skip what another one holds.
+     */
+    @Scheduled(cron = "0 5 0 * * ?")
+    public Uni<Void> maintainPartitions() {
+        if (!config.enabled()) {
+            return Uni.createFrom().voidItem();
+        }
+        var today = LocalDate.now();
+        var rawCutoff = today.minusDays(config.rawRetentionDays());
+        var hourlyCutoff = today.minusDays(config.hourlyRetentionDays());
+        return Multi.createFrom().range(0, PARTITIONS_AHEAD_DAYS + 1)
+                .onItem().transformToUniAndConcatenate(days -> createPartition(today.plusDays(days)))
+                .collect().last()
+                .flatMap(v -> availabilityHistoryRepository.findPartitionDays())
+                .flatMap(days -> Multi.createFrom().iterable(days)
+                        .select().where(day -> day.isBefore(rawCutoff))
+                        .onItem().transformToUniAndConcatenate(day -> availabilityHistoryRepository.rollupAndDropPartition(day)
+                                .invoke(dropped -> {
+                                    if (Boolean.TRUE.equals(dropped)) {
+                                        LOGGER.info("Downsampled and dropped availability history partition of {}", day);
+                                    }
+                                }))
+                        .collect().last())
+                .flatMap(v -> availabilityHistoryRepository.rollupDefaultAndExpireHourly(rawCutoff.atStartOfDay(), hourlyCutoff.atStartOfDay()));
+    }
+
+    // A partition cannot be created over a range the default partition already holds rows for
+    private Uni<Void> createPartition(LocalDate day) {
+        return availabilityHistoryRepository.createPartition(day)
+                .onFailure().recoverWithItem(e -> {
+                    LOGGER.warn("Failed to create availability history partition of {}: {}", day, e.getMessage());
+                    return null;
+                });
+    }
+
+    /**
+     * <p>A car park's availability in buckets of {@code step} from {@code from} to {@code to}</p>
+     * <p>Buckets without changes carry the previous value over, with 0 samples. Buckets before the first known value
+     * are left out.</p>
+     */
+    public Uni<List<AvailabilityHistoryPoint>> getHistory(String carParkNo, LocalDateTime from, LocalDateTime to, Duration step) {
+        return Uni.combine().all()
+                .unis(availabilityHistoryRepository.findLastBefore(carParkNo, from),
+                        availabilityHistoryRepository.findSeries(carParkNo, from, to, step))
+                .with((lastBefore, series) -> fillGaps(lastBefore, series, from, to, step));
+    }
+
+    static List<AvailabilityHistoryPoint> fillGaps(Optional<int[]> lastBefore, List<AvailabilityHistoryPoint> series,
+                                                   LocalDateTime from, LocalDateTime to, Duration step) {
+        var points = new ArrayList<AvailabilityHistoryPoint>();
+        var previous = lastBefore
+                .map(last -> AvailabilityHistoryPoint.builder()
+                        .totalLots(last[0])
+                        .minAvailable(last[1])
+                        .maxAvailable(last[1])
+                        .avgAvailable(last[1])
+                        .lastAvailable(last[1])
+                        .build())
+                .orElse(null);
+        var next = 0;
+        for (var bucket = from; bucket.isBefore(to); bucket = bucket.plus(step)) {
+            if (next < series.size() && !series.get(next).getTime().isAfter(bucket)) {
+                previous = series.get(next++);
+                points.add(previous.toBuilder().time(bucket).build());
+            } else if (previous != null) {
+                points.add(AvailabilityHistoryPoint.builder()
+                        .time(bucket)
+                        .totalLots(previous.getTotalLots())
+                        .minAvailable(previous.getLastAvailable())
+                        .maxAvailable(previous.getLastAvailable())
+                        .avgAvailable(previous.getLastAvailable())
+                        .lastAvailable(previous.getLastAvailable())
+                        .samples(0)
+                        .build());
+            }
+        }
+        return points;
+    }
+}
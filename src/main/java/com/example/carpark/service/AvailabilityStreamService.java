@@ -0,0 +1,68 @@
+package com.example.carpark.service;
+
+import com.example.carpark.model.AvailabilityDelta;
+import com.example.carpark.model.CarParkLotSnapshot;
+import io.smallrye.mutiny.Multi;
+import io.smallrye.mutiny.infrastructure.Infrastructure;
+import io.smallrye.mutiny.operators.multi.processors.BroadcastProcessor;
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.inject.Inject;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Predicate;
+
+/**
+ * <p>Fans the availability changes of each refresh out to stream subscribers</p>
+ * <p>Publishing only queues the changes for each subscriber, filtering and writing happen on worker threads, so neither
+ * the scheduler nor an event loop waits on subscribers. Each subscriber filters the changes of a refresh down to its own
+ * car parks and only receives non-empty batches. A subscriber that falls more than a few refreshes behind has its
+ * stream ended instead of holding the others up, and re-subscribes.</p>
+ */
+@ApplicationScoped
+public class AvailabilityStreamService {
+    private static final Logger LOGGER = LoggerFactory.getLogger(AvailabilityStreamService.class);
+
+    private static final int SUBSCRIBER_BUFFER = 16;
+    private static final Duration KEEP_ALIVE_INTERVAL = Duration.ofSeconds(30);
+
+    private final CarParkIndexService carParkIndexService;
+    private final BroadcastProcessor<List<AvailabilityDelta>> processor = BroadcastProcessor.create();
+    private final AtomicInteger subscribers = new AtomicInteger();
+
+    @Inject
+    public AvailabilityStreamService(CarParkIndexService carParkIndexService) {
+        this.carParkIndexService = carParkIndexService;
+    }
+
+    /**
+     * Publishes the changes of one refresh to current subscribers, in order and without waiting for them
+     */
+    public synchronized void publish(CarParkLotSnapshot changes) {
+        if (changes.size() == 0 || subscribers.get() == 0) {
+            return;
+        }
+        processor.onNext(carParkIndexService.toDeltas(changes));
+    }
+
+    /**
+     * <p>Changes of the car parks matching the filter, one list per refresh that changed any of them</p>
+     * <p>An empty list is sent every 30 seconds as keep-alive, so idle connections are not closed by proxies.</p>
+     */
+    public Multi<List<AvailabilityDelta>> subscribe(Predicate<AvailabilityDelta> filter) {
+        var matching = processor
+                .onOverflow().buffer(SUBSCRIBER_BUFFER)
+                .emitOn(Infrastructure.getDefaultWorkerPool())
+                .map(deltas -> deltas.stream().filter(filter).toList())
+                .select().where(deltas -> !deltas.isEmpty());
+        var keepAlive = Multi.createFrom().ticks().startingAfter(KEEP_ALIVE_INTERVAL).every(KEEP_ALIVE_INTERVAL)
+                .onOverflow().drop()
+                .map(tick -> List.<AvailabilityDelta>of());
+        return Multi.createBy().merging().streams(matching, keepAlive)
+                .onSubscription().invoke(() -> LOGGER.debug("Availability stream subscribed, {} subscribers", subscribers.incrementAndGet()))
+                .onTermination().invoke(() -> LOGGER.debug("Availability stream ended, {} subscribers", subscribers.decrementAndGet()));
+    }
+}
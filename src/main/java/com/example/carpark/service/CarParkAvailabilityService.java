@@ -2,15 +2,18 @@ package com.example.carpark.service;
 
 import com.example.carpark.config.CarParkConfig;
 import com.example.carpark.exception.CarParkException;
-import com.example.carpark.model.CarParkAvailability;
-import com.example.carpark.model.CarParkLotInfo;
+import com.example.carpark.metrics.CarParkMetrics;
+import com.example.carpark.metrics.RefreshStage;
+import com.example.carpark.model.CarParkLotSnapshot;
 import com.example.carpark.repository.CarParkRepository;
 import com.fasterxml.jackson.annotation.JsonInclude;
-import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.DeserializationFeature;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import io.smallrye.mutiny.Uni;
 import io.vertx.mutiny.core.Vertx;
+import io.vertx.mutiny.core.buffer.Buffer;
+import io.vertx.ext.web.client.WebClientOptions;
+import io.vertx.mutiny.ext.web.client.HttpResponse;
 import io.vertx.mutiny.ext.web.client.WebClient;
 import jakarta.enterprise.context.ApplicationScoped;
 import jakarta.inject.Inject;
@@ -20,8 +23,10 @@ import org.slf4j.LoggerFactory;
 import java.net.HttpURLConnection;
 import java.sql.Timestamp;
 import java.time.Duration;
-import java.util.Map;
-import java.util.stream.Collectors;
+import java.time.LocalDateTime;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+import java.util.zip.CRC32C;
 
 @ApplicationScoped
 public class CarParkAvailabilityService {
@@ -29,62 +34,184 @@ public class CarParkAvailabilityService {
 
     private final CarParkConfig carParkConfig;
     private final CarParkRepository carParkRepository;
+    private final CarParkIndexService carParkIndexService;
+    private final AvailabilityHistoryService availabilityHistoryService;
+    private final AvailabilityStreamService availabilityStreamService;
+    private final AvailabilityFanOutService availabilityFanOutService;
+    private final CarParkMetrics carParkMetrics;
     private final ObjectMapper objectMapper;
     private final WebClient webClient;
 
+    private volatile UpstreamVersion upstreamVersion;
+
     @Inject
     public CarParkAvailabilityService(CarParkConfig carParkConfig, CarParkRepository carParkRepository,
-                                      ObjectMapper objectMapper, Vertx vertx) {
+                                      CarParkIndexService carParkIndexService, AvailabilityHistoryService availabilityHistoryService,
+                                      AvailabilityStreamService availabilityStreamService, AvailabilityFanOutService availabilityFanOutService,
+                                      CarParkMetrics carParkMetrics, ObjectMapper objectMapper, Vertx vertx) {
         this.carParkConfig = carParkConfig;
         this.carParkRepository = carParkRepository;
+        this.carParkIndexService = carParkIndexService;
+        this.availabilityHistoryService = availabilityHistoryService;
+        this.availabilityStreamService = availabilityStreamService;
+        this.availabilityFanOutService = availabilityFanOutService;
+        this.carParkMetrics = carParkMetrics;
         this.objectMapper = objectMapper;
         this.objectMapper.setSerializationInclusion(JsonInclude.Include.NON_NULL);
         this.objectMapper.configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
-        this.webClient = WebClient.create(vertx);
+        this.webClient = WebClient.create(vertx, new WebClientOptions().setDecompressionSupported(true)); // Accept-Encoding: gzip, deflate
     }
 
+    /**
+     * <p>Fetch availability, publish what changed to the in-process availability table, then write it behind to the
+     * database</p>
+     * <p>The fetch is conditional on the upstream version last applied. When the upstream answers 304, or the body hashes
+     * the same, or its {@code timestamp} did not advance, the cycle stops before parsing or touching the database.</p>
+     * <p>Otherwise the table is brought up to date with the database first, so the diff is taken against what is actually
+     * stored even if another instance ran the previous update. Readers switch to the new values as soon as they are
+     * published, they never wait for the database write, and stream subscribers get the changes at the same time. Once
+     * persisted, the changes are fanned out to the other instances. Each stage is timed in {@link CarParkMetrics}, and
+     * the cycle ends with one summary log event. Per car park detail is logged at DEBUG only.</p>
+     */
     public Uni<Void> updateAvailability() {
-        return fetchCarParkAvailability()
-                .map(this::parseAvailability)
-                .flatMap(data ->
-                        carParkRepository.findByCarParkNos(data.keySet())
-                                .flatMap(carParks -> {
-                                    carParks.forEach(carPark -> {
-                                        var carParkLotInfo = data.get(carPark.carParkNo);
-                                        LOGGER.info("Updating availability for car park: {} - available lots: {}", carPark.carParkNo, carParkLotInfo.getAvailableLots());
-                                        carPark.totalLots = carParkLotInfo.getTotalLots();
-                                        carPark.availableLots = carParkLotInfo.getAvailableLots();
-                                        carPark.lastUpdated = new Timestamp(System.currentTimeMillis());
-                                    });
-                                    return carParkRepository.persist(carParks); // Batch persist
-                                })
-                );
+        return Uni.createFrom().deferred(() -> {
+            var run = new RefreshRun();
+            var applied = upstreamVersion;
+            return run.timed(RefreshStage.FETCH, () -> fetchCarParkAvailability(run.fetchAttempts, applied))
+                    .flatMap(response -> {
+                        if (response.statusCode() == HttpURLConnection.HTTP_NOT_MODIFIED) {
+                            return skip(run, "not_modified");
+                        }
+                        var body = response.bodyAsBuffer().getBytes(); // The only copy of the payload this cycle
+                        var hash = hash(body);
+                        if (applied != null && applied.hash() == hash) {
+                            return skip(run, "same_hash");
+                        }
+                        var parseStarted = System.nanoTime();
+                        var snapshot = parseAvailability(body);
+                        run.record(RefreshStage.PARSE, parseStarted);
+                        if (applied != null && snapshot.getTimestamp() != null && snapshot.getTimestamp().equals(applied.timestamp())) {
+                            return skip(run, "same_timestamp");
+                        }
+                        var version = new UpstreamVersion(response.getHeader("ETag"), response.getHeader("Last-Modified"), hash, snapshot.getTimestamp());
+                        return run.timed(RefreshStage.DB_LOAD, availabilityFanOutService::catchUp)
+                                .flatMap(v -> publishAndPersist(run, snapshot))
+                                .invoke(() -> upstreamVersion = version);
+                    });
+        });
     }
 
-    private Uni<CarParkAvailability> fetchCarParkAvailability() {
-        return webClient.getAbs(carParkConfig.availabilityApi())
-                .timeout(60000) // 60s
-                .send()
-                .map(response -> {
-                    if (response.statusCode() != HttpURLConnection.HTTP_OK) {
+    private Uni<Void> publishAndPersist(RefreshRun run, CarParkLotSnapshot snapshot) {
+        var diffStarted = System.nanoTime();
+        var lastUpdated = LocalDateTime.now();
+        var lastUpdatedMillis = Timestamp.valueOf(lastUpdated).getTime();
+        var changes = carParkIndexService.publishAvailability(snapshot, lastUpdatedMillis);
+        var unchanged = snapshot.size() - changes.size();
+        run.record(RefreshStage.DIFF, diffStarted);
+        availabilityStreamService.publish(changes);
+        if (LOGGER.isDebugEnabled()) {
+            for (var slot = 0; slot < changes.size(); slot++) {
+                LOGGER.debug("Availability changed for car park {}: {} of {} lots available",
+                        changes.carParkNo(slot), changes.availableLots(slot), changes.totalLots(slot));
+            }
+        }
+        return run.timed(RefreshStage.PERSIST, () -> carParkRepository.updateAvailability(changes, lastUpdated))
+                .onFailure().invoke(availabilityFanOutService::invalidate) // The table is ahead of the database
+                .call(updated -> run.timed(RefreshStage.HISTORY, () -> availabilityHistoryService.record(changes, lastUpdated)))
+                .call(updated -> run.timed(RefreshStage.FAN_OUT, () -> availabilityFanOutService.publish(changes, lastUpdatedMillis)))
+                .invoke(updated -> {
+                    var duration = Duration.ofNanos(System.nanoTime() - run.started);
+                    carParkMetrics.recordAvailabilityRun(changes.size(), unchanged, updated, duration);
+                    LOGGER.info("event=availability_refresh changed={} unchanged={} updated={} fetch_retries={} "
+                                    + "fetch_ms={} parse_ms={} db_load_ms={} diff_ms={} persist_ms={} history_ms={} fan_out_ms={} total_ms={}",
+                            changes.size(), unchanged, updated, run.fetchAttempts.get() - 1,
+                            run.millis(RefreshStage.FETCH), run.millis(RefreshStage.PARSE), run.millis(RefreshStage.DB_LOAD),
+                            run.millis(RefreshStage.DIFF), run.millis(RefreshStage.PERSIST), run.millis(RefreshStage.HISTORY),
+                            run.millis(RefreshStage.FAN_OUT), duration.toMillis());
+                })
+                .replaceWithVoid();
+    }
+
+    private Uni<Void> skip(RefreshRun run, String reason) {
+        var duration = Duration.ofNanos(System.nanoTime() - run.started);
+        carParkMetrics.recordSkippedRefresh(reason, duration);
+        LOGGER.info("event=availability_refresh skipped={} fetch_retries={} fetch_ms={} parse_ms={} total_ms={}",
+                reason, run.fetchAttempts.get() - 1, run.millis(RefreshStage.FETCH), run.millis(RefreshStage.PARSE), duration.toMillis());
+        return Uni.createFrom().voidItem();
+    }
+
+    /**
+     * Forgets the upstream version last applied, so the next cycle processes the feed in full, e.g. after an import
+     * added car parks that the unchanged feed already covers.
+     */
+    public void forgetUpstreamVersion() {
+        upstreamVersion = null;
+    }
+
+    private Uni<HttpResponse<Buffer>> fetchCarParkAvailability(AtomicInteger attempts, UpstreamVersion applied) {
+        var request = webClient.getAbs(carParkConfig.availabilityApi())
+                .timeout(60000); // 60s
+        if (applied != null && applied.etag() != null) {
+            request.putHeader("If-None-Match", applied.etag());
+        }
+        if (applied != null && applied.lastModified() != null) {
+            request.putHeader("If-Modified-Since", applied.lastModified());
+        }
+        return request.send()
+                .onSubscription().invoke(attempts::incrementAndGet)
+                .invoke(response -> {
+                    if (response.statusCode() != HttpURLConnection.HTTP_OK && response.statusCode() != HttpURLConnection.HTTP_NOT_MODIFIED) {
                         throw new CarParkException("Failed to fetch availability data: " + response.statusCode());
                     }
-                    try {
-                        return objectMapper.readValue(response.bodyAsString(), CarParkAvailability.class);
-                    } catch (JsonProcessingException e) {
-                        throw new CarParkException("Failed to parse JSON response", e);
-                    }
                 })
-                .invoke(() -> LOGGER.info("Fetched availability data successfully"))
-                .onFailure().retry().withBackOff(Duration.ofMillis(100), Duration.ofMillis(1000)).atMost(3);
+                .onFailure().invoke(e -> LOGGER.debug("Availability fetch attempt {} failed: {}", attempts.get(), e.getMessage()))
+                .onFailure().retry().withBackOff(Duration.ofMillis(100), Duration.ofMillis(1000)).atMost(3)
+                .onTermination().invoke(() -> carParkMetrics.recordFetchRetries(attempts.get() - 1));
+    }
+
+    // CRC32C is hardware accelerated, the length in the high bits makes a collision between versions even less likely
+    static long hash(byte[] body) {
+        var crc = new CRC32C();
+        crc.update(body);
+        return ((long) body.length << 32) | crc.getValue();
+    }
+
+    /**
+     * Upstream version of the feed last applied to the database: validators for conditional requests, hash of the body
+     * and the feed's own {@code timestamp}
+     */
+    private record UpstreamVersion(String etag, String lastModified, long hash, String timestamp) {
+    }
+
+    /**
+     * Stage timings of one refresh cycle, recorded to the metrics and kept for the cycle's summary event
+     */
+    private final class RefreshRun {
+        private final long started = System.nanoTime();
+        private final long[] stageNanos = new long[RefreshStage.values().length];
+        private final AtomicInteger fetchAttempts = new AtomicInteger();
+
+        <T> Uni<T> timed(RefreshStage stage, Supplier<Uni<T>> work) {
+            return Uni.createFrom().deferred(() -> {
+                var stageStarted = System.nanoTime();
+                return work.get().onTermination().invoke(() -> record(stage, stageStarted));
+            });
+        }
+
+        void record(RefreshStage stage, long stageStarted) {
+            stageNanos[stage.ordinal()] = System.nanoTime() - stageStarted;
+            carParkMetrics.recordRefreshStage(stage, Duration.ofNanos(stageNanos[stage.ordinal()]));
+        }
+
+        long millis(RefreshStage stage) {
+            return stageNanos[stage.ordinal()] / 1_000_000;
+        }
     }
 
-    Map<String, CarParkLotInfo> parseAvailability(CarParkAvailability carParkAvailability) {
-        return carParkAvailability.getItems().getFirst().getCarParkData().parallelStream()
-                .collect(Collectors.toMap(
-                        CarParkAvailability.CarParkData::getCarParkNumber,
-                        CarParkLotInfo::fromCarParkData,
-                        CarParkLotInfo::merge
-                ));
+    /**
+     * Streams the response body straight into the snapshot, without copying it into a String or an object tree
+     */
+    CarParkLotSnapshot parseAvailability(byte[] body) {
+        return CarParkLotSnapshot.fromJson(objectMapper.getFactory(), body);
     }
 }
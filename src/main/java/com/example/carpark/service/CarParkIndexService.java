@@ -0,0 +1,293 @@
+package com.example.carpark.service;
+
+import com.example.carpark.entity.CarPark;
+import com.example.carpark.index.CarParkAvailabilityTable;
+import com.example.carpark.index.CarParkJsonFragments;
+import com.example.carpark.index.CarParkSpatialIndex;
+import com.example.carpark.model.AvailabilityDelta;
+import com.example.carpark.model.BoundingBox;
+import com.example.carpark.model.CarParkTile;
+import com.example.carpark.model.CarParkLotSnapshot;
+import com.example.carpark.model.NearestCarPark;
+import com.example.carpark.model.NearestCarParkQuery;
+import com.example.carpark.model.NearestCursor;
+import com.example.carpark.repository.CarParkRepository;
+import io.quarkus.hibernate.reactive.panache.Panache;
+import io.smallrye.mutiny.Uni;
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.inject.Inject;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.IntPredicate;
+
+/**
+ * <p>Holds the in-process {@link CarParkSpatialIndex} and {@link CarParkAvailabilityTable} used to answer nearest
+ * queries without a database round trip</p>
+ * <p>The index is built at startup by {@link CarParkSnapshotService}, and rebuilt after each CSV import. Availability is published
+ * into the table in place by the scheduler. Until the first build succeeds, {@link #isReady()} is false and callers
+ * should fall back to PostGIS.</p>
+ */
+@ApplicationScoped
+public class CarParkIndexService {
+    private static final Logger LOGGER = LoggerFactory.getLogger(CarParkIndexService.class);
+
+    private final CarParkRepository carParkRepository;
+
+    private volatile State state;
+    private volatile long newestLastUpdated;
+
+    @Inject
+    public CarParkIndexService(CarParkRepository carParkRepository) {
+        this.carParkRepository = carParkRepository;
+    }
+
+    /**
+     * Rebuilds the index and availability table from the current content of {@code car_parks}, joining the caller's
+     * session if there is one.
+     */
+    public Uni<Void> reload() {
+        return Panache.withSession(carParkRepository::listAll)
+                .invoke(this::rebuild)
+                .replaceWithVoid();
+    }
+
+    /**
+     * Refreshes only the availability table from {@code car_parks}, so it matches what the database holds.
+     *
+     * @return the indexed car parks whose lots differ from what the table held, empty after a full build
+     */
+    public Uni<CarParkLotSnapshot> reloadAvailability() {
+        if (state == null) {
+            return reload().replaceWith(CarParkLotSnapshot::new);
+        }
+        return carParkRepository.findAllAvailability()
+                .map(carParks -> {
+                    var current = state;
+                    var changes = diff(current, carParks);
+                    publish(current, carParks);
+                    return changes;
+                });
+    }
+
+    private static CarParkLotSnapshot diff(State state, List<CarPark> carParks) {
+        var changes = new CarParkLotSnapshot();
+        var table = state.table();
+        for (var carPark : carParks) {
+            var id = state.index().idOf(carPark.carParkNo);
+            if (id >= 0 && (table.totalLots(id) != carPark.totalLots || table.availableLots(id) != carPark.availableLots)) {
+                changes.add(carPark.carParkNo, carPark.totalLots, carPark.availableLots);
+            }
+        }
+        return changes;
+    }
+
+    /**
+     * Locates changed car parks in the index, for subscribers that filter by area. Car parks that are not indexed are
+     * left out.
+     */
+    public List<AvailabilityDelta> toDeltas(CarParkLotSnapshot changes) {
+        var current = state;
+        if (current == null) {
+            return List.of();
+        }
+        var index = current.index();
+        var deltas = new ArrayList<AvailabilityDelta>(changes.size());
+        for (var slot = 0; slot < changes.size(); slot++) {
+            var id = index.idOf(changes.carParkNo(slot));
+            if (id >= 0) {
+                deltas.add(new AvailabilityDelta(changes.carParkNo(slot), index.latitude(id), index.longitude(id),
+                        changes.totalLots(slot), changes.availableLots(slot)));
+            }
+        }
+        return deltas;
+    }
+
+    /**
+     * Copies static data and availability of every indexed car park, as of one consistent read of the table
+     */
+    public List<CarPark> toCarParks() {
+        var current = state;
+        if (current == null) {
+            return List.of();
+        }
+        var index = current.index();
+        return current.table().read(table -> {
+            var carParks = new ArrayList<CarPark>(index.size());
+            for (var id = 0; id < index.size(); id++) {
+                carParks.add(toCarPark(index, table, id));
+            }
+            return carParks;
+        });
+    }
+
+    void rebuild(List<CarPark> carParks) {
+        var index = CarParkSpatialIndex.build(carParks);
+        var rebuilt = new State(index, new CarParkAvailabilityTable(index.size()));
+        publish(rebuilt, carParks);
+        state = rebuilt;
+        LOGGER.info("Car park index built with {} car parks", index.size());
+    }
+
+    private void publish(State state, List<CarPark> carParks) {
+        var ids = new int[carParks.size()];
+        var totalLots = new int[carParks.size()];
+        var availableLots = new int[carParks.size()];
+        var lastUpdated = new long[carParks.size()];
+        var count = 0;
+        var newest = 0L;
+        for (var carPark : carParks) {
+            var id = state.index().idOf(carPark.carParkNo);
+            if (id >= 0) {
+                ids[count] = id;
+                totalLots[count] = carPark.totalLots;
+                availableLots[count] = carPark.availableLots;
+                lastUpdated[count] = carPark.lastUpdated != null ? carPark.lastUpdated.getTime() : 0L;
+                newest = Math.max(newest, lastUpdated[count]);
+                count++;
+            }
+        }
+        state.table().publish(count, ids, totalLots, availableLots, lastUpdated);
+        newestLastUpdated = newest;
+    }
+
+    /**
+     * <p>Diffs freshly fetched availability against the table and publishes the car parks whose lots changed</p>
+     * <p>Readers switch to the new values atomically. Car parks that are not indexed yet always count as changed.</p>
+     *
+     * @return the changed car parks only
+     */
+    public CarParkLotSnapshot publishAvailability(CarParkLotSnapshot snapshot, long timestamp) {
+        var current = state;
+        if (current == null) {
+            return snapshot;
+        }
+        var table = current.table();
+        var changes = new CarParkLotSnapshot();
+        var ids = new int[snapshot.size()];
+        var totalLots = new int[snapshot.size()];
+        var availableLots = new int[snapshot.size()];
+        var lastUpdated = new long[snapshot.size()];
+        var count = 0;
+        for (var slot = 0; slot < snapshot.size(); slot++) {
+            var id = current.index().idOf(snapshot.carParkNo(slot));
+            if (id >= 0 && table.totalLots(id) == snapshot.totalLots(slot) && table.availableLots(id) == snapshot.availableLots(slot)) {
+                continue;
+            }
+            changes.add(snapshot.carParkNo(slot), snapshot.totalLots(slot), snapshot.availableLots(slot));
+            if (id >= 0) {
+                ids[count] = id;
+                totalLots[count] = snapshot.totalLots(slot);
+                availableLots[count] = snapshot.availableLots(slot);
+                lastUpdated[count] = timestamp;
+                count++;
+            }
+        }
+        table.publish(count, ids, totalLots, availableLots, lastUpdated);
+        if (count > 0) {
+            newestLastUpdated = Math.max(newestLastUpdated, timestamp);
+        }
+        return changes;
+    }
+
+    /**
+     * Newest {@code last_updated} in the availability table, in epoch milliseconds, 0 before the first build
+     */
+    public long newestLastUpdated() {
+        return newestLastUpdated;
+    }
+
+    public boolean isReady() {
+        return state != null;
+    }
+
+    /**
+     * Same result as {@link CarParkRepository#findNearestWithAvailability(NearestCarParkQuery)}, answered from memory.
+     */
+    public List<NearestCarPark> findNearestWithAvailability(NearestCarParkQuery query) {
+        var current = state;
+        return current.table().read(table -> findNearest(current.index(), table, query));
+    }
+
+    /**
+     * <p>Answers many nearest queries against the same index, one after the other on the calling thread</p>
+     * <p>Each query reads the availability table on its own, so a concurrent publish retries only the query it
+     * overlapped rather than the whole batch. Callers bound the batch size.</p>
+     *
+     * @return one list per query, in query order
+     */
+    public List<List<NearestCarPark>> findNearestWithAvailabilityBatch(List<NearestCarParkQuery> queries) {
+        var current = state;
+        var index = current.index();
+        var results = new ArrayList<List<NearestCarPark>>(queries.size());
+        for (var query : queries) {
+            results.add(current.table().read(table -> findNearest(index, table, query)));
+        }
+        return results;
+    }
+
+    private static List<NearestCarPark> findNearest(CarParkSpatialIndex index, CarParkAvailabilityTable table, NearestCarParkQuery query) {
+        var latitude = query.getLatitude();
+        var longitude = query.getLongitude();
+        var after = query.getAfter();
+        var radiusMeters = query.getRadiusMeters() != null ? query.getRadiusMeters() : Double.POSITIVE_INFINITY;
+        var minAvailable = query.getMinAvailable();
+        IntPredicate available = id -> table.availableLots(id) >= minAvailable;
+        var ids = after != null
+                ? index.nearest(latitude, longitude, query.getLimit(), 0, CarParkSpatialIndex.belowDistanceKey(after.getDistanceMeters()), radiusMeters,
+                available.and(id -> isAfter(index, id, latitude, longitude, after)))
+                : index.nearest(latitude, longitude, query.getLimit(), query.getOffset(), radiusMeters, available);
+        return Arrays.stream(ids)
+                .mapToObj(id -> new NearestCarPark(toCarPark(index, table, id), index.distanceMeters(id, latitude, longitude), index.jsonFragment(id)))
+                .toList();
+    }
+
+    /**
+     * Car parks inside the box, with their availability and entity tag from one consistent read of the table
+     *
+     * @param limit max number of car parks
+     */
+    public CarParkTile findWithin(BoundingBox box, int limit) {
+        var current = state;
+        var index = current.index();
+        var ids = index.within(box.getMinLatitude(), box.getMinLongitude(), box.getMaxLatitude(), box.getMaxLongitude(), limit);
+        return current.table().read(table -> {
+            var carParks = new ArrayList<CarPark>(ids.length);
+            var fragments = new ArrayList<byte[]>(ids.length);
+            var tag = CarParkJsonFragments.emptyTag();
+            for (var id : ids) {
+                carParks.add(toCarPark(index, table, id));
+                fragments.add(index.jsonFragment(id));
+                tag = CarParkJsonFragments.tag(tag, index.jsonFragmentHash(id), table.totalLots(id), table.availableLots(id));
+            }
+            return new CarParkTile(Long.toHexString(tag), carParks, fragments);
+        });
+    }
+
+    // Keyset order of the nearest query, (distance in millimeters, car_park_no), with the heap kept at page size. Both
+    // paths round the same way, so a cursor issued by either one continues on the other.
+    private static boolean isAfter(CarParkSpatialIndex index, int id, double latitude, double longitude, NearestCursor after) {
+        var compared = Long.compare(CarParkSpatialIndex.distanceKey(index.distanceMeters(id, latitude, longitude)),
+                CarParkSpatialIndex.distanceKey(after.getDistanceMeters()));
+        return compared > 0 || compared == 0 && index.carParkNo(id).compareTo(after.getCarParkNo()) > 0;
+    }
+
+    private static CarPark toCarPark(CarParkSpatialIndex index, CarParkAvailabilityTable table, int id) {
+        return CarPark.builder()
+                .carParkNo(index.carParkNo(id))
+                .address(index.address(id))
+                .latitude(index.latitude(id))
+                .longitude(index.longitude(id))
+                .totalLots(table.totalLots(id))
+                .availableLots(table.availableLots(id))
+                .lastUpdated(new Timestamp(table.lastUpdated(id)))
+                .build();
+    }
+
+    private record State(CarParkSpatialIndex index, CarParkAvailabilityTable table) {
+    }
+}
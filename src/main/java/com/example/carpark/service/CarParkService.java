@@ -1,72 +1,143 @@
 package com.example.carpark.service;
 
+import com.example.carpark.config.CarParkConfig;
 import com.example.carpark.entity.CarPark;
+import com.example.carpark.index.CarParkJsonFragments;
+import com.example.carpark.metrics.CarParkMetrics;
+import com.example.carpark.metrics.RefreshStage;
+import com.example.carpark.model.BoundingBox;
 import com.example.carpark.model.CarParkInformation;
+import com.example.carpark.model.CarParkTile;
+import com.example.carpark.model.CsvImportMode;
+import com.example.carpark.model.CsvImportSummary;
+import com.example.carpark.model.NearestCarPark;
+import com.example.carpark.model.NearestCarParkQuery;
 import com.example.carpark.repository.CarParkRepository;
 import com.example.carpark.util.ConverterUtil;
-import io.quarkus.hibernate.reactive.panache.common.WithTransaction;
 import io.quarkus.scheduler.Scheduled;
+import io.smallrye.mutiny.Multi;
 import io.smallrye.mutiny.Uni;
+import io.smallrye.mutiny.infrastructure.Infrastructure;
+import jakarta.annotation.PreDestroy;
 import jakarta.enterprise.context.ApplicationScoped;
 import jakarta.inject.Inject;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.nio.file.Path;
 import java.sql.Timestamp;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Comparator;
 import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 @ApplicationScoped
 public class CarParkService {
     private static final Logger LOGGER = LoggerFactory.getLogger(CarParkService.class);
 
+    private static final int IMPORT_BATCH_SIZE = 1000;
+
     private final CarParkRepository carParkRepository;
     private final ConverterUtil converterUtil;
     private final CarParkAvailabilityService carParkAvailabilityService;
     private final RedisService redisService;
+    private final CarParkIndexService carParkIndexService;
+    private final CarParkMetrics carParkMetrics;
+    private final NearestCarParkCacheService nearestCarParkCacheService;
+    private final AvailabilityFanOutService availabilityFanOutService;
+    private final CarParkSnapshotService carParkSnapshotService;
+    private final int importParallelism;
+    // Bounded and separate from the worker pool, so a large import cannot starve blocking request work
+    private final ExecutorService importExecutor;
 
     @Inject
-    public CarParkService(CarParkRepository carParkRepository, ConverterUtil converterUtil,
-                          CarParkAvailabilityService carParkAvailabilityService, RedisService redisService) {
+    public CarParkService(CarParkConfig carParkConfig, CarParkRepository carParkRepository, ConverterUtil converterUtil,
+                          CarParkAvailabilityService carParkAvailabilityService, RedisService redisService,
+                          CarParkIndexService carParkIndexService, CarParkMetrics carParkMetrics,
+                          NearestCarParkCacheService nearestCarParkCacheService, AvailabilityFanOutService availabilityFanOutService,
+                          CarParkSnapshotService carParkSnapshotService) {
         this.carParkRepository = carParkRepository;
         this.converterUtil = converterUtil;
         this.carParkAvailabilityService = carParkAvailabilityService;
         this.redisService = redisService;
+        this.carParkIndexService = carParkIndexService;
+        this.carParkMetrics = carParkMetrics;
+        this.nearestCarParkCacheService = nearestCarParkCacheService;
+        this.availabilityFanOutService = availabilityFanOutService;
+        this.carParkSnapshotService = carParkSnapshotService;
+        this.importParallelism = Math.max(1, carParkConfig.csvImport().parallelism()
+                .orElse(Runtime.getRuntime().availableProcessors() / 2));
+        this.importExecutor = Executors.newFixedThreadPool(importParallelism,
+                Thread.ofPlatform().name("car-park-import-", 0).daemon().factory());
     }
 
-    public Uni<Void> ingestCarParkInfos(List<CarParkInformation> carParkInfos) {
-        return filterNonExistingCarParks(carParkInfos)
-                .flatMap(this::saveCarParksInBatch);
+    @PreDestroy
+    void close() {
+        importExecutor.shutdownNow();
     }
 
-    private Uni<List<CarParkInformation>> filterNonExistingCarParks(List<CarParkInformation> carParkInfos) {
-        if (carParkInfos.isEmpty()) {
-            return Uni.createFrom().item(List.of());
-        }
-
-        return carParkRepository.findByCarParkNos(carParkInfos.stream().map(CarParkInformation::getCarParkNo).toList())
-                .map(carParks -> carParks.stream().map(carPark -> carPark.carParkNo).toList())
-                .map(existingNos -> carParkInfos.stream().filter(cp -> !existingNos.contains(cp.getCarParkNo())).toList());
+    /**
+     * <p>Streams the CSV file into {@code car_parks} in batches</p>
+     * <p>Rows are read on a worker thread and projected on the import pool, one batch per import thread in parallel,
+     * then loaded in file order with a multi-row INSERT per batch. Memory stays flat regardless of file size and the
+     * event loop only sees the finished batches. The {@link CsvImportMode} decides whether car parks that already exist
+     * are skipped or get their address and coordinates refreshed.</p>
+     */
+    public Uni<CsvImportSummary> importCsvFile(Path csvFile, CsvImportMode mode) {
+        var started = System.nanoTime();
+        var batches = CarParkInformation.fromCsvFile(csvFile)
+                .runSubscriptionOn(Infrastructure.getDefaultWorkerPool()) // Blocking file reads and parsing
+                .group().intoLists().of(IMPORT_BATCH_SIZE * importParallelism)
+                .onItem().transformToMultiAndConcatenate(this::toCarParkBatches);
+        return carParkRepository.importCarParks(batches, mode)
+                .invoke(summary -> {
+                    var duration = Duration.ofNanos(System.nanoTime() - started);
+                    summary.setDurationMillis(duration.toMillis());
+                    carParkMetrics.recordImport(summary.getInserted() + summary.getUpdated(), duration);
+                    LOGGER.info("Imported car parks in {} mode in {} ms: {} inserted, {} updated, {} unchanged",
+                            mode.getValue(), duration.toMillis(), summary.getInserted(), summary.getUpdated(), summary.getUnchanged());
+                })
+                .call(carParkSnapshotService::reload)
+                .invoke(carParkAvailabilityService::forgetUpstreamVersion) // New car parks need the next feed in full
+                .call(nearestCarParkCacheService::publishVersion)
+                .call(availabilityFanOutService::publishImport);
     }
 
-    private Uni<Void> saveCarParksInBatch(List<CarParkInformation> carParkInfos) {
-        if (carParkInfos.isEmpty()) {
-            return Uni.createFrom().voidItem();
+    // Converts a group of rows as parallel batches, joined in order so a repeated car park number keeps its last row
+    private Multi<List<CarPark>> toCarParkBatches(List<CarParkInformation> carParkInfos) {
+        var batches = new ArrayList<Uni<List<CarPark>>>();
+        for (var from = 0; from < carParkInfos.size(); from += IMPORT_BATCH_SIZE) {
+            var batch = carParkInfos.subList(from, Math.min(from + IMPORT_BATCH_SIZE, carParkInfos.size()));
+            batches.add(Uni.createFrom().item(() -> toCarParkEntities(batch)).runSubscriptionOn(importExecutor));
         }
-
-        var entities = carParkInfos.stream().map(this::toCarParkEntity).toList();
-        return carParkRepository.persist(carParkInfos.stream().map(this::toCarParkEntity).toList())
-                .invoke(() -> LOGGER.info("Batch saved {} car parks", entities.size()));
+        return Uni.join().all(batches).andFailFast()
+                .onItem().transformToMulti(converted -> Multi.createFrom().iterable(converted));
     }
 
-    private CarPark toCarParkEntity(CarParkInformation carParkInfo) {
-        var wgs84 = converterUtil.convertSVY21ToWGS84(carParkInfo.getXCoord(), carParkInfo.getYCoord());
-        return CarPark.builder()
-                .carParkNo(carParkInfo.getCarParkNo())
-                .address(carParkInfo.getAddress())
-                .latitude(wgs84[0])
-                .longitude(wgs84[1])
-                .lastUpdated(new Timestamp(System.currentTimeMillis()))
-                .build();
+    // One in-place conversion per batch instead of two arrays and two ProjCoordinates per row
+    private List<CarPark> toCarParkEntities(List<CarParkInformation> carParkInfos) {
+        var longitudes = new double[carParkInfos.size()];
+        var latitudes = new double[carParkInfos.size()];
+        for (var i = 0; i < carParkInfos.size(); i++) {
+            longitudes[i] = carParkInfos.get(i).getXCoord();
+            latitudes[i] = carParkInfos.get(i).getYCoord();
+        }
+        converterUtil.convertSVY21ToWGS84(longitudes, latitudes);
+
+        var lastUpdated = new Timestamp(System.currentTimeMillis());
+        var carParks = new ArrayList<CarPark>(carParkInfos.size());
+        for (var i = 0; i < carParkInfos.size(); i++) {
+            carParks.add(CarPark.builder()
+                    .carParkNo(carParkInfos.get(i).getCarParkNo())
+                    .address(carParkInfos.get(i).getAddress())
+                    .latitude(latitudes[i])
+                    .longitude(longitudes[i])
+                    .lastUpdated(lastUpdated)
+                    .build());
+        }
+        return carParks;
     }
 
     /**
@@ -76,25 +147,98 @@ public class CarParkService {
      * <p>Recommended that this endpoint be called every minute, so we can update every 2 minutes to be safe</p>
      */
     @Scheduled(every = "2m")
-    @WithTransaction
     public Uni<Void> updateAvailabilityScheduler() {
         var expireSeconds = 120; // 2 minutes ~ @Scheduled(every = "2m")
-        return redisService.tryLockUpdateAvailabilityScheduler(expireSeconds)
+        return carParkSnapshotService.reloadIfChanged() // Picks up imports of other instances whose announcement was missed
+                .flatMap(rebuilt -> tryLockUpdateAvailabilityScheduler(expireSeconds))
                 .flatMap(locked -> {
                     if (Boolean.TRUE.equals(locked)) {
-                        return carParkAvailabilityService.updateAvailability().flatMap(v -> {
-                            LOGGER.info("Availability updated successfully");
-                            return redisService.releaseLockUpdateAvailabilityScheduler().replaceWithVoid();
-                        });
+                        return carParkAvailabilityService.updateAvailability()
+                                .call(nearestCarParkCacheService::publishVersion)
+                                .flatMap(v -> {
+                                    LOGGER.debug("Availability updated successfully");
+                                    var releaseStarted = System.nanoTime();
+                                    return redisService.releaseLockUpdateAvailabilityScheduler()
+                                            .invoke(() -> carParkMetrics.recordRefreshStage(RefreshStage.LOCK_RELEASE, Duration.ofNanos(System.nanoTime() - releaseStarted)))
+                                            .replaceWithVoid();
+                                });
                     } else {
-                        LOGGER.info("Another instance is already updating availability");
-                        return Uni.createFrom().voidItem();
+                        var reloadStarted = System.nanoTime();
+                        return availabilityFanOutService.catchUp()
+                                .invoke(reloaded -> {
+                                    if (reloaded) {
+                                        var duration = Duration.ofNanos(System.nanoTime() - reloadStarted);
+                                        carParkMetrics.recordRefreshStage(RefreshStage.DB_LOAD, duration);
+                                        LOGGER.info("event=availability_reload reason=updated_by_other_instance db_load_ms={}", duration.toMillis());
+                                    } else {
+                                        LOGGER.debug("Availability is current with the deltas of other instances, reload skipped");
+                                    }
+                                })
+                                .call(nearestCarParkCacheService::refreshVersion)
+                                .replaceWithVoid();
                     }
+                })
+                .invoke(() -> {
+                    carParkMetrics.recordNewestLastUpdated(carParkIndexService.newestLastUpdated());
+                    carParkSnapshotService.save();
                 });
     }
 
-    public Uni<List<CarPark>> getNearestCarParks(double latitude, double longitude, int page, int perPage) {
-        var offset = (page - 1) * perPage;
-        return carParkRepository.findNearestWithAvailability(latitude, longitude, perPage, offset);
+    private Uni<Boolean> tryLockUpdateAvailabilityScheduler(int expireSeconds) {
+        var lockStarted = System.nanoTime();
+        return redisService.tryLockUpdateAvailabilityScheduler(expireSeconds)
+                .invoke(() -> carParkMetrics.recordRefreshStage(RefreshStage.LOCK_ACQUIRE, Duration.ofNanos(System.nanoTime() - lockStarted)));
+    }
+
+    /**
+     * Answered from the in-process index when it is ready, otherwise from the PostGIS KNN query through the nearest
+     * cache. The index is faster than a Redis round trip, so it is never cached.
+     */
+    public Uni<List<NearestCarPark>> getNearestCarParks(NearestCarParkQuery query) {
+        var started = System.nanoTime();
+        if (carParkIndexService.isReady()) {
+            return Uni.createFrom().item(() -> carParkIndexService.findNearestWithAvailability(query))
+                    .invoke(() -> carParkMetrics.recordNearestQuery(query, true, Duration.ofNanos(System.nanoTime() - started)));
+        }
+        return nearestCarParkCacheService.getOrLoad(query, carParkRepository::findNearestWithAvailability)
+                .invoke(() -> carParkMetrics.recordNearestQuery(query, false, Duration.ofNanos(System.nanoTime() - started)));
+    }
+
+    /**
+     * Batch form of {@link #getNearestCarParks(NearestCarParkQuery)}: one index pass or one database round trip.
+     *
+     * @return one list per query, in query order
+     */
+    public Uni<List<List<NearestCarPark>>> getNearestCarParksBatch(List<NearestCarParkQuery> queries) {
+        if (carParkIndexService.isReady()) {
+            return Uni.createFrom().item(() -> carParkIndexService.findNearestWithAvailabilityBatch(queries));
+        }
+        return carParkRepository.findNearestWithAvailabilityBatch(queries);
+    }
+
+    /**
+     * Car parks inside the box, answered from the in-process index when it is ready, otherwise from PostGIS. Both give
+     * the same order and entity tag for the same data.
+     *
+     * @param limit max number of car parks
+     */
+    public Uni<CarParkTile> getCarParksWithin(BoundingBox box, int limit) {
+        if (carParkIndexService.isReady()) {
+            return Uni.createFrom().item(() -> carParkIndexService.findWithin(box, limit));
+        }
+        return carParkRepository.findWithin(box, limit).map(CarParkService::toTile);
+    }
+
+    private static CarParkTile toTile(List<CarPark> carParks) {
+        // Same order as the index ids, whatever the database collation
+        var sorted = carParks.stream().sorted(Comparator.comparing((CarPark carPark) -> carPark.carParkNo)).toList();
+        var fragments = new ArrayList<byte[]>(sorted.size());
+        var tag = CarParkJsonFragments.emptyTag();
+        for (var carPark : sorted) {
+            var fragment = CarParkJsonFragments.encode(carPark.address, carPark.latitude, carPark.longitude);
+            fragments.add(fragment);
+            tag = CarParkJsonFragments.tag(tag, CarParkJsonFragments.hash(fragment), carPark.totalLots, carPark.availableLots);
+        }
+        return new CarParkTile(Long.toHexString(tag), sorted, fragments);
     }
 }
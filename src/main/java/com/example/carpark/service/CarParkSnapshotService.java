@@ -0,0 +1,182 @@
+package com.example.carpark.service;
+
+import com.example.carpark.config.CarParkConfig;
+import com.example.carpark.index.CarParkIndexSnapshot;
+import com.example.carpark.repository.CarParkRepository;
+import io.quarkus.runtime.StartupEvent;
+import io.quarkus.vertx.VertxContextSupport;
+import io.smallrye.mutiny.Uni;
+import io.smallrye.mutiny.infrastructure.Infrastructure;
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.enterprise.event.Observes;
+import jakarta.inject.Inject;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * <p>Warm start of the car park index from a local snapshot file</p>
+ * <p>At startup the index is restored from the snapshot, so nearest queries are answered from memory before the
+ * database is read. It is then reconciled in the background: when the static data fingerprint in the database differs,
+ * the index is rebuilt from {@code car_parks}, otherwise only availability is brought up to date, which needs no
+ * database read when no availability delta was published since the save. Without a usable snapshot the index is built
+ * from the database as before.</p>
+ * <p>The fingerprint is compared again on every refresh cycle and whenever an instance announces an import, so car
+ * parks imported through any instance reach the index of every instance.</p>
+ * <p>The snapshot is saved on a worker thread after each import and refresh cycle, saves requested meanwhile are
+ * coalesced.</p>
+ */
+@ApplicationScoped
+public class CarParkSnapshotService {
+    private static final Logger LOGGER = LoggerFactory.getLogger(CarParkSnapshotService.class);
+
+    private final CarParkConfig.Snapshot config;
+    private final CarParkIndexService carParkIndexService;
+    private final CarParkRepository carParkRepository;
+    private final AvailabilityFanOutService availabilityFanOutService;
+    private final CarParkAvailabilityService carParkAvailabilityService;
+    private final Path path;
+    private final AtomicBoolean savePending = new AtomicBoolean();
+
+    // Fingerprint of the static data the index was built from, null until known
+    private volatile String fingerprint;
+
+    @Inject
+    public CarParkSnapshotService(CarParkConfig carParkConfig, CarParkIndexService carParkIndexService,
+                                  CarParkRepository carParkRepository, AvailabilityFanOutService availabilityFanOutService,
+                                  CarParkAvailabilityService carParkAvailabilityService) {
+        this.config = carParkConfig.snapshot();
+        this.carParkIndexService = carParkIndexService;
+        this.carParkRepository = carParkRepository;
+        this.availabilityFanOutService = availabilityFanOutService;
+        this.carParkAvailabilityService = carParkAvailabilityService;
+        this.path = Path.of(config.path());
+    }
+
+    void onStart(@Observes StartupEvent event) {
+        availabilityFanOutService.onImport(this::onImportAnnounced);
+        var snapshot = config.enabled() ? restore() : null;
+        if (snapshot != null) {
+            VertxContextSupport.subscribe(() -> reconcile(snapshot).toMulti(), subscribe -> subscribe.with(
+                    ignored -> {
+                    },
+                    e -> LOGGER.warn("Failed to reconcile the car park snapshot with the database, it is reconciled by the next refresh cycle: {}", e.getMessage()),
+                    this::save));
+            return;
+        }
+        try {
+            VertxContextSupport.subscribeAndAwait(this::reload);
+        } catch (Throwable e) {
+            LOGGER.warn("Failed to build car park index at startup, nearest queries will use the database: {}", e.getMessage());
+        }
+    }
+
+    private CarParkIndexSnapshot restore() {
+        if (!Files.isRegularFile(path)) {
+            LOGGER.info("No car park snapshot at {}, building the index from the database", path);
+            return null;
+        }
+        var started = System.nanoTime();
+        try {
+            var snapshot = CarParkIndexSnapshot.read(path);
+            carParkIndexService.rebuild(snapshot.getCarParks());
+            LOGGER.info("Restored {} car parks from the snapshot saved at {} in {} ms", snapshot.getCarParks().size(),
+                    Instant.ofEpochMilli(snapshot.getSavedAt()), (System.nanoTime() - started) / 1_000_000);
+            return snapshot;
+        } catch (IOException | RuntimeException e) {
+            LOGGER.warn("Ignoring unreadable car park snapshot {}, building the index from the database: {}", path, e.getMessage());
+            return null;
+        }
+    }
+
+    private Uni<Void> reconcile(CarParkIndexSnapshot snapshot) {
+        return carParkRepository.findStaticFingerprint().flatMap(stored -> {
+            if (!stored.equals(snapshot.getFingerprint())) {
+                LOGGER.info("Car park static data changed since the snapshot, rebuilding the index from the database");
+                return reload();
+            }
+            fingerprint = stored;
+            return availabilityFanOutService.resumeFrom(snapshot.getDeltaSequence())
+                    .flatMap(upToDate -> upToDate ? Uni.createFrom().item(false) : availabilityFanOutService.catchUp())
+                    .invoke(reloaded -> LOGGER.info("Car park snapshot reconciled, availability {}",
+                            reloaded ? "reloaded from the database" : "was current"))
+                    .replaceWithVoid();
+        });
+    }
+
+    /**
+     * Rebuilds the index from the database when its static data changed since the index was built, or the index was
+     * never built. Best effort, a failure is logged and retried on the next call.
+     * <p>After a rebuild, the upstream version last applied is forgotten, so new car parks get their lots from the next
+     * feed in full even if this instance did not run the import.</p>
+     *
+     * @return true if the index was rebuilt
+     */
+    public Uni<Boolean> reloadIfChanged() {
+        return carParkRepository.findStaticFingerprint()
+                .flatMap(stored -> {
+                    if (stored.equals(fingerprint)) {
+                        return Uni.createFrom().item(false);
+                    }
+                    LOGGER.info("Car park static data changed, rebuilding the index from the database");
+                    return reload()
+                            .invoke(carParkAvailabilityService::forgetUpstreamVersion)
+                            .replaceWith(true);
+                })
+                .onFailure().invoke(e -> LOGGER.warn("Failed to check car park static data for changes: {}", e.getMessage()))
+                .onFailure().recoverWithItem(false);
+    }
+
+    private void onImportAnnounced() {
+        VertxContextSupport.subscribe(() -> reloadIfChanged().toMulti(), subscribe -> subscribe.with(ignored -> {
+        }));
+    }
+
+    /**
+     * Rebuilds the index from the database, then saves a snapshot of it with the fingerprint of what was read.
+     */
+    public Uni<Void> reload() {
+        // Read before the rebuild, so a concurrent import leaves a fingerprint that no longer matches
+        return readFingerprint()
+                .call(carParkIndexService::reload)
+                .invoke(stored -> {
+                    fingerprint = stored;
+                    save();
+                })
+                .replaceWithVoid();
+    }
+
+    private Uni<String> readFingerprint() {
+        return carParkRepository.findStaticFingerprint()
+                .onFailure().invoke(e -> LOGGER.warn("Failed to read car park fingerprint, the index is rebuilt again on the next check: {}", e.getMessage()))
+                .onFailure().recoverWithNull();
+    }
+
+    /**
+     * Saves the current index and availability on a worker thread, unless a save is already pending
+     */
+    public void save() {
+        if (!config.enabled() || !carParkIndexService.isReady() || !savePending.compareAndSet(false, true)) {
+            return;
+        }
+        Infrastructure.getDefaultWorkerPool().execute(this::write);
+    }
+
+    private synchronized void write() {
+        savePending.set(false); // Changes published from now on need another save
+        var started = System.nanoTime();
+        var deltaSequence = availabilityFanOutService.appliedSequence();
+        var snapshot = new CarParkIndexSnapshot(System.currentTimeMillis(), deltaSequence, fingerprint, carParkIndexService.toCarParks());
+        try {
+            snapshot.write(path);
+            LOGGER.debug("Saved {} car parks to the snapshot {} in {} ms", snapshot.getCarParks().size(), path, (System.nanoTime() - started) / 1_000_000);
+        } catch (IOException | RuntimeException e) {
+            LOGGER.warn("Failed to save car park snapshot {}: {}", path, e.getMessage());
+        }
+    }
+}
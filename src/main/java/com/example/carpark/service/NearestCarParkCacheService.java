@@ -0,0 +1,205 @@
+package com.example.carpark.service;
+
+import com.example.carpark.config.CarParkConfig;
+import com.example.carpark.index.CarParkSpatialIndex;
+import com.example.carpark.model.NearestCarPark;
+import com.example.carpark.model.NearestCarParkQuery;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import io.smallrye.mutiny.Uni;
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.inject.Inject;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+
+/**
+ * <p>Read-through cache for nearest queries answered by PostGIS, with a bounded local LRU tier in front of Redis</p>
+ * <p>Origins are snapped to a grid, so nearby queries with the same pagination and filters share one entry, computed
+ * for the grid point with twice the page size past the requested page. On the way out, distances are recomputed for
+ * the actual origin and the car parks re-sorted. The page is served only if every car park the entry may have missed
+ * is provably farther than its last one, otherwise the exact query runs uncached. Keys carry the shared availability
+ * version, bumped by the instance that publishes new availability, so entries never outlive the data they were
+ * computed from. Cursor pages are not cached.</p>
+ */
+@ApplicationScoped
+public class NearestCarParkCacheService {
+    private static final Logger LOGGER = LoggerFactory.getLogger(NearestCarParkCacheService.class);
+
+    private static final String KEY_PREFIX = "carparks:nearest:";
+    private static final int MAX_ENTRY_SIZE = 1000;
+    private static final double MARGIN_METERS = 0.001; // Distance resolution of the page order
+
+    private final CarParkConfig.NearestCache config;
+    private final RedisService redisService;
+    private final ObjectReader reader;
+    private final ObjectWriter writer;
+    private final Map<String, List<NearestCarPark>> local;
+
+    private volatile long version;
+
+    @Inject
+    public NearestCarParkCacheService(CarParkConfig carParkConfig, RedisService redisService, ObjectMapper objectMapper) {
+        this.config = carParkConfig.nearestCache();
+        this.redisService = redisService;
+        this.reader = objectMapper.readerFor(new TypeReference<List<NearestCarPark>>() {
+        }).without(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES);
+        this.writer = objectMapper.writerFor(new TypeReference<List<NearestCarPark>>() {
+        });
+        var maxEntries = config.localMaxEntries();
+        this.local = Collections.synchronizedMap(new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, List<NearestCarPark>> eldest) {
+                return size() > maxEntries;
+            }
+        });
+    }
+
+    /**
+     * Looks the query up in the local tier, then in Redis, and runs the loader for the snapped query on a miss. Runs
+     * the loader for the query itself when the entry cannot answer it exactly.
+     */
+    public Uni<List<NearestCarPark>> getOrLoad(NearestCarParkQuery query, Function<NearestCarParkQuery, Uni<List<NearestCarPark>>> loader) {
+        if (!config.enabled() || query.getAfter() != null || query.getOffset() + 2L * query.getLimit() > MAX_ENTRY_SIZE) {
+            return loader.apply(query);
+        }
+        var snapped = snap(query);
+        var key = key(snapped);
+        var cached = local.get(key);
+        if (cached != null) {
+            return pageOf(cached, snapped, query, loader);
+        }
+        return redisService.get(key)
+                .onFailure().recoverWithItem(e -> {
+                    LOGGER.warn("Failed to read nearest cache entry {}: {}", key, e.getMessage());
+                    return null;
+                })
+                .flatMap(json -> {
+                    var entry = json != null ? read(key, json) : null;
+                    if (entry != null) {
+                        local.put(key, entry);
+                        return Uni.createFrom().item(entry);
+                    }
+                    return loader.apply(snapped).invoke(loaded -> store(key, loaded));
+                })
+                .flatMap(entry -> pageOf(entry, snapped, query, loader));
+    }
+
+    /**
+     * Bumps the shared availability version after this instance published new availability.
+     */
+    public Uni<Void> publishVersion() {
+        return redisService.incrementAvailabilityVersion()
+                .invoke(this::useVersion)
+                .onFailure().invoke(e -> LOGGER.warn("Failed to bump availability version, cached nearest results may be served until they expire: {}", e.getMessage()))
+                .onFailure().recoverWithNull()
+                .replaceWithVoid();
+    }
+
+    /**
+     * Picks up the shared availability version after this instance reloaded availability published elsewhere.
+     */
+    public Uni<Void> refreshVersion() {
+        return redisService.getAvailabilityVersion()
+                .invoke(this::useVersion)
+                .onFailure().invoke(e -> LOGGER.warn("Failed to read availability version: {}", e.getMessage()))
+                .onFailure().recoverWithNull()
+                .replaceWithVoid();
+    }
+
+    private void useVersion(long version) {
+        if (this.version != version) {
+            this.version = version;
+            local.clear(); // Keys of older versions can never hit again
+        }
+    }
+
+    private NearestCarParkQuery snap(NearestCarParkQuery query) {
+        var grid = config.gridDegrees();
+        return query.toBuilder()
+                .latitude(Math.round(query.getLatitude() / grid) * grid)
+                .longitude(Math.round(query.getLongitude() / grid) * grid)
+                .limit(query.getOffset() + 2 * query.getLimit())
+                .offset(0)
+                .build();
+    }
+
+    private String key(NearestCarParkQuery snapped) {
+        var grid = config.gridDegrees();
+        return KEY_PREFIX + version
+                + ":" + Math.round(snapped.getLatitude() / grid)
+                + ":" + Math.round(snapped.getLongitude() / grid)
+                + ":" + grid
+                + ":" + snapped.getLimit()
+                + ":" + snapped.getOffset()
+                + ":" + (snapped.getRadiusMeters() != null ? snapped.getRadiusMeters() : "-")
+                + ":" + snapped.getMinAvailable();
+    }
+
+    private List<NearestCarPark> read(String key, String json) {
+        try {
+            return reader.readValue(json);
+        } catch (JsonProcessingException e) {
+            LOGGER.warn("Ignoring unreadable nearest cache entry {}: {}", key, e.getMessage());
+            return null;
+        }
+    }
+
+    private void store(String key, List<NearestCarPark> entry) {
+        local.put(key, entry);
+        try {
+            redisService.setWithExpiry(key, writer.writeValueAsString(entry), config.ttlSeconds())
+                    .subscribe().with(
+                            ignored -> {
+                            },
+                            e -> LOGGER.warn("Failed to write nearest cache entry {}: {}", key, e.getMessage()));
+        } catch (JsonProcessingException e) {
+            LOGGER.warn("Failed to serialize nearest cache entry {}: {}", key, e.getMessage());
+        }
+    }
+
+    private static Uni<List<NearestCarPark>> pageOf(List<NearestCarPark> entry, NearestCarParkQuery snapped, NearestCarParkQuery query,
+                                                    Function<NearestCarParkQuery, Uni<List<NearestCarPark>>> loader) {
+        var page = pageOf(entry, snapped, query);
+        return page != null ? Uni.createFrom().item(page) : loader.apply(query);
+    }
+
+    /**
+     * <p>The query's page out of an entry computed for the grid point, in the order of the query itself</p>
+     * <p>A car park missing from the entry is at least as far from the grid point as the entry's last one, or beyond
+     * the radius around it, so at least that far minus the snapping offset from the actual origin. The page is exact
+     * only if its last car park is nearer than that.</p>
+     *
+     * @return the page, or null when the entry cannot tell
+     */
+    static List<NearestCarPark> pageOf(List<NearestCarPark> entry, NearestCarParkQuery snapped, NearestCarParkQuery query) {
+        var offset = CarParkSpatialIndex.distanceMeters(query.getLatitude(), query.getLongitude(), snapped.getLatitude(), snapped.getLongitude());
+        var missingFrom = entry.size() < snapped.getLimit() ? Double.POSITIVE_INFINITY : entry.getLast().getDistanceMeters();
+        var radiusMeters = query.getRadiusMeters() != null ? query.getRadiusMeters() : Double.POSITIVE_INFINITY;
+        missingFrom = Math.min(missingFrom, radiusMeters) - offset - MARGIN_METERS;
+
+        var sorted = entry.stream()
+                .map(nearest -> new NearestCarPark(nearest.getCarPark(), CarParkSpatialIndex.distanceMeters(
+                        query.getLatitude(), query.getLongitude(), nearest.getCarPark().latitude, nearest.getCarPark().longitude)))
+                .filter(nearest -> nearest.getDistanceMeters() <= radiusMeters)
+                .sorted(Comparator.comparingLong((NearestCarPark nearest) -> CarParkSpatialIndex.distanceKey(nearest.getDistanceMeters()))
+                        .thenComparing(nearest -> nearest.getCarPark().carParkNo))
+                .toList();
+        var end = query.getOffset() + query.getLimit();
+        if (sorted.size() < end) {
+            // A short page claims there is nothing more, which holds only if nothing can be missing
+            return missingFrom == Double.POSITIVE_INFINITY ? sorted.subList(Math.min(query.getOffset(), sorted.size()), sorted.size()) : null;
+        }
+        return sorted.get(end - 1).getDistanceMeters() < missingFrom ? sorted.subList(query.getOffset(), end) : null;
+    }
+}
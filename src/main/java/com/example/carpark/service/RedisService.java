@@ -1,6 +1,7 @@
 package com.example.carpark.service;
 
 import io.smallrye.mutiny.Uni;
+import io.vertx.mutiny.redis.client.RedisConnection;
 import io.vertx.mutiny.redis.client.Command;
 import io.vertx.mutiny.redis.client.Redis;
 import io.vertx.mutiny.redis.client.Request;
@@ -9,11 +10,16 @@ import jakarta.inject.Inject;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.util.function.Consumer;
+
 @ApplicationScoped
 public class RedisService {
     private static final Logger LOGGER = LoggerFactory.getLogger(RedisService.class);
 
     private static final String LOCK_KEY = "update-availability-scheduler-lock";
+    private static final String AVAILABILITY_VERSION_KEY = "carparks:availability:version";
+    private static final String AVAILABILITY_DELTA_SEQUENCE_KEY = "carparks:availability:delta-sequence";
+    private static final String AVAILABILITY_DELTA_CHANNEL = "carparks:availability:deltas";
 
     private final Redis redisClient;
 
@@ -37,10 +43,10 @@ public class RedisService {
         return redisClient.send(request)
                 .map(response -> {
                     if (response != null && "OK".equalsIgnoreCase(response.toString())) {
-                        LOGGER.info("Lock acquired with key: {}", LOCK_KEY);
+                        LOGGER.debug("Lock acquired with key: {}", LOCK_KEY);
                         return true;
                     } else {
-                        LOGGER.info("Failed to acquire lock with key: {}", LOCK_KEY);
+                        LOGGER.debug("Failed to acquire lock with key: {}", LOCK_KEY);
                         return false;
                     }
                 });
@@ -55,7 +61,7 @@ public class RedisService {
         return redisClient.send(Request.cmd(Command.DEL).arg(LOCK_KEY))
                 .map(response -> {
                     if (response != null && response.toInteger() > 0) {
-                        LOGGER.info("Lock released successfully with key {}", LOCK_KEY);
+                        LOGGER.debug("Lock released successfully with key {}", LOCK_KEY);
                         return true;
                     } else {
                         LOGGER.warn("Lock release failed, DEL command did not delete the key {}", LOCK_KEY);
@@ -63,4 +69,99 @@ public class RedisService {
                     }
                 });
     }
+
+    /**
+     * @return Uni that emits the value of the key, or null if it does not exist.
+     */
+    public Uni<String> get(String key) {
+        return redisClient.send(Request.cmd(Command.GET).arg(key))
+                .map(response -> response != null ? response.toString() : null);
+    }
+
+    /**
+     * Sets the key with an expiration time, overwriting any previous value.
+     */
+    public Uni<Void> setWithExpiry(String key, String value, int expireSeconds) {
+        return redisClient.send(Request.cmd(Command.SET)
+                        .arg(key)
+                        .arg(value)
+                        .arg("EX")
+                        .arg(String.valueOf(expireSeconds)))
+                .replaceWithVoid();
+    }
+
+    /**
+     * Bumps the shared availability version, after new availability has been written.
+     *
+     * @return Uni that emits the new version.
+     */
+    public Uni<Long> incrementAvailabilityVersion() {
+        return redisClient.send(Request.cmd(Command.INCR).arg(AVAILABILITY_VERSION_KEY))
+                .map(response -> response.toLong());
+    }
+
+    /**
+     * @return Uni that emits the shared availability version, 0 if it was never bumped.
+     */
+    public Uni<Long> getAvailabilityVersion() {
+        return get(AVAILABILITY_VERSION_KEY)
+                .map(version -> version != null ? Long.parseLong(version) : 0L);
+    }
+
+    /**
+     * Takes the next availability delta sequence number, before the delta is published.
+     *
+     * @return Uni that emits the new sequence number.
+     */
+    public Uni<Long> incrementAvailabilityDeltaSequence() {
+        return redisClient.send(Request.cmd(Command.INCR).arg(AVAILABILITY_DELTA_SEQUENCE_KEY))
+                .map(response -> response.toLong());
+    }
+
+    /**
+     * @return Uni that emits the last availability delta sequence number taken, 0 if none was.
+     */
+    public Uni<Long> getAvailabilityDeltaSequence() {
+        return get(AVAILABILITY_DELTA_SEQUENCE_KEY)
+                .map(sequence -> sequence != null ? Long.parseLong(sequence) : 0L);
+    }
+
+    /**
+     * Publishes an encoded availability delta to every subscribed instance.
+     *
+     * @return Uni that emits the number of instances that received it.
+     */
+    public Uni<Integer> publishAvailabilityDelta(byte[] delta) {
+        return redisClient.send(Request.cmd(Command.PUBLISH).arg(AVAILABILITY_DELTA_CHANNEL).arg(delta))
+                .map(response -> response.toInteger());
+    }
+
+    /**
+     * Subscribes to availability deltas on a dedicated connection, which is taken out of the pool for as long as the
+     * subscription lasts.
+     *
+     * @param handler          receives the payload of each delta, on the connection's event loop
+     * @param onConnectionLost called once when the connection fails or is closed
+     * @return Uni that emits the connection once subscribed, close it to unsubscribe.
+     */
+    public Uni<RedisConnection> subscribeAvailabilityDeltas(Consumer<byte[]> handler, Runnable onConnectionLost) {
+        return redisClient.connect()
+                .call(connection -> {
+                    connection.handler(response -> {
+                        // Pushed as [message, channel, payload], subscription confirmations are skipped
+                        if (response.size() == 3 && "message".equalsIgnoreCase(response.get(0).toString())) {
+                            handler.accept(response.get(2).toBuffer().getBytes());
+                        }
+                    });
+                    connection.exceptionHandler(e -> {
+                        LOGGER.debug("Availability delta subscription failed: {}", e.getMessage());
+                        connection.close().subscribe().with(ignored -> {
+                        }, ignored -> {
+                        });
+                    });
+                    connection.endHandler(onConnectionLost);
+                    return connection.send(Request.cmd(Command.SUBSCRIBE).arg(AVAILABILITY_DELTA_CHANNEL))
+                            .onFailure().call(connection::close);
+                });
+    }
 }
@@ -8,15 +8,8 @@ import org.locationtech.proj4j.ProjCoordinate;
 
 @ApplicationScoped
 public class ConverterUtil {
-    private final CoordinateTransform transformSVY21ToWGS84;
-
-    public ConverterUtil() {
-        var crsFactory = new CRSFactory();
-        var svy21 = crsFactory.createFromName("EPSG:3414"); // SVY21
-        var wgs84 = crsFactory.createFromName("EPSG:4326"); // WGS84
-
-        transformSVY21ToWGS84 = new CoordinateTransformFactory().createTransform(svy21, wgs84);
-    }
+    // CoordinateTransform keeps intermediate state while transforming, so every thread gets its own
+    private final ThreadLocal<Transforms> transforms = ThreadLocal.withInitial(Transforms::new);
 
     /**
      * <p>Convert SVY21 to WGS84</p>
@@ -26,8 +19,82 @@ public class ConverterUtil {
      * @return [Latitude, Longitude]
      */
     public double[] convertSVY21ToWGS84(double xCoord, double yCoord) {
-        var result = new ProjCoordinate();
-        transformSVY21ToWGS84.transform(new ProjCoordinate(xCoord, yCoord), result);
+        var result = transforms.get().svy21ToWgs84(xCoord, yCoord);
         return new double[]{result.y, result.x}; // [Latitude, Longitude]
     }
+
+    /**
+     * <p>Convert WGS84 to SVY21, for planar distance math in meters</p>
+     * @return [xCoord (Easting), yCoord (Northing)]
+     */
+    public double[] convertWGS84ToSVY21(double latitude, double longitude) {
+        var result = transforms.get().wgs84ToSvy21(longitude, latitude);
+        return new double[]{result.x, result.y}; // [Easting, Northing]
+    }
+
+    /**
+     * <p>Convert SVY21 to WGS84 in place, without allocating per point</p>
+     * <p>Sequential on the calling thread, imports run several batches on their own pool instead.</p>
+     * @param xCoords Eastings, overwritten with Longitudes
+     * @param yCoords Northings, overwritten with Latitudes
+     */
+    public void convertSVY21ToWGS84(double[] xCoords, double[] yCoords) {
+        convert(xCoords, yCoords, true);
+    }
+
+    /**
+     * <p>Convert WGS84 to SVY21 in place, without allocating per point</p>
+     * @param longitudes overwritten with Eastings
+     * @param latitudes  overwritten with Northings
+     */
+    public void convertWGS84ToSVY21(double[] longitudes, double[] latitudes) {
+        convert(longitudes, latitudes, false);
+    }
+
+    private void convert(double[] xs, double[] ys, boolean toWgs84) {
+        if (xs.length != ys.length) {
+            throw new IllegalArgumentException("Coordinate arrays differ in length: " + xs.length + " and " + ys.length);
+        }
+        var threadTransforms = transforms.get();
+        for (var i = 0; i < xs.length; i++) {
+            var result = toWgs84 ? threadTransforms.svy21ToWgs84(xs[i], ys[i]) : threadTransforms.wgs84ToSvy21(xs[i], ys[i]);
+            xs[i] = result.x;
+            ys[i] = result.y;
+        }
+    }
+
+    /**
+     * Transforms of one thread, with reused source and target coordinates
+     */
+    private static final class Transforms {
+        private final CoordinateTransform svy21ToWgs84;
+        private final CoordinateTransform wgs84ToSvy21;
+        private final ProjCoordinate source = new ProjCoordinate();
+        private final ProjCoordinate target = new ProjCoordinate();
+
+        Transforms() {
+            var crsFactory = new CRSFactory();
+            var svy21 = crsFactory.createFromName("EPSG:3414"); // SVY21
+            var wgs84 = crsFactory.createFromName("EPSG:4326"); // WGS84
+            var transformFactory = new CoordinateTransformFactory();
+            svy21ToWgs84 = transformFactory.createTransform(svy21, wgs84);
+            wgs84ToSvy21 = transformFactory.createTransform(wgs84, svy21);
+        }
+
+        ProjCoordinate svy21ToWgs84(double x, double y) {
+            return transform(svy21ToWgs84, x, y);
+        }
+
+        ProjCoordinate wgs84ToSvy21(double x, double y) {
+            return transform(wgs84ToSvy21, x, y);
+        }
+
+        // The returned coordinate is reused by the next call on this thread
+        private ProjCoordinate transform(CoordinateTransform transform, double x, double y) {
+            source.x = x;
+            source.y = y;
+            transform.transform(source, target);
+            return target;
+        }
+    }
 }
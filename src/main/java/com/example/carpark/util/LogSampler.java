@@ -0,0 +1,40 @@
+package com.example.carpark.util;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * <p>Lets at most one log event through per interval and counts the ones it held back</p>
+ * <p>Lock-free, so hot request paths can call it on every request.</p>
+ */
+public class LogSampler {
+    private final long intervalNanos;
+    private final AtomicLong nextAllowed;
+    private final LongAdder suppressed = new LongAdder();
+
+    public LogSampler(Duration interval) {
+        this.intervalNanos = interval.toNanos();
+        this.nextAllowed = new AtomicLong(System.nanoTime());
+    }
+
+    /**
+     * @return true if this event should be logged, false if it was sampled out and counted as suppressed
+     */
+    public boolean tryAcquire() {
+        var now = System.nanoTime();
+        var next = nextAllowed.get();
+        if (now - next >= 0 && nextAllowed.compareAndSet(next, now + intervalNanos)) {
+            return true;
+        }
+        suppressed.increment();
+        return false;
+    }
+
+    /**
+     * @return the events sampled out since the previous call, to be reported with the next logged event
+     */
+    public long takeSuppressed() {
+        return suppressed.sumThenReset();
+    }
+}
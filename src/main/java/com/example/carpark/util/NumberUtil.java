@@ -4,11 +4,33 @@ public class NumberUtil {
     private NumberUtil() {
     }
 
-    public static int parseIntQuietly(String str) {
-        try {
-            return Integer.parseInt(str);
-        } catch (NumberFormatException e) {
+    /**
+     * Same as {@link Integer#parseInt(String)} over a slice of a character buffer, returning 0 instead of throwing
+     */
+    public static int parseIntQuietly(char[] chars, int offset, int length) {
+        if (length <= 0) {
             return 0;
         }
+        var i = offset;
+        var end = offset + length;
+        var negative = chars[i] == '-';
+        if (negative || chars[i] == '+') {
+            if (++i == end) {
+                return 0;
+            }
+        }
+        var result = 0L;
+        for (; i < end; i++) {
+            var digit = chars[i] - '0';
+            if (digit < 0 || digit > 9) {
+                return 0;
+            }
+            result = result * 10 + digit;
+            if (result > Integer.MAX_VALUE + 1L) {
+                return 0;
+            }
+        }
+        result = negative ? -result : result;
+        return result > Integer.MAX_VALUE ? 0 : (int) result;
     }
 }
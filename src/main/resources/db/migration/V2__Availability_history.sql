@@ -0,0 +1,26 @@
+-- Availability deltas, one row per car park whose lots changed in a refresh. Lot counts fit in SMALLINT, and rows are
+-- only appended for changes, which keeps a day of 2-minute polls at a fraction of 2,000 x 720 rows.
+CREATE TABLE IF NOT EXISTS availability_history (
+    car_park_no VARCHAR(50) NOT NULL,
+    recorded_at TIMESTAMP NOT NULL,
+    total_lots SMALLINT NOT NULL,
+    available_lots SMALLINT NOT NULL,
+    PRIMARY KEY (car_park_no, recorded_at)
+) PARTITION BY RANGE (recorded_at);
+
+-- Daily partitions availability_history_pYYYYMMDD are created ahead of time by the application. The default partition
+-- only catches rows written before that happened.
+CREATE TABLE IF NOT EXISTS availability_history_default PARTITION OF availability_history DEFAULT;
+
+-- Hourly downsampling of partitions past raw retention
+CREATE TABLE IF NOT EXISTS availability_history_hourly (
+    car_park_no VARCHAR(50) NOT NULL,
+    hour TIMESTAMP NOT NULL,
+    total_lots SMALLINT NOT NULL,
+    min_available SMALLINT NOT NULL,
+    max_available SMALLINT NOT NULL,
+    sum_available INTEGER NOT NULL,
+    samples SMALLINT NOT NULL,
+    last_available SMALLINT NOT NULL,
+    PRIMARY KEY (car_park_no, hour)
+);
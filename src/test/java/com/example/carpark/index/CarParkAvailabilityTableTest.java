@@ -0,0 +1,67 @@
+package com.example.carpark.index;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CarParkAvailabilityTableTest {
+    @Test
+    void publishUpdatesInPlace() {
+        var table = new CarParkAvailabilityTable(3);
+
+        table.publish(2, new int[]{0, 2}, new int[]{10, 30}, new int[]{1, 3}, new long[]{100L, 300L});
+
+        assertEquals(1, table.version());
+        assertEquals(10, table.totalLots(0));
+        assertEquals(1, table.availableLots(0));
+        assertEquals(100L, table.lastUpdated(0));
+        assertEquals(0, table.availableLots(1));
+        assertEquals(30, table.totalLots(2));
+        assertEquals(3, table.availableLots(2));
+    }
+
+    @Test
+    void readNeverObservesHalfAppliedRefresh() throws InterruptedException {
+        var size = 1000;
+        var table = new CarParkAvailabilityTable(size);
+        var ids = new int[size];
+        for (var i = 0; i < size; i++) {
+            ids[i] = i;
+        }
+        var running = new AtomicBoolean(true);
+        var failure = new AtomicReference<String>();
+
+        var reader = new Thread(() -> {
+            while (running.get()) {
+                var values = table.read(t -> {
+                    var min = Integer.MAX_VALUE;
+                    var max = Integer.MIN_VALUE;
+                    for (var i = 0; i < t.size(); i++) {
+                        min = Math.min(min, t.availableLots(i));
+                        max = Math.max(max, t.availableLots(i));
+                    }
+                    return new int[]{min, max};
+                });
+                if (values[0] != values[1]) {
+                    failure.set("Observed mixed refreshes: " + values[0] + " and " + values[1]);
+                }
+            }
+        });
+        reader.start();
+
+        for (var round = 1; round <= 2000; round++) {
+            var lots = new int[size];
+            Arrays.fill(lots, round);
+            table.publish(size, ids, lots, lots, new long[size]);
+        }
+        running.set(false);
+        reader.join();
+
+        assertNull(failure.get());
+        assertEquals(2000, table.version());
+    }
+}
@@ -0,0 +1,67 @@
+package com.example.carpark.index;
+
+import com.example.carpark.entity.CarPark;
+import com.example.carpark.exception.CarParkException;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Timestamp;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CarParkIndexSnapshotTest {
+    @TempDir
+    Path directory;
+
+    @Test
+    void readsBackWhatWasWritten() throws IOException {
+        var path = directory.resolve("index/carparks.snapshot");
+        new CarParkIndexSnapshot(1000L, 42L, "2:123", List.of(
+                carPark("A", "BLK 1 ÄNG MO KIO"),
+                carPark("B", null))).write(path);
+
+        var snapshot = CarParkIndexSnapshot.read(path);
+
+        assertEquals(1000L, snapshot.getSavedAt());
+        assertEquals(42L, snapshot.getDeltaSequence());
+        assertEquals("2:123", snapshot.getFingerprint());
+        assertEquals(2, snapshot.getCarParks().size());
+        var first = snapshot.getCarParks().getFirst();
+        assertEquals("A", first.carParkNo);
+        assertEquals("BLK 1 ÄNG MO KIO", first.address);
+        assertEquals(1.3, first.latitude);
+        assertEquals(103.8, first.longitude);
+        assertEquals(100, first.totalLots);
+        assertEquals(25, first.availableLots);
+        assertEquals(5000L, first.lastUpdated.getTime());
+        assertNull(snapshot.getCarParks().get(1).address);
+        assertFalse(Files.exists(directory.resolve("index/carparks.snapshot.tmp")));
+    }
+
+    @Test
+    void corruptFilesAreRejected() throws IOException {
+        var path = directory.resolve("carparks.snapshot");
+        new CarParkIndexSnapshot(1000L, 0L, null, List.of(carPark("A", "Address A"))).write(path);
+        var bytes = Files.readAllBytes(path);
+        bytes[bytes.length / 2] ^= 1;
+        Files.write(path, bytes);
+
+        assertThrows(CarParkException.class, () -> CarParkIndexSnapshot.read(path));
+    }
+
+    private static CarPark carPark(String carParkNo, String address) {
+        return CarPark.builder()
+                .carParkNo(carParkNo)
+                .address(address)
+                .latitude(1.3)
+                .longitude(103.8)
+                .totalLots(100)
+                .availableLots(25)
+                .lastUpdated(new Timestamp(5000L))
+                .build();
+    }
+}
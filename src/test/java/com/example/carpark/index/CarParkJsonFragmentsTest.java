@@ -0,0 +1,30 @@
+package com.example.carpark.index;
+
+import com.example.carpark.model.CarParkDto;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class CarParkJsonFragmentsTest {
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    @Test
+    void sameBytesAsJackson() throws IOException {
+        assertSameAsJackson(new CarParkDto("BLK 351-357 HOUGANG AVENUE 7", 1.3723422711738515, 103.89908052009055, 232, 78, 253.7));
+        assertSameAsJackson(new CarParkDto("BLK 5 \"JALAN\" KUKOH\\ é\n", -1.0E-5, 103.0, 0, 0, 0.0));
+        assertSameAsJackson(new CarParkDto(null, 1.0, 2.0, Integer.MAX_VALUE, 1000, 12345.678901234));
+    }
+
+    private void assertSameAsJackson(CarParkDto carPark) throws IOException {
+        var out = new ByteArrayOutputStream();
+        var fragment = CarParkJsonFragments.encode(carPark.getAddress(), carPark.getLatitude(), carPark.getLongitude());
+        CarParkJsonFragments.write(out, fragment, carPark.getTotalLots(), carPark.getAvailableLots(), carPark.getDistanceMeters(), new byte[32]);
+
+        assertEquals(objectMapper.writeValueAsString(carPark), out.toString(StandardCharsets.UTF_8));
+    }
+}
@@ -0,0 +1,228 @@
+package com.example.carpark.index;
+
+import com.example.carpark.entity.CarPark;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CarParkSpatialIndexTest {
+    @Test
+    void nearestMatchesBruteForceOrdering() {
+        var carParks = randomCarParks(2000, 42);
+        var index = CarParkSpatialIndex.build(carParks);
+        var availableLots = new int[index.size()];
+        carParks.forEach(carPark -> availableLots[index.idOf(carPark.carParkNo)] = carPark.availableLots);
+        var random = new Random(7);
+
+        for (var i = 0; i < 50; i++) {
+            var latitude = 1.25 + random.nextDouble() * 0.2;
+            var longitude = 103.65 + random.nextDouble() * 0.35;
+
+            var expected = carParks.stream()
+                    .filter(carPark -> carPark.availableLots > 0)
+                    .sorted(Comparator.comparingLong((CarPark carPark) -> CarParkSpatialIndex.distanceKey(haversine(carPark, latitude, longitude)))
+                            .thenComparing(carPark -> carPark.carParkNo))
+                    .skip(5)
+                    .limit(10)
+                    .map(carPark -> carPark.carParkNo)
+                    .toList();
+            var actual = new ArrayList<String>();
+            for (var id : index.nearest(latitude, longitude, 10, 5, id -> availableLots[id] > 0)) {
+                actual.add(index.carParkNo(id));
+            }
+
+            assertEquals(expected, actual);
+        }
+    }
+
+    @Test
+    void nearestWithinRadiusMatchesBruteForce() {
+        var carParks = randomCarParks(2000, 11);
+        var index = CarParkSpatialIndex.build(carParks);
+        var random = new Random(3);
+
+        for (var i = 0; i < 50; i++) {
+            var latitude = 1.25 + random.nextDouble() * 0.2;
+            var longitude = 103.65 + random.nextDouble() * 0.35;
+            var radius = 200 + random.nextDouble() * 2000;
+
+            var expected = carParks.stream()
+                    .filter(carPark -> haversine(carPark, latitude, longitude) <= radius)
+                    .sorted(Comparator.comparingLong((CarPark carPark) -> CarParkSpatialIndex.distanceKey(haversine(carPark, latitude, longitude)))
+                            .thenComparing(carPark -> carPark.carParkNo))
+                    .limit(50)
+                    .map(carPark -> carPark.carParkNo)
+                    .toList();
+            var actual = new ArrayList<String>();
+            for (var id : index.nearest(latitude, longitude, 50, 0, radius, id -> true)) {
+                actual.add(index.carParkNo(id));
+            }
+
+            assertEquals(expected, actual);
+        }
+    }
+
+    @Test
+    void nearestBeyondMinMatchesBruteForce() {
+        var carParks = randomCarParks(2000, 31);
+        var index = CarParkSpatialIndex.build(carParks);
+        var random = new Random(5);
+
+        for (var i = 0; i < 50; i++) {
+            var latitude = 1.25 + random.nextDouble() * 0.2;
+            var longitude = 103.65 + random.nextDouble() * 0.35;
+            var minMeters = random.nextDouble() * 5000;
+
+            var expected = carParks.stream()
+                    .filter(carPark -> haversine(carPark, latitude, longitude) >= minMeters)
+                    .sorted(Comparator.comparingLong((CarPark carPark) -> CarParkSpatialIndex.distanceKey(haversine(carPark, latitude, longitude)))
+                            .thenComparing(carPark -> carPark.carParkNo))
+                    .limit(50)
+                    .map(carPark -> carPark.carParkNo)
+                    .toList();
+            var actual = new ArrayList<String>();
+            for (var id : index.nearest(latitude, longitude, 50, 0, minMeters, Double.POSITIVE_INFINITY, id -> true)) {
+                actual.add(index.carParkNo(id));
+            }
+
+            assertEquals(expected, actual);
+        }
+    }
+
+    @Test
+    void belowDistanceKeyIsNearerThanEveryDistanceOfTheKey() {
+        assertEquals(1.233, CarParkSpatialIndex.belowDistanceKey(1.2344), 1e-9);
+        assertTrue(CarParkSpatialIndex.distanceKey(CarParkSpatialIndex.belowDistanceKey(1.2335)) < CarParkSpatialIndex.distanceKey(1.2335));
+        assertEquals(0, CarParkSpatialIndex.belowDistanceKey(0.0002));
+    }
+
+    @Test
+    void withinMatchesBruteForce() {
+        var carParks = randomCarParks(2000, 23);
+        var index = CarParkSpatialIndex.build(carParks);
+        var random = new Random(5);
+
+        for (var i = 0; i < 50; i++) {
+            // Mostly small viewports, some larger than the occupied grid to take the full scan
+            var size = i % 10 == 0 ? 1.0 : random.nextDouble() * 0.05;
+            var minLatitude = 1.25 + random.nextDouble() * 0.2 - size / 2;
+            var minLongitude = 103.65 + random.nextDouble() * 0.35 - size / 2;
+            var maxLatitude = minLatitude + size;
+            var maxLongitude = minLongitude + size;
+
+            var expected = carParks.stream()
+                    .filter(carPark -> carPark.latitude >= minLatitude && carPark.latitude <= maxLatitude
+                            && carPark.longitude >= minLongitude && carPark.longitude <= maxLongitude)
+                    .map(carPark -> carPark.carParkNo)
+                    .sorted()
+                    .toList();
+            var actual = new ArrayList<String>();
+            for (var id : index.within(minLatitude, minLongitude, maxLatitude, maxLongitude, Integer.MAX_VALUE)) {
+                actual.add(index.carParkNo(id));
+            }
+
+            assertEquals(expected, actual);
+            assertEquals(Math.min(3, expected.size()), index.within(minLatitude, minLongitude, maxLatitude, maxLongitude, 3).length);
+        }
+    }
+
+    @Test
+    void nearestBreaksTiesByCarParkNo() {
+        var index = CarParkSpatialIndex.build(List.of(
+                carPark("B", 1.3, 103.8, 1),
+                carPark("A", 1.3, 103.8, 1),
+                carPark("C", 1.31, 103.8, 1)
+        ));
+
+        var ids = index.nearest(1.3, 103.8, 3, 0, id -> true);
+
+        assertEquals("A", index.carParkNo(ids[0]));
+        assertEquals("B", index.carParkNo(ids[1]));
+        assertEquals("C", index.carParkNo(ids[2]));
+    }
+
+    @Test
+    void nearestOrdersByWholeMillimetersThenCarParkNo() {
+        // B is a fraction of a millimeter nearer than A, both round to the same distance
+        var index = CarParkSpatialIndex.build(List.of(
+                carPark("B", 1.301, 103.8, 1),
+                carPark("A", 1.301 + 2e-9, 103.8, 1)
+        ));
+        var distanceA = index.distanceMeters(index.idOf("A"), 1.3, 103.8);
+        var distanceB = index.distanceMeters(index.idOf("B"), 1.3, 103.8);
+        assertTrue(distanceB < distanceA);
+        assertEquals(CarParkSpatialIndex.distanceKey(distanceA), CarParkSpatialIndex.distanceKey(distanceB));
+
+        var ids = index.nearest(1.3, 103.8, 1, 0, id -> true);
+
+        assertEquals(1, ids.length);
+        assertEquals("A", index.carParkNo(ids[0]));
+    }
+
+    @Test
+    void nearestWithOffsetBeyondResults() {
+        var index = CarParkSpatialIndex.build(List.of(carPark("A", 1.3, 103.8, 1)));
+
+        assertEquals(0, index.nearest(1.3, 103.8, 10, 1, id -> true).length);
+        assertEquals(0, index.nearest(1.3, 103.8, 10, Integer.MAX_VALUE, id -> true).length);
+        assertThrows(IllegalArgumentException.class, () -> index.nearest(1.3, 103.8, 10, -10, id -> true));
+    }
+
+    @Test
+    void distanceKeyRoundsHalfUpToMillimeters() {
+        assertEquals(1234, CarParkSpatialIndex.distanceKey(1.2344));
+        assertEquals(1235, CarParkSpatialIndex.distanceKey(1.2345001));
+        assertEquals(0, CarParkSpatialIndex.distanceKey(0));
+    }
+
+    @Test
+    void emptyIndex() {
+        var index = CarParkSpatialIndex.build(List.of());
+
+        assertEquals(0, index.size());
+        assertEquals(-1, index.idOf("A"));
+        assertEquals(0, index.nearest(1.3, 103.8, 10, 0, id -> true).length);
+    }
+
+    @Test
+    void distanceMeters() {
+        var index = CarParkSpatialIndex.build(List.of(carPark("A", 1.3, 103.8, 1)));
+
+        // One degree of latitude on the mean sphere is about 111.2 km
+        assertEquals(111_195, index.distanceMeters(0, 2.3, 103.8), 1);
+    }
+
+    private static List<CarPark> randomCarParks(int count, long seed) {
+        var random = new Random(seed);
+        var carParks = new ArrayList<CarPark>();
+        for (var i = 0; i < count; i++) {
+            carParks.add(carPark("CP" + i, 1.25 + random.nextDouble() * 0.2, 103.65 + random.nextDouble() * 0.35,
+                    random.nextInt(4)));
+        }
+        return carParks;
+    }
+
+    private static CarPark carPark(String carParkNo, double latitude, double longitude, int availableLots) {
+        return CarPark.builder()
+                .carParkNo(carParkNo)
+                .address("Address " + carParkNo)
+                .latitude(latitude)
+                .longitude(longitude)
+                .totalLots(10)
+                .availableLots(availableLots)
+                .build();
+    }
+
+    private static double haversine(CarPark carPark, double latitude, double longitude) {
+        var dLat = Math.toRadians(carPark.latitude - latitude);
+        var dLon = Math.toRadians(carPark.longitude - longitude);
+        var a = Math.pow(Math.sin(dLat / 2), 2)
+                + Math.cos(Math.toRadians(latitude)) * Math.cos(Math.toRadians(carPark.latitude)) * Math.pow(Math.sin(dLon / 2), 2);
+        return 2 * CarParkSpatialIndex.EARTH_RADIUS_METERS * Math.asin(Math.sqrt(a));
+    }
+}
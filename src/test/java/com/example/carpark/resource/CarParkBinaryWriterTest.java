@@ -0,0 +1,42 @@
+package com.example.carpark.resource;
+
+import com.example.carpark.entity.CarPark;
+import com.example.carpark.model.NearestCarPark;
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CarParkBinaryWriterTest {
+    @Test
+    void recordsAreFixedWidthWithAddressesAfter() {
+        var carParks = List.of(
+                new NearestCarPark(new CarPark("A1", "BLK 351-357 HOUGANG AVENUE 7", 1.3723422711738515, 103.89908052009055, 232, 78, null), 253.7),
+                new NearestCarPark(new CarPark("A2", null, 1.37, 103.89, 43, 30, null), 336.9));
+
+        var buffer = ByteBuffer.wrap(CarParkBinaryWriter.encode(carParks)).order(ByteOrder.LITTLE_ENDIAN);
+
+        assertEquals(2, buffer.getInt());
+        buffer.position(Integer.BYTES + CarParkBinaryWriter.RECORD_BYTES);
+        assertEquals(1.37, buffer.getDouble());
+        assertEquals(103.89, buffer.getDouble());
+        assertEquals(336.9, buffer.getDouble());
+        assertEquals(43, buffer.getInt());
+        assertEquals(30, buffer.getInt());
+
+        var address = new byte[buffer.getShort()];
+        buffer.get(address);
+        assertEquals("BLK 351-357 HOUGANG AVENUE 7", new String(address, StandardCharsets.UTF_8));
+        assertEquals(0, buffer.getShort());
+        assertFalse(buffer.hasRemaining());
+    }
+
+    @Test
+    void emptyListIsOnlyTheCount() {
+        assertArrayEquals(new byte[Integer.BYTES], CarParkBinaryWriter.encode(List.of()));
+    }
+}
@@ -1,20 +1,39 @@
 package com.example.carpark.resource;
 
 import com.example.carpark.entity.CarPark;
+import com.example.carpark.exception.CarParkException;
+import com.example.carpark.index.CarParkJsonFragments;
+import com.example.carpark.model.CarParkTile;
+import com.example.carpark.model.CsvImportMode;
+import com.example.carpark.model.CsvImportSummary;
+import com.example.carpark.model.NearestCarPark;
+import com.example.carpark.model.NearestCursor;
+import com.example.carpark.service.AvailabilityHistoryService;
 import com.example.carpark.service.CarParkService;
 import io.quarkus.test.InjectMock;
 import io.quarkus.test.junit.QuarkusTest;
 import io.smallrye.mutiny.Uni;
 import org.junit.jupiter.api.Test;
 
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
 import java.sql.Timestamp;
+import java.time.Duration;
+import java.util.Collections;
 import java.util.List;
 
 import static io.restassured.RestAssured.given;
 import static org.hamcrest.CoreMatchers.containsString;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.hamcrest.Matchers.is;
 import static org.hamcrest.Matchers.not;
+import static org.hamcrest.Matchers.nullValue;
 import static org.mockito.ArgumentMatchers.any;
-import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.argThat;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 @QuarkusTest
@@ -22,16 +41,46 @@ class CarParkResourceTest {
     @InjectMock
     CarParkService carParkService;
 
+    @InjectMock
+    AvailabilityHistoryService availabilityHistoryService;
+
     @Test
     void importCsvDataSuccessfully() {
         var csvData = "car_park_no,address,x_coord,y_coord\nCP1,Address1,1.0,1.0\nCP2,Address2,2.0,2.0";
-        when(carParkService.ingestCarParkInfos(anyList())).thenReturn(Uni.createFrom().voidItem());
+        when(carParkService.importCsvFile(any(), eq(CsvImportMode.SKIP_EXISTING)))
+                .thenReturn(Uni.createFrom().item(CsvImportSummary.builder().mode("skip").inserted(2).build()));
+        given()
+                .multiPart("file", "carparks.csv", csvData.getBytes(), "text/csv")
+                .when().post("/v1/carparks/import-csv")
+                .then()
+                .statusCode(202)
+                .body(containsString("CSV data imported successfully"))
+                .body(containsString("\"inserted\":2"));
+    }
+
+    @Test
+    void importCsvDataInUpsertMode() {
+        var csvData = "car_park_no,address,x_coord,y_coord\nCP1,Address1,1.0,1.0";
+        when(carParkService.importCsvFile(any(), eq(CsvImportMode.UPSERT)))
+                .thenReturn(Uni.createFrom().item(CsvImportSummary.builder().mode("upsert").updated(1).build()));
         given()
                 .multiPart("file", "carparks.csv", csvData.getBytes(), "text/csv")
+                .queryParam("mode", "upsert")
                 .when().post("/v1/carparks/import-csv")
                 .then()
                 .statusCode(202)
-                .body(containsString("CSV data imported successfully"));
+                .body(containsString("\"updated\":1"));
+    }
+
+    @Test
+    void importCsvDataWithUnknownMode() {
+        given()
+                .multiPart("file", "carparks.csv", "car_park_no,address,x_coord,y_coord".getBytes(), "text/csv")
+                .queryParam("mode", "replace")
+                .when().post("/v1/carparks/import-csv")
+                .then()
+                .statusCode(400)
+                .body(containsString("Mode must be skip or upsert"));
     }
 
     @Test
@@ -40,15 +89,26 @@ class CarParkResourceTest {
                 .multiPart("file", "carparks.csv", "invalid content\ninvalid conten".getBytes(), "text/csv")
                 .when().post("/v1/carparks/import-csv")
                 .then()
+                .statusCode(400)
+                .body(containsString("car_park_no,address,x_coord,y_coord"));
+        verify(carParkService, never()).importCsvFile(any(), any());
+    }
+
+    @Test
+    void importCsvDataWhenImportFails() {
+        when(carParkService.importCsvFile(any(), any())).thenReturn(Uni.createFrom().failure(new CarParkException("Failed to parse CSV data")));
+        given()
+                .multiPart("file", "carparks.csv", "car_park_no,address,x_coord,y_coord\nCP1,Address1,x,y".getBytes(), "text/csv")
+                .when().post("/v1/carparks/import-csv")
+                .then()
                 .statusCode(500)
                 .body(containsString("CSV import failed"));
     }
 
     @Test
     void getNearestCarParksSuccessfully() {
-        var carParks = List.of(new CarPark("CP1", "Address1", 1.0, 2.0, 10, 5, new Timestamp(System.currentTimeMillis())));
-        when(carParkService.getNearestCarParks(any(Double.class), any(Double.class), any(Integer.class), any(Integer.class)))
-                .thenReturn(Uni.createFrom().item(carParks));
+        var carParks = List.of(new NearestCarPark(new CarPark("CP1", "Address1", 1.0, 2.0, 10, 5, new Timestamp(System.currentTimeMillis())), 100.0));
+        when(carParkService.getNearestCarParks(any())).thenReturn(Uni.createFrom().item(carParks));
         given()
                 .queryParam("latitude", 1.0)
                 .queryParam("longitude", 2.0)
@@ -62,7 +122,161 @@ class CarParkResourceTest {
                 .body(containsString("2.0"))
                 .body(containsString("10"))
                 .body(containsString("5"))
-                .body(not(containsString("CP1")));
+                .body(not(containsString("CP1")))
+                .body(containsString("\"distanceMeters\":100.0"))
+                .header("X-Next-Cursor", nullValue());
+    }
+
+    @Test
+    void getNearestCarParksInBinary() {
+        var carParks = List.of(new NearestCarPark(new CarPark("CP1", "Address1", 1.0, 2.0, 10, 5, new Timestamp(System.currentTimeMillis())), 100.0));
+        when(carParkService.getNearestCarParks(any())).thenReturn(Uni.createFrom().item(carParks));
+        var body = given()
+                .accept(CarParkBinaryWriter.MEDIA_TYPE)
+                .queryParam("latitude", 1.0)
+                .queryParam("longitude", 2.0)
+                .when().get("/v1/carparks/nearest")
+                .then()
+                .statusCode(200)
+                .contentType(CarParkBinaryWriter.MEDIA_TYPE)
+                .extract().asByteArray();
+
+        var buffer = ByteBuffer.wrap(body).order(ByteOrder.LITTLE_ENDIAN);
+        assertEquals(1, buffer.getInt());
+        assertEquals(1.0, buffer.getDouble());
+        assertEquals(2.0, buffer.getDouble());
+        assertEquals(100.0, buffer.getDouble());
+        assertEquals(10, buffer.getInt());
+        assertEquals(5, buffer.getInt());
+        assertEquals("Address1".length(), buffer.getShort());
+    }
+
+    @Test
+    void getCarParksWithinRevalidatesByEntityTag() {
+        var carPark = new CarPark("CP1", "Address1", 1.3, 103.8, 10, 5, null);
+        var tile = new CarParkTile("1f2e", List.of(carPark), List.of(CarParkJsonFragments.encode(carPark.address, carPark.latitude, carPark.longitude)));
+        when(carParkService.getCarParksWithin(any(), anyInt())).thenReturn(Uni.createFrom().item(tile));
+        given()
+                .queryParam("bbox", "103.7,1.2,103.9,1.4")
+                .when().get("/v1/carparks/within")
+                .then()
+                .statusCode(200)
+                .header("ETag", "W/\"1f2e\"")
+                .header("Cache-Control", containsString("no-cache"))
+                .body(is("[{\"address\":\"Address1\",\"latitude\":1.3,\"longitude\":103.8,\"totalLots\":10,\"availableLots\":5}]"));
+        given()
+                .queryParam("bbox", "103.7,1.2,103.9,1.4")
+                .header("If-None-Match", "W/\"1f2e\"")
+                .when().get("/v1/carparks/within")
+                .then()
+                .statusCode(304);
+    }
+
+    @Test
+    void getCarParkTile() {
+        when(carParkService.getCarParksWithin(any(), anyInt())).thenReturn(Uni.createFrom().item(new CarParkTile("0", List.of(), List.of())));
+        given()
+                .when().get("/v1/carparks/tiles/12/3229/2032")
+                .then()
+                .statusCode(200)
+                .body(is("[]"));
+        verify(carParkService).getCarParksWithin(argThat(box -> box.contains(1.3521, 103.8198)), anyInt());
+    }
+
+    @Test
+    void getCarParksWithinInvalidArea() {
+        given()
+                .queryParam("bbox", "103.9,1.2,103.7,1.4")
+                .when().get("/v1/carparks/within")
+                .then()
+                .statusCode(400);
+        given()
+                .when().get("/v1/carparks/tiles/2/4/0")
+                .then()
+                .statusCode(400);
+    }
+
+    @Test
+    void getNearestCarParksWithRadiusAndThreshold() {
+        when(carParkService.getNearestCarParks(any())).thenReturn(Uni.createFrom().item(List.of()));
+        given()
+                .queryParam("latitude", 1.0)
+                .queryParam("longitude", 2.0)
+                .queryParam("radius_m", 2000)
+                .queryParam("min_available", 10)
+                .when().get("/v1/carparks/nearest")
+                .then()
+                .statusCode(200);
+        verify(carParkService).getNearestCarParks(argThat(query -> query.getRadiusMeters() == 2000.0 && query.getMinAvailable() == 10));
+    }
+
+    @Test
+    void getNearestCarParksWithInvalidFilters() {
+        given()
+                .queryParam("latitude", 1.0)
+                .queryParam("longitude", 2.0)
+                .queryParam("radius_m", -5)
+                .when().get("/v1/carparks/nearest")
+                .then()
+                .statusCode(400)
+                .body(containsString("radius_m"));
+        given()
+                .queryParam("latitude", 1.0)
+                .queryParam("longitude", 2.0)
+                .queryParam("min_available", 0)
+                .when().get("/v1/carparks/nearest")
+                .then()
+                .statusCode(400)
+                .body(containsString("min_available"));
+    }
+
+    @Test
+    void getNearestCarParksWithNextCursor() {
+        var carParks = List.of(new NearestCarPark(new CarPark("CP1", "Address1", 1.0, 2.0, 10, 5, new Timestamp(System.currentTimeMillis())), 100.0));
+        when(carParkService.getNearestCarParks(any())).thenReturn(Uni.createFrom().item(carParks));
+        var expectedCursor = new NearestCursor(1.0, 2.0, 100.0, "CP1").encode();
+        given()
+                .queryParam("latitude", 1.0)
+                .queryParam("longitude", 2.0)
+                .queryParam("per_page", 1)
+                .when().get("/v1/carparks/nearest")
+                .then()
+                .statusCode(200)
+                .header("X-Next-Cursor", expectedCursor)
+                .header("Link", containsString("cursor=" + expectedCursor));
+
+        given()
+                .queryParam("latitude", 1.0)
+                .queryParam("longitude", 2.0)
+                .queryParam("per_page", 1)
+                .queryParam("cursor", expectedCursor)
+                .when().get("/v1/carparks/nearest")
+                .then()
+                .statusCode(200);
+        verify(carParkService).getNearestCarParks(argThat(query -> query.getAfter() != null && "CP1".equals(query.getAfter().getCarParkNo())));
+    }
+
+    @Test
+    void getNearestCarParksWithCursorForOtherCoordinates() {
+        given()
+                .queryParam("latitude", 1.5)
+                .queryParam("longitude", 2.0)
+                .queryParam("cursor", new NearestCursor(1.0, 2.0, 100.0, "CP1").encode())
+                .when().get("/v1/carparks/nearest")
+                .then()
+                .statusCode(400)
+                .body(containsString("Cursor is invalid or was issued for other coordinates"));
+    }
+
+    @Test
+    void getNearestCarParksWithMalformedCursor() {
+        given()
+                .queryParam("latitude", 1.0)
+                .queryParam("longitude", 2.0)
+                .queryParam("cursor", "not-a-cursor")
+                .when().get("/v1/carparks/nearest")
+                .then()
+                .statusCode(400);
     }
 
     @Test
@@ -101,4 +315,75 @@ class CarParkResourceTest {
                 .statusCode(400)
                 .body(containsString("Page and per_page must be positive integers"));
     }
-}
\ No newline at end of file
+
+    @Test
+    void getNearestCarParksBatchSuccessfully() {
+        var carPark = new NearestCarPark(new CarPark("CP1", "Address1", 1.0, 2.0, 10, 5, new Timestamp(System.currentTimeMillis())), 100.0);
+        when(carParkService.getNearestCarParksBatch(any())).thenReturn(Uni.createFrom().item(List.of(List.of(carPark), List.of())));
+        given()
+                .contentType("application/json")
+                .body("""
+                        {"origins":[{"latitude":1.0,"longitude":2.0},{"latitude":1.5,"longitude":2.5}],"perPage":3}""")
+                .when().post("/v1/carparks/nearest:batch")
+                .then()
+                .statusCode(200)
+                .body("size()", is(2))
+                .body("[0].carParks[0].address", is("Address1"))
+                .body("[1].latitude", is(1.5f))
+                .body("[1].carParks.size()", is(0));
+        verify(carParkService).getNearestCarParksBatch(argThat(queries -> queries.size() == 2 && queries.getFirst().getLimit() == 3));
+    }
+
+    @Test
+    void getNearestCarParksBatchWithInvalidOrigins() {
+        given()
+                .contentType("application/json")
+                .body("""
+                        {"origins":[]}""")
+                .when().post("/v1/carparks/nearest:batch")
+                .then()
+                .statusCode(400)
+                .body(containsString("Origins must contain between 1 and 1000 coordinates"));
+        given()
+                .contentType("application/json")
+                .body("""
+                        {"origins":[{"latitude":100.0,"longitude":2.0}]}""")
+                .when().post("/v1/carparks/nearest:batch")
+                .then()
+                .statusCode(400)
+                .body(containsString("Latitude must be between -90 and 90, longitude between -180 and 180"));
+        given()
+                .contentType("application/json")
+                .body("{\"perPage\":100,\"origins\":[" + String.join(",", Collections.nCopies(101, "{\"latitude\":1.0,\"longitude\":2.0}")) + "]}")
+                .when().post("/v1/carparks/nearest:batch")
+                .then()
+                .statusCode(400)
+                .body(containsString("Origins times perPage must not exceed 10000"));
+        given()
+                .contentType("application/json")
+                .body("{\"perPage\":101,\"origins\":[{\"latitude\":1.0,\"longitude\":2.0}]}")
+                .when().post("/v1/carparks/nearest:batch")
+                .then()
+                .statusCode(400)
+                .body(containsString("Batch perPage must be at most 100"));
+    }
+
+    @Test
+    void getAvailabilityHistoryWithStepInAnyCase() {
+        when(availabilityHistoryService.getHistory(any(), any(), any(), any())).thenReturn(Uni.createFrom().item(List.of()));
+        given()
+                .queryParam("from", "2025-03-01T00:00:00")
+                .queryParam("to", "2025-03-10T00:00:00")
+                .queryParam("step", "1D")
+                .when().get("/v1/carparks/CP1/history")
+                .then()
+                .statusCode(200);
+        given()
+                .queryParam("step", "30S")
+                .when().get("/v1/carparks/CP1/history")
+                .then()
+                .statusCode(400)
+                .body(containsString("at least 1 minute"));
+        verify(availabilityHistoryService).getHistory(eq("CP1"), any(), any(), eq(Duration.ofDays(1)));
+    }
+}
@@ -0,0 +1,131 @@
+package com.example.carpark.service;
+
+import com.example.carpark.config.CarParkConfig;
+import com.example.carpark.model.AvailabilityDeltaMessage;
+import com.example.carpark.model.CarParkLotSnapshot;
+import io.smallrye.mutiny.Uni;
+import io.vertx.mutiny.redis.client.RedisConnection;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.*;
+
+class AvailabilityFanOutServiceTest {
+    RedisService redisService;
+    CarParkIndexService carParkIndexService;
+    AvailabilityFanOutService availabilityFanOutService;
+    AtomicLong sequence;
+    List<byte[]> published;
+    Consumer<byte[]> subscriber;
+
+    @BeforeEach
+    void setUp() {
+        var fanOut = mock(CarParkConfig.FanOut.class);
+        when(fanOut.enabled()).thenReturn(true);
+        when(fanOut.reconnectDelayMillis()).thenReturn(5000L);
+        var carParkConfig = mock(CarParkConfig.class);
+        when(carParkConfig.fanOut()).thenReturn(fanOut);
+
+        sequence = new AtomicLong();
+        published = new ArrayList<>();
+        redisService = mock(RedisService.class);
+        when(redisService.incrementAvailabilityDeltaSequence()).thenAnswer(invocation -> Uni.createFrom().item(sequence.incrementAndGet()));
+        when(redisService.getAvailabilityDeltaSequence()).thenAnswer(invocation -> Uni.createFrom().item(sequence.get()));
+        when(redisService.publishAvailabilityDelta(any())).thenAnswer(invocation -> {
+            published.add(invocation.getArgument(0));
+            return Uni.createFrom().item(1);
+        });
+        when(redisService.subscribeAvailabilityDeltas(any(), any())).thenAnswer(invocation -> {
+            subscriber = invocation.getArgument(0);
+            return Uni.createFrom().item(mock(RedisConnection.class));
+        });
+
+        carParkIndexService = mock(CarParkIndexService.class);
+        when(carParkIndexService.publishAvailability(any(), anyLong())).thenAnswer(invocation -> invocation.getArgument(0));
+        when(carParkIndexService.reloadAvailability()).thenAnswer(invocation -> Uni.createFrom().item(new CarParkLotSnapshot()));
+
+        availabilityFanOutService = new AvailabilityFanOutService(carParkConfig, redisService, carParkIndexService, mock(AvailabilityStreamService.class));
+        availabilityFanOutService.onStart(null);
+    }
+
+    @Test
+    void deltasRoundTripInBinary() {
+        var encoded = new AvailabilityDeltaMessage(42, 1000L, changes("A", "B")).encode();
+
+        var decoded = AvailabilityDeltaMessage.decode(encoded).orElseThrow();
+
+        assertEquals(42, decoded.getSequence());
+        assertEquals(1000L, decoded.getLastUpdated());
+        assertEquals(2, decoded.getChanges().size());
+        assertEquals("B", decoded.getChanges().carParkNo(1));
+        assertEquals(7, decoded.getChanges().availableLots(1));
+        assertTrue(AvailabilityDeltaMessage.decode(Arrays.copyOf(encoded, encoded.length - 1)).isEmpty());
+    }
+
+    @Test
+    void contiguousDeltasSkipTheDatabase() {
+        assertTrue(availabilityFanOutService.catchUp().await().indefinitely()); // Nothing published yet
+
+        receive(1, "A");
+        receive(2, "B");
+
+        assertFalse(availabilityFanOutService.catchUp().await().indefinitely());
+        verify(carParkIndexService, times(2)).publishAvailability(any(), eq(1000L));
+        verify(carParkIndexService, times(1)).reloadAvailability();
+    }
+
+    @Test
+    void missedDeltaReloadsOnce() {
+        receive(1, "A");
+        sequence.incrementAndGet(); // Delta 2 is lost
+        receive(3, "C");
+
+        assertTrue(availabilityFanOutService.catchUp().await().indefinitely());
+        assertFalse(availabilityFanOutService.catchUp().await().indefinitely());
+    }
+
+    @Test
+    void ownDeltasAreNotAppliedTwice() {
+        availabilityFanOutService.publish(changes("A"), 1000L).await().indefinitely();
+        subscriber.accept(published.getFirst());
+
+        verify(carParkIndexService, never()).publishAvailability(any(), anyLong());
+        assertFalse(availabilityFanOutService.catchUp().await().indefinitely());
+    }
+
+    @Test
+    void importAnnouncementsReachTheListenerWithoutTakingASequence() {
+        var announcements = new AtomicLong();
+        availabilityFanOutService.onImport(announcements::incrementAndGet);
+        receive(1, "A");
+
+        availabilityFanOutService.publishImport().await().indefinitely();
+        subscriber.accept(published.getFirst());
+
+        assertEquals(1, announcements.get());
+        assertTrue(AvailabilityDeltaMessage.decode(published.getFirst()).isEmpty());
+        assertFalse(availabilityFanOutService.catchUp().await().indefinitely()); // Delta 1 is still applied
+    }
+
+    private void receive(long number, String carParkNo) {
+        sequence.set(number);
+        subscriber.accept(new AvailabilityDeltaMessage(number, 1000L, changes(carParkNo)).encode());
+    }
+
+    private static CarParkLotSnapshot changes(String... carParkNos) {
+        var changes = new CarParkLotSnapshot();
+        for (var carParkNo : carParkNos) {
+            changes.add(carParkNo, 10, 7);
+        }
+        return changes;
+    }
+}
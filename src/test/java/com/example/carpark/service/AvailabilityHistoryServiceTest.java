@@ -0,0 +1,55 @@
+package com.example.carpark.service;
+
+import com.example.carpark.model.AvailabilityHistoryPoint;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class AvailabilityHistoryServiceTest {
+    static final LocalDateTime FROM = LocalDateTime.of(2025, 3, 10, 8, 0);
+    static final Duration STEP = Duration.ofHours(1);
+
+    @Test
+    void bucketsWithoutChangesCarryTheLastValueOver() {
+        var series = List.of(point(FROM.plusHours(1), 10, 30, 25));
+
+        var points = AvailabilityHistoryService.fillGaps(Optional.of(new int[]{100, 40}), series, FROM, FROM.plusHours(4), STEP);
+
+        assertEquals(4, points.size());
+        assertEquals(40, points.get(0).getLastAvailable());
+        assertEquals(0, points.get(0).getSamples());
+        assertEquals(FROM.plusHours(1), points.get(1).getTime());
+        assertEquals(10, points.get(1).getMinAvailable());
+        assertEquals(3, points.get(1).getSamples());
+        assertEquals(25, points.get(2).getMinAvailable());
+        assertEquals(25, points.get(3).getMaxAvailable());
+        assertEquals(100, points.get(3).getTotalLots());
+    }
+
+    @Test
+    void bucketsBeforeTheFirstKnownValueAreLeftOut() {
+        var series = List.of(point(FROM.plusHours(2), 5, 5, 5));
+
+        var points = AvailabilityHistoryService.fillGaps(Optional.empty(), series, FROM, FROM.plusHours(3), STEP);
+
+        assertEquals(1, points.size());
+        assertEquals(FROM.plusHours(2), points.getFirst().getTime());
+    }
+
+    private static AvailabilityHistoryPoint point(LocalDateTime time, int min, int max, int last) {
+        return AvailabilityHistoryPoint.builder()
+                .time(time)
+                .totalLots(100)
+                .minAvailable(min)
+                .maxAvailable(max)
+                .avgAvailable((min + max) / 2.0)
+                .lastAvailable(last)
+                .samples(3)
+                .build();
+    }
+}
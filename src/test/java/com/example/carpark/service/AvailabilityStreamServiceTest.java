@@ -0,0 +1,62 @@
+package com.example.carpark.service;
+
+import com.example.carpark.model.AvailabilityDelta;
+import com.example.carpark.model.CarParkLotSnapshot;
+import io.smallrye.mutiny.helpers.test.AssertSubscriber;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.ArrayList;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+class AvailabilityStreamServiceTest {
+    CarParkIndexService carParkIndexService;
+    AvailabilityStreamService availabilityStreamService;
+
+    @BeforeEach
+    void setUp() {
+        carParkIndexService = mock(CarParkIndexService.class);
+        when(carParkIndexService.toDeltas(any())).thenAnswer(invocation -> {
+            CarParkLotSnapshot changes = invocation.getArgument(0);
+            var deltas = new ArrayList<AvailabilityDelta>();
+            for (var slot = 0; slot < changes.size(); slot++) {
+                deltas.add(new AvailabilityDelta(changes.carParkNo(slot), 1.3, 103.8, changes.totalLots(slot), changes.availableLots(slot)));
+            }
+            return deltas;
+        });
+        availabilityStreamService = new AvailabilityStreamService(carParkIndexService);
+    }
+
+    @Test
+    void subscribersOnlyReceiveMatchingChanges() {
+        var subscriber = availabilityStreamService.subscribe(delta -> delta.getCarParkNo().equals("A"))
+                .subscribe().withSubscriber(AssertSubscriber.create(10));
+
+        availabilityStreamService.publish(changes("B"));
+        availabilityStreamService.publish(changes("A", "B"));
+
+        var items = subscriber.awaitItems(1, Duration.ofSeconds(5)).getItems();
+        assertEquals(1, items.getFirst().size());
+        assertEquals("A", items.getFirst().getFirst().getCarParkNo());
+        subscriber.cancel();
+    }
+
+    @Test
+    void nothingIsConvertedWithoutSubscribers() {
+        availabilityStreamService.publish(changes("A"));
+
+        verify(carParkIndexService, never()).toDeltas(any());
+    }
+
+    private static CarParkLotSnapshot changes(String... carParkNos) {
+        var changes = new CarParkLotSnapshot();
+        for (var carParkNo : carParkNos) {
+            changes.add(carParkNo, 100, 10);
+        }
+        return changes;
+    }
+}
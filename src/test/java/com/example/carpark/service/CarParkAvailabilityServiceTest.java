@@ -1,15 +1,16 @@
 package com.example.carpark.service;
 
-import com.example.carpark.model.CarParkAvailability;
 import com.fasterxml.jackson.annotation.JsonInclude;
-import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.DeserializationFeature;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import io.vertx.mutiny.core.Vertx;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 
+import java.nio.charset.StandardCharsets;
+
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
 
 class CarParkAvailabilityServiceTest {
     ObjectMapper objectMapper = new ObjectMapper().setSerializationInclusion(JsonInclude.Include.NON_NULL)
@@ -19,11 +20,11 @@ class CarParkAvailabilityServiceTest {
 
     @BeforeEach
     void setUp() {
-        carParkAvailabilityService = new CarParkAvailabilityService(null, null, objectMapper, Vertx.vertx());
+        carParkAvailabilityService = new CarParkAvailabilityService(null, null, null, null, null, null, null, objectMapper, Vertx.vertx());
     }
 
     @Test
-    void parseAvailabilityWithValidData() throws JsonProcessingException {
+    void parseAvailabilityWithValidData() {
         var json = """
                 {
                     "items": [{
@@ -52,30 +53,141 @@ class CarParkAvailabilityServiceTest {
                     ]
                 }
                 """;
-        var carParkAvailability = objectMapper.readValue(json, CarParkAvailability.class);
-        var result = carParkAvailabilityService.parseAvailability(carParkAvailability);
+        var result = carParkAvailabilityService.parseAvailability(json.getBytes(StandardCharsets.UTF_8));
         assertEquals(2, result.size());
-        assertEquals(105, result.get("HE12").getTotalLots());
-        assertEquals(99, result.get("HE12").getAvailableLots());
-        assertEquals(1033, result.get("PL90").getTotalLots());
-        assertEquals(711, result.get("PL90").getAvailableLots());
+        assertEquals("2025-03-10T14:43:36+08:00", result.getTimestamp());
+        assertEquals(105, result.totalLots(result.slotOf("HE12")));
+        assertEquals(99, result.availableLots(result.slotOf("HE12")));
+        assertEquals(1033, result.totalLots(result.slotOf("PL90")));
+        assertEquals(711, result.availableLots(result.slotOf("PL90")));
     }
 
     @Test
-    void parseAvailabilityWithEmptyData() throws JsonProcessingException {
+    void parseAvailabilityMergesLotTypesAndDuplicates() {
         var json = """
                 {
+                    "api_info": {"status": "healthy"},
                     "items": [{
-                            "carpark_data": [
+                            "carpark_data": [{
+                                    "carpark_info": [{
+                                            "total_lots": "100",
+                                            "lot_type": "C",
+                                            "lots_available": "40"
+                                        }, {
+                                            "total_lots": "20",
+                                            "lot_type": "Y",
+                                            "lots_available": "invalid"
+                                        }
+                                    ],
+                                    "carpark_number": "HE12"
+                                }, {
+                                    "carpark_number": "HE12",
+                                    "carpark_info": [{
+                                            "total_lots": "5",
+                                            "lots_available": "5"
+                                        }
+                                    ]
+                                }
                             ]
                         }
                     ]
                 }
                 """;
-        var carParkAvailability = objectMapper.readValue(json, CarParkAvailability.class);
+        var result = carParkAvailabilityService.parseAvailability(json.getBytes(StandardCharsets.UTF_8));
+        assertEquals(1, result.size());
+        assertEquals(125, result.totalLots(result.slotOf("HE12")));
+        assertEquals(45, result.availableLots(result.slotOf("HE12")));
+    }
 
-        var result = carParkAvailabilityService.parseAvailability(carParkAvailability);
+    @Test
+    void parseAvailabilityWithEmptyData() {
+        var json = """
+                {
+                    "items": [{
+                            "carpark_data": [
+                            ]
+                        }
+                    ]
+                }
+                """;
+        var result = carParkAvailabilityService.parseAvailability(json.getBytes(StandardCharsets.UTF_8));
 
         assertEquals(0, result.size());
     }
+
+    @Test
+    void parseAvailabilitySkipsItemsThatAreNotObjects() {
+        var json = """
+                {
+                    "items": [null, [1, 2], {
+                            "carpark_data": [
+                                {
+                                    "carpark_info": [
+                                        {
+                                            "total_lots": "100",
+                                            "lots_available": "40"
+                                        }
+                                    ],
+                                    "carpark_number": "HE12"
+                                }
+                            ]
+                        }
+                    ]
+                }
+                """;
+        var result = carParkAvailabilityService.parseAvailability(json.getBytes(StandardCharsets.UTF_8));
+
+        assertEquals(1, result.size());
+        assertEquals(40, result.availableLots(result.slotOf("HE12")));
+    }
+
+    @Test
+    void parseAvailabilitySkipsCarParksThatAreNotObjects() {
+        var json = """
+                {
+                    "items": [{
+                            "carpark_data": [
+                                {
+                                    "carpark_info": [{"total_lots": "100", "lots_available": "40"}],
+                                    "carpark_number": "HE12"
+                                },
+                                null,
+                                {
+                                    "carpark_info": [null, {"total_lots": "50", "lots_available": "10"}],
+                                    "carpark_number": "PL90"
+                                }
+                            ]
+                        }, {
+                            "carpark_data": [{"carpark_info": [], "carpark_number": "IGNORED"}]
+                        }
+                    ]
+                }
+                """;
+        var result = carParkAvailabilityService.parseAvailability(json.getBytes(StandardCharsets.UTF_8));
+
+        assertEquals(2, result.size());
+        assertEquals(40, result.availableLots(result.slotOf("HE12")));
+        assertEquals(50, result.totalLots(result.slotOf("PL90")));
+        assertEquals(10, result.availableLots(result.slotOf("PL90")));
+    }
+
+    @Test
+    void parseAvailabilityTakesCountsOutOfIntRangeAsZero() {
+        var json = """
+                {"items": [{"carpark_data": [{"carpark_info": [{"total_lots": 99999999999, "lots_available": 7}], "carpark_number": "BE3"}]}]}
+                """;
+        var result = carParkAvailabilityService.parseAvailability(json.getBytes(StandardCharsets.UTF_8));
+
+        assertEquals(0, result.totalLots(result.slotOf("BE3")));
+        assertEquals(7, result.availableLots(result.slotOf("BE3")));
+    }
+
+    @Test
+    void hashChangesOnlyWithContent() {
+        var json = "{\"items\":[{\"timestamp\":\"2025-03-10T14:43:36+08:00\",\"carpark_data\":[]}]}";
+
+        assertEquals(CarParkAvailabilityService.hash(json.getBytes(StandardCharsets.UTF_8)), CarParkAvailabilityService.hash(json.getBytes(StandardCharsets.UTF_8)));
+        assertNotEquals(CarParkAvailabilityService.hash(json.getBytes(StandardCharsets.UTF_8)),
+                CarParkAvailabilityService.hash(json.replace("14:43:36", "14:44:36").getBytes(StandardCharsets.UTF_8)));
+    }
 }
@@ -0,0 +1,171 @@
+package com.example.carpark.service;
+
+import com.example.carpark.entity.CarPark;
+import com.example.carpark.model.BoundingBox;
+import com.example.carpark.model.CarParkLotSnapshot;
+import com.example.carpark.model.NearestCarPark;
+import com.example.carpark.model.NearestCarParkQuery;
+import com.example.carpark.model.NearestCursor;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CarParkIndexServiceTest {
+    CarParkIndexService carParkIndexService;
+
+    @BeforeEach
+    void setUp() {
+        carParkIndexService = new CarParkIndexService(null);
+        carParkIndexService.rebuild(List.of(
+                carPark("A", 1.300, 103.800, 10, 5),
+                carPark("B", 1.301, 103.800, 20, 0),
+                carPark("C", 1.302, 103.800, 30, 3)
+        ));
+    }
+
+    @Test
+    void findNearestWithAvailabilitySkipsFullCarParks() {
+        var result = carParkIndexService.findNearestWithAvailability(query(10, 0, null));
+
+        assertEquals(List.of("A", "C"), carParkNos(result));
+        assertEquals(5, result.getFirst().getCarPark().availableLots);
+        assertEquals(0.0, result.getFirst().getDistanceMeters(), 1e-6);
+        assertEquals(222.4, result.get(1).getDistanceMeters(), 0.1);
+    }
+
+    @Test
+    void findNearestWithAvailabilityWithinRadiusAndThreshold() {
+        var withinRadius = query(10, 0, null);
+        withinRadius.setRadiusMeters(150.0);
+        var withThreshold = query(10, 0, null);
+        withThreshold.setMinAvailable(4);
+
+        assertEquals(List.of("A"), carParkNos(carParkIndexService.findNearestWithAvailability(withinRadius)));
+        assertEquals(List.of("A"), carParkNos(carParkIndexService.findNearestWithAvailability(withThreshold)));
+    }
+
+    @Test
+    void findNearestWithAvailabilityAfterCursor() {
+        var firstPage = carParkIndexService.findNearestWithAvailability(query(1, 0, null));
+        var secondPage = carParkIndexService.findNearestWithAvailability(query(1, 0, firstPage.getLast().cursor(query(1, 0, null))));
+        var offsetPage = carParkIndexService.findNearestWithAvailability(query(1, 1, null));
+
+        assertEquals(List.of("A"), carParkNos(firstPage));
+        assertEquals(List.of("C"), carParkNos(secondPage));
+        assertEquals(carParkNos(offsetPage), carParkNos(secondPage));
+
+        var lastPage = carParkIndexService.findNearestWithAvailability(query(1, 0, secondPage.getLast().cursor(query(1, 0, null))));
+        assertTrue(lastPage.isEmpty());
+    }
+
+    @Test
+    void findNearestWithAvailabilityAfterCursorWithSlightlyDifferentDistance() {
+        // As issued by the database, whose distances may differ from the index in the last digits
+        var first = carParkIndexService.findNearestWithAvailability(query(1, 0, null)).getFirst();
+        for (var difference : new double[]{-1e-7, 1e-7}) {
+            var cursor = first.cursor(query(1, 0, null));
+            cursor.setDistanceMeters(first.getDistanceMeters() + difference);
+
+            assertEquals(List.of("C"), carParkNos(carParkIndexService.findNearestWithAvailability(query(1, 0, cursor))));
+        }
+    }
+
+    @Test
+    void findNearestWithAvailabilityBatchMatchesSingleQueries() {
+        var queries = new ArrayList<NearestCarParkQuery>();
+        for (var i = 0; i < 100; i++) {
+            queries.add(NearestCarParkQuery.builder()
+                    .latitude(1.295 + i * 0.0001)
+                    .longitude(103.800)
+                    .limit(1 + i % 3)
+                    .build());
+        }
+
+        var results = carParkIndexService.findNearestWithAvailabilityBatch(queries);
+
+        assertEquals(queries.size(), results.size());
+        for (var i = 0; i < queries.size(); i++) {
+            assertEquals(carParkNos(carParkIndexService.findNearestWithAvailability(queries.get(i))), carParkNos(results.get(i)));
+        }
+    }
+
+    @Test
+    void publishAvailabilityReturnsChangedCarParksOnly() {
+        var snapshot = new CarParkLotSnapshot();
+        snapshot.add("A", 10, 5);  // unchanged
+        snapshot.add("B", 20, 7);  // changed
+        snapshot.add("Z", 40, 4);  // not indexed yet
+
+        var changes = carParkIndexService.publishAvailability(snapshot, 1000L);
+
+        assertEquals(2, changes.size());
+        assertEquals(-1, changes.slotOf("A"));
+        assertEquals(7, changes.availableLots(changes.slotOf("B")));
+        assertEquals(4, changes.availableLots(changes.slotOf("Z")));
+
+        var result = carParkIndexService.findNearestWithAvailability(query(10, 0, null));
+        assertEquals(List.of("A", "B", "C"), carParkNos(result));
+        assertEquals(1000L, result.get(1).getCarPark().lastUpdated.getTime());
+    }
+
+    @Test
+    void publishAvailabilityBeforeIndexIsBuilt() {
+        var snapshot = new CarParkLotSnapshot();
+        snapshot.add("A", 10, 5);
+
+        var changes = new CarParkIndexService(null).publishAvailability(snapshot, 1000L);
+
+        assertSame(snapshot, changes);
+    }
+
+    @Test
+    void findWithinTagChangesOnlyWithLotsInTheBox() {
+        var box = new BoundingBox(103.79, 1.2995, 103.81, 1.3015);
+        var before = carParkIndexService.findWithin(box, 10);
+
+        var outside = new CarParkLotSnapshot();
+        outside.add("C", 30, 1);
+        carParkIndexService.publishAvailability(outside, 1000L);
+        var unchanged = carParkIndexService.findWithin(box, 10);
+
+        var inside = new CarParkLotSnapshot();
+        inside.add("B", 20, 7);
+        carParkIndexService.publishAvailability(inside, 2000L);
+        var changed = carParkIndexService.findWithin(box, 10);
+
+        assertEquals(List.of("A", "B"), before.getCarParks().stream().map(carPark -> carPark.carParkNo).toList());
+        assertEquals(before.getEntityTag(), unchanged.getEntityTag());
+        assertNotEquals(before.getEntityTag(), changed.getEntityTag());
+        assertEquals(7, changed.getCarParks().get(1).availableLots);
+        assertEquals(1, carParkIndexService.findWithin(box, 1).getCarParks().size());
+    }
+
+    private static NearestCarParkQuery query(int limit, int offset, NearestCursor after) {
+        return NearestCarParkQuery.builder()
+                .latitude(1.300)
+                .longitude(103.800)
+                .limit(limit)
+                .offset(offset)
+                .after(after)
+                .build();
+    }
+
+    private static List<String> carParkNos(List<NearestCarPark> result) {
+        return result.stream().map(carPark -> carPark.getCarPark().carParkNo).toList();
+    }
+
+    private static CarPark carPark(String carParkNo, double latitude, double longitude, int totalLots, int availableLots) {
+        return CarPark.builder()
+                .carParkNo(carParkNo)
+                .address("Address " + carParkNo)
+                .latitude(latitude)
+                .longitude(longitude)
+                .totalLots(totalLots)
+                .availableLots(availableLots)
+                .build();
+    }
+}
@@ -1,16 +1,30 @@
 package com.example.carpark.service;
 
+import com.example.carpark.config.CarParkConfig;
 import com.example.carpark.entity.CarPark;
-import com.example.carpark.model.CarParkInformation;
+import com.example.carpark.exception.CarParkException;
+import com.example.carpark.metrics.CarParkMetrics;
+import com.example.carpark.model.CsvImportMode;
+import com.example.carpark.model.CsvImportSummary;
+import com.example.carpark.model.NearestCarPark;
+import com.example.carpark.model.NearestCarParkQuery;
 import com.example.carpark.repository.CarParkRepository;
 import com.example.carpark.util.ConverterUtil;
 import io.quarkus.test.InjectMock;
 import io.quarkus.test.junit.QuarkusTest;
+import io.smallrye.mutiny.Multi;
 import io.smallrye.mutiny.Uni;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
 
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.OptionalInt;
+import java.util.function.Function;
 
 import static org.junit.jupiter.api.Assertions.*;
 import static org.mockito.ArgumentMatchers.any;
@@ -30,63 +44,190 @@ class CarParkServiceTest {
     @InjectMock
     RedisService redisService;
 
+    @InjectMock
+    CarParkIndexService carParkIndexService;
+
+    @InjectMock
+    CarParkMetrics carParkMetrics;
+
+    @InjectMock
+    NearestCarParkCacheService nearestCarParkCacheService;
+
+    @InjectMock
+    AvailabilityFanOutService availabilityFanOutService;
+
+    @InjectMock
+    CarParkSnapshotService carParkSnapshotService;
+
+    @TempDir
+    Path tempDir;
+
     CarParkService carParkService;
 
     @BeforeEach
     void setUp() {
-        carParkService = new CarParkService(carParkRepository, converterUtil, carParkAvailabilityService, redisService);
+        var csvImport = mock(CarParkConfig.CsvImport.class);
+        when(csvImport.parallelism()).thenReturn(OptionalInt.of(2));
+        var carParkConfig = mock(CarParkConfig.class);
+        when(carParkConfig.csvImport()).thenReturn(csvImport);
+        carParkService = new CarParkService(carParkConfig, carParkRepository, converterUtil, carParkAvailabilityService, redisService, carParkIndexService, carParkMetrics,
+                nearestCarParkCacheService, availabilityFanOutService, carParkSnapshotService);
+        when(carParkSnapshotService.reload()).thenReturn(Uni.createFrom().voidItem());
+        when(nearestCarParkCacheService.publishVersion()).thenReturn(Uni.createFrom().voidItem());
+        when(carParkSnapshotService.reloadIfChanged()).thenReturn(Uni.createFrom().item(false));
+        when(availabilityFanOutService.publishImport()).thenReturn(Uni.createFrom().voidItem());
+        when(nearestCarParkCacheService.getOrLoad(any(), any())).thenAnswer(invocation ->
+                invocation.<Function<NearestCarParkQuery, Uni<List<NearestCarPark>>>>getArgument(1).apply(invocation.getArgument(0)));
     }
 
     @Test
-    void ingestCarParkInfos_validCarParkInfos() {
-        var carParkInfos = List.of(
-                CarParkInformation.fromCsvRow(new String[]{"ACB", "BLK 270/271 ALBERT CENTRE BASEMENT CAR PARK", "30314.7936", "31490.4942"})
-        );
+    void importCsvFile_validCsvFile() throws IOException {
+        var csvFile = tempDir.resolve("carparks.csv");
+        Files.writeString(csvFile, """
+                car_park_no,address,x_coord,y_coord
+                ACB,BLK 270/271 ALBERT CENTRE BASEMENT CAR PARK,30314.7936,31490.4942
+                ACM,BLK 98A ALJUNIED CRESCENT,33758.4143,33695.5198
+                """);
+
+        when(carParkRepository.importCarParks(any(), any())).thenAnswer(invocation -> insertAll(invocation.getArgument(0)));
+
+        var summary = carParkService.importCsvFile(csvFile, CsvImportMode.SKIP_EXISTING).await().indefinitely();
+
+        assertEquals(2, summary.getInserted());
+        verify(carParkRepository, times(1)).importCarParks(any(), eq(CsvImportMode.SKIP_EXISTING));
+        verify(carParkMetrics, times(1)).recordImport(eq(2), any());
+        verify(converterUtil, times(1)).convertSVY21ToWGS84(any(double[].class), any(double[].class));
+        verify(carParkSnapshotService, times(1)).reload();
+    }
 
-        when(converterUtil.convertSVY21ToWGS84(30314.7936, 31490.4942)).thenReturn(new double[]{1.0, 1.0});
-        when(carParkRepository.persist(anyList())).thenReturn(Uni.createFrom().voidItem());
+    @Test
+    void importCsvFile_emptyCsvFile() throws IOException {
+        var csvFile = tempDir.resolve("carparks.csv");
+        Files.writeString(csvFile, "car_park_no,address,x_coord,y_coord\n");
 
-        carParkService.ingestCarParkInfos(carParkInfos).await().indefinitely();
+        when(carParkRepository.importCarParks(any(), any())).thenAnswer(invocation -> insertAll(invocation.getArgument(0)));
 
-        verify(carParkRepository, times(1)).persist(anyList());
+        carParkService.importCsvFile(csvFile, CsvImportMode.SKIP_EXISTING).await().indefinitely();
+
+        verify(carParkMetrics, times(1)).recordImport(eq(0), any());
     }
 
     @Test
-    void ingestCarParkInfos_emptyCarParkInfos() {
-        carParkService.ingestCarParkInfos(List.of()).await().indefinitely();
+    void importCsvFile_invalidCsvFile() throws IOException {
+        var csvFile = tempDir.resolve("carparks.csv");
+        Files.writeString(csvFile, "invalid content\ninvalid conten");
+
+        when(carParkRepository.importCarParks(any(), any())).thenAnswer(invocation -> insertAll(invocation.getArgument(0)));
 
-        verify(carParkRepository, never()).persist(any(CarPark.class));
+        var importing = carParkService.importCsvFile(csvFile, CsvImportMode.SKIP_EXISTING);
+
+        assertThrows(CarParkException.class, () -> importing.await().indefinitely());
+        verify(carParkSnapshotService, never()).reload();
+    }
+
+    @Test
+    void importCsvFile_parallelBatchesKeepFileOrder() throws IOException {
+        var csv = new StringBuilder("car_park_no,address,x_coord,y_coord\n");
+        for (var i = 0; i < 2500; i++) {
+            csv.append("CP").append(i).append(",BLK ").append(i).append(",30314.7936,31490.4942\n");
+        }
+        var csvFile = tempDir.resolve("carparks.csv");
+        Files.writeString(csvFile, csv);
+
+        var imported = new ArrayList<CarPark>();
+        when(carParkRepository.importCarParks(any(), any())).thenAnswer(invocation -> invocation.<Multi<List<CarPark>>>getArgument(0)
+                .invoke(imported::addAll)
+                .collect().asList()
+                .map(batches -> CsvImportSummary.builder().inserted(imported.size()).build()));
+
+        carParkService.importCsvFile(csvFile, CsvImportMode.SKIP_EXISTING).await().indefinitely();
+
+        assertEquals(2500, imported.size());
+        for (var i = 0; i < imported.size(); i++) {
+            assertEquals("CP" + i, imported.get(i).carParkNo);
+        }
+        verify(converterUtil, times(3)).convertSVY21ToWGS84(any(double[].class), any(double[].class));
     }
 
     @Test
     void getNearestCarParks_validCoordinates() {
-        var latitude = 1.0;
-        var longitude = 1.0;
-        var page = 1;
-        var perPage = 10;
+        var query = NearestCarParkQuery.builder().latitude(1.0).longitude(1.0).limit(10).offset(0).build();
 
-        when(carParkRepository.findNearestWithAvailability(latitude, longitude, perPage, 0))
-                .thenReturn(Uni.createFrom().item(List.of(new CarPark())));
+        when(carParkRepository.findNearestWithAvailability(query))
+                .thenReturn(Uni.createFrom().item(List.of(new NearestCarPark(new CarPark(), 10.0))));
 
-        var result = carParkService.getNearestCarParks(latitude, longitude, page, perPage).await().indefinitely();
+        var result = carParkService.getNearestCarParks(query).await().indefinitely();
 
         assertNotNull(result);
         assertEquals(1, result.size());
     }
 
+    @Test
+    void getNearestCarParks_fromIndex() {
+        var query = NearestCarParkQuery.builder().latitude(1.0).longitude(1.0).limit(10).offset(10).build();
+
+        when(carParkIndexService.isReady()).thenReturn(true);
+        when(carParkIndexService.findNearestWithAvailability(query))
+                .thenReturn(List.of(new NearestCarPark(new CarPark(), 10.0)));
+
+        var result = carParkService.getNearestCarParks(query).await().indefinitely();
+
+        assertEquals(1, result.size());
+        verify(carParkRepository, never()).findNearestWithAvailability(any());
+    }
+
     @Test
     void getNearestCarParks_noResults() {
-        var latitude = 1.0;
-        var longitude = 1.0;
-        var page = 1;
-        var perPage = 10;
+        var query = NearestCarParkQuery.builder().latitude(1.0).longitude(1.0).limit(10).offset(0).build();
 
-        when(carParkRepository.findNearestWithAvailability(latitude, longitude, perPage, 0))
+        when(carParkRepository.findNearestWithAvailability(query))
                 .thenReturn(Uni.createFrom().item(List.of()));
 
-        var result = carParkService.getNearestCarParks(latitude, longitude, page, perPage).await().indefinitely();
+        var result = carParkService.getNearestCarParks(query).await().indefinitely();
 
         assertNotNull(result);
         assertTrue(result.isEmpty());
     }
+
+    @Test
+    void getNearestCarParksBatch_fromDatabase() {
+        var queries = List.of(
+                NearestCarParkQuery.builder().latitude(1.0).longitude(1.0).limit(10).build(),
+                NearestCarParkQuery.builder().latitude(2.0).longitude(2.0).limit(10).build());
+
+        when(carParkRepository.findNearestWithAvailabilityBatch(queries))
+                .thenReturn(Uni.createFrom().item(List.of(List.of(new NearestCarPark(new CarPark(), 10.0)), List.of())));
+
+        var result = carParkService.getNearestCarParksBatch(queries).await().indefinitely();
+
+        assertEquals(2, result.size());
+        assertEquals(1, result.getFirst().size());
+        verify(carParkIndexService, never()).findNearestWithAvailabilityBatch(any());
+    }
+
+    @Test
+    void importCsvFile_upsertCountsUpdatedRows() throws IOException {
+        var csvFile = tempDir.resolve("carparks.csv");
+        Files.writeString(csvFile, """
+                car_park_no,address,x_coord,y_coord
+                ACB,BLK 270/271 ALBERT CENTRE BASEMENT CAR PARK,30314.7936,31490.4942
+                ACM,BLK 98A ALJUNIED CRESCENT,33758.4143,33695.5198
+                """);
+
+        when(carParkRepository.importCarParks(any(), eq(CsvImportMode.UPSERT))).thenReturn(Uni.createFrom().item(
+                CsvImportSummary.builder().mode("upsert").inserted(0).updated(1).unchanged(1).build()));
+
+        var summary = carParkService.importCsvFile(csvFile, CsvImportMode.UPSERT).await().indefinitely();
+
+        assertEquals(1, summary.getUpdated());
+        assertEquals(1, summary.getUnchanged());
+        verify(carParkMetrics, times(1)).recordImport(eq(1), any());
+        verify(carParkSnapshotService, times(1)).reload();
+    }
+
+    private static Uni<CsvImportSummary> insertAll(Multi<List<CarPark>> batches) {
+        return batches.collect().asList().map(lists -> CsvImportSummary.builder()
+                .inserted(lists.stream().mapToInt(List::size).sum())
+                .build());
+    }
 }
@@ -0,0 +1,162 @@
+package com.example.carpark.service;
+
+import com.example.carpark.config.CarParkConfig;
+import com.example.carpark.entity.CarPark;
+import com.example.carpark.index.CarParkSpatialIndex;
+import com.example.carpark.model.NearestCarPark;
+import com.example.carpark.model.NearestCarParkQuery;
+import com.example.carpark.model.NearestCursor;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.smallrye.mutiny.Uni;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.*;
+
+class NearestCarParkCacheServiceTest {
+    RedisService redisService;
+    NearestCarParkCacheService nearestCarParkCacheService;
+    ConcurrentHashMap<String, String> redis;
+    List<NearestCarParkQuery> loaded;
+
+    @BeforeEach
+    void setUp() {
+        var nearestCache = mock(CarParkConfig.NearestCache.class);
+        when(nearestCache.enabled()).thenReturn(true);
+        when(nearestCache.gridDegrees()).thenReturn(0.0005);
+        when(nearestCache.ttlSeconds()).thenReturn(300);
+        when(nearestCache.localMaxEntries()).thenReturn(2);
+        var carParkConfig = mock(CarParkConfig.class);
+        when(carParkConfig.nearestCache()).thenReturn(nearestCache);
+
+        redis = new ConcurrentHashMap<>();
+        redisService = mock(RedisService.class);
+        when(redisService.get(anyString())).thenAnswer(invocation -> Uni.createFrom().item(redis.get(invocation.<String>getArgument(0))));
+        when(redisService.setWithExpiry(anyString(), anyString(), anyInt())).thenAnswer(invocation -> {
+            redis.put(invocation.getArgument(0), invocation.getArgument(1));
+            return Uni.createFrom().voidItem();
+        });
+        var version = new AtomicInteger();
+        when(redisService.incrementAvailabilityVersion()).thenAnswer(invocation -> Uni.createFrom().item((long) version.incrementAndGet()));
+
+        nearestCarParkCacheService = new NearestCarParkCacheService(carParkConfig, redisService, new ObjectMapper());
+        loaded = new ArrayList<>();
+    }
+
+    @Test
+    void nearbyOriginsShareOneEntry() {
+        var first = nearestCarParkCacheService.getOrLoad(query(1.30001, 103.80001), this::load).await().indefinitely();
+        var second = nearestCarParkCacheService.getOrLoad(query(1.30002, 103.80002), this::load).await().indefinitely();
+
+        assertEquals(1, loaded.size());
+        assertEquals(1.3, loaded.getFirst().getLatitude(), 1e-9);
+        assertEquals("A", second.getFirst().getCarPark().carParkNo);
+        // Distances are for the actual origin, not the grid point
+        assertNotEquals(first.getFirst().getDistanceMeters(), second.getFirst().getDistanceMeters());
+    }
+
+    @Test
+    void entriesAreSharedThroughRedis() {
+        nearestCarParkCacheService.getOrLoad(query(1.3, 103.8), this::load).await().indefinitely();
+        // Push the entry out of the local tier
+        nearestCarParkCacheService.getOrLoad(query(1.4, 103.8), this::load).await().indefinitely();
+        nearestCarParkCacheService.getOrLoad(query(1.5, 103.8), this::load).await().indefinitely();
+
+        var result = nearestCarParkCacheService.getOrLoad(query(1.3, 103.8), this::load).await().indefinitely();
+
+        assertEquals(3, loaded.size());
+        assertEquals("A", result.getFirst().getCarPark().carParkNo);
+        assertEquals(1000L, result.getFirst().getCarPark().lastUpdated.getTime());
+    }
+
+    @Test
+    void publishedVersionInvalidatesEntries() {
+        nearestCarParkCacheService.getOrLoad(query(1.3, 103.8), this::load).await().indefinitely();
+        nearestCarParkCacheService.publishVersion().await().indefinitely();
+        nearestCarParkCacheService.getOrLoad(query(1.3, 103.8), this::load).await().indefinitely();
+
+        assertEquals(2, loaded.size());
+    }
+
+    @Test
+    void cursorPagesAreNotCached() {
+        var query = query(1.3, 103.8);
+        query.setAfter(new NearestCursor(1.3, 103.8, 10.0, "A"));
+
+        nearestCarParkCacheService.getOrLoad(query, this::load).await().indefinitely();
+        nearestCarParkCacheService.getOrLoad(query, this::load).await().indefinitely();
+
+        assertEquals(2, loaded.size());
+        verify(redisService, never()).get(anyString());
+    }
+
+    @Test
+    void hitsAreOrderedForTheActualOrigin() {
+        // The actual origin is 22 m north of the grid point, B is nearer to it although A is nearer to the grid point
+        var carParks = List.of(carPark("A", 1.2997, 103.8), carPark("B", 1.3004, 103.8), carPark("E", 1.299, 103.8));
+        var query = query(1.3002, 103.8);
+        query.setLimit(2);
+
+        var result = nearestCarParkCacheService.getOrLoad(query, snapped -> loadFrom(snapped, carParks)).await().indefinitely();
+
+        assertEquals(1, loaded.size());
+        assertEquals(List.of("B", "A"), result.stream().map(nearest -> nearest.getCarPark().carParkNo).toList());
+        assertTrue(result.get(0).getDistanceMeters() < result.get(1).getDistanceMeters());
+    }
+
+    @Test
+    void uncertainHitsRunTheExactQuery() {
+        // A car park left out of the entry may be nearer to the actual origin than anything the entry holds
+        var carParks = List.of(carPark("A", 1.2997, 103.8), carPark("C", 1.3, 103.8004));
+        var query = query(1.3002, 103.8);
+        query.setLimit(1);
+
+        nearestCarParkCacheService.getOrLoad(query, snapped -> loadFrom(snapped, carParks)).await().indefinitely();
+
+        assertEquals(2, loaded.size());
+        assertEquals(1.3, loaded.get(0).getLatitude(), 1e-9);
+        assertEquals(1.3002, loaded.get(1).getLatitude(), 1e-9);
+    }
+
+    private Uni<List<NearestCarPark>> loadFrom(NearestCarParkQuery query, List<CarPark> carParks) {
+        loaded.add(query);
+        return Uni.createFrom().item(carParks.stream()
+                .map(carPark -> new NearestCarPark(carPark, CarParkSpatialIndex.distanceMeters(
+                        query.getLatitude(), query.getLongitude(), carPark.latitude, carPark.longitude)))
+                .sorted(Comparator.comparingDouble(NearestCarPark::getDistanceMeters))
+                .limit(query.getLimit())
+                .toList());
+    }
+
+    private static CarPark carPark(String carParkNo, double latitude, double longitude) {
+        return CarPark.builder().carParkNo(carParkNo).latitude(latitude).longitude(longitude).totalLots(10).availableLots(5).build();
+    }
+
+    private Uni<List<NearestCarPark>> load(NearestCarParkQuery query) {
+        loaded.add(query);
+        var carPark = CarPark.builder()
+                .carParkNo("A")
+                .address("Address A")
+                .latitude(query.getLatitude() + 0.001)
+                .longitude(query.getLongitude())
+                .totalLots(10)
+                .availableLots(5)
+                .lastUpdated(new Timestamp(1000L))
+                .build();
+        return Uni.createFrom().item(List.of(new NearestCarPark(carPark, 111.2)));
+    }
+
+    private static NearestCarParkQuery query(double latitude, double longitude) {
+        return NearestCarParkQuery.builder().latitude(latitude).longitude(longitude).limit(10).build();
+    }
+}
@@ -0,0 +1,59 @@
+package com.example.carpark.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ConverterUtilTest {
+    ConverterUtil converterUtil = new ConverterUtil();
+
+    @Test
+    void convertSVY21ToWGS84() {
+        // ACB, BLK 270/271 ALBERT CENTRE BASEMENT CAR PARK
+        var wgs84 = converterUtil.convertSVY21ToWGS84(30314.7936, 31490.4942);
+
+        assertEquals(1.30113, wgs84[0], 1e-4);
+        assertEquals(103.85412, wgs84[1], 1e-4);
+    }
+
+    @Test
+    void batchConversionMatchesSinglePoints() {
+        var random = new Random(1);
+        var count = 20_000;
+        var xCoords = new double[count];
+        var yCoords = new double[count];
+        for (var i = 0; i < count; i++) {
+            xCoords[i] = 10_000 + random.nextDouble() * 40_000;
+            yCoords[i] = 25_000 + random.nextDouble() * 25_000;
+        }
+        var longitudes = xCoords.clone();
+        var latitudes = yCoords.clone();
+
+        converterUtil.convertSVY21ToWGS84(longitudes, latitudes);
+
+        for (var i = 0; i < count; i += 997) {
+            var wgs84 = converterUtil.convertSVY21ToWGS84(xCoords[i], yCoords[i]);
+            assertEquals(wgs84[0], latitudes[i], 1e-12);
+            assertEquals(wgs84[1], longitudes[i], 1e-12);
+        }
+
+        converterUtil.convertWGS84ToSVY21(longitudes, latitudes);
+
+        for (var i = 0; i < count; i++) {
+            assertEquals(xCoords[i], longitudes[i], 1e-3);
+            assertEquals(yCoords[i], latitudes[i], 1e-3);
+        }
+    }
+
+    @Test
+    void convertWGS84ToSVY21() {
+        var wgs84 = converterUtil.convertSVY21ToWGS84(30314.7936, 31490.4942);
+
+        var svy21 = converterUtil.convertWGS84ToSVY21(wgs84[0], wgs84[1]);
+
+        assertEquals(30314.7936, svy21[0], 1e-3);
+        assertEquals(31490.4942, svy21[1], 1e-3);
+    }
+}
@@ -0,0 +1,31 @@
+package com.example.carpark.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class LogSamplerTest {
+    @Test
+    void letsOneEventThroughPerInterval() {
+        var logSampler = new LogSampler(Duration.ofHours(1));
+
+        assertTrue(logSampler.tryAcquire());
+        assertFalse(logSampler.tryAcquire());
+        assertFalse(logSampler.tryAcquire());
+        assertEquals(2, logSampler.takeSuppressed());
+        assertEquals(0, logSampler.takeSuppressed());
+    }
+
+    @Test
+    void letsEventsThroughAgainAfterTheInterval() throws InterruptedException {
+        var logSampler = new LogSampler(Duration.ofMillis(20));
+
+        assertTrue(logSampler.tryAcquire());
+        assertFalse(logSampler.tryAcquire());
+        Thread.sleep(30);
+        assertTrue(logSampler.tryAcquire());
+        assertEquals(1, logSampler.takeSuppressed());
+    }
+}